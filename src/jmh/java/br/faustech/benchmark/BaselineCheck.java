@@ -0,0 +1,98 @@
+package br.faustech.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file with the stored baseline and fails if a benchmark got slower
+ * than the tolerance allows. Throughput must not drop and average times must not grow by more
+ * than the tolerance; benchmarks missing from either file are listed but do not fail the check.
+ *
+ * <p>Usage: {@code BaselineCheck <baseline.json> <result.json> [tolerance]}, the tolerance being
+ * a fraction, 0.20 by default.</p>
+ */
+public final class BaselineCheck {
+
+    private static final double DEFAULT_TOLERANCE = 0.20;
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck <baseline.json> <result.json> [tolerance]");
+            System.exit(2);
+        }
+        final Map<String, JSONObject> baseline = read(Path.of(args[0]));
+        final Map<String, JSONObject> result = read(Path.of(args[1]));
+        final double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> entry : result.entrySet()) {
+            final JSONObject current = entry.getValue();
+            final JSONObject base = baseline.get(entry.getKey());
+            final String unit = current.getJSONObject("primaryMetric").getString("scoreUnit");
+            final double score = current.getJSONObject("primaryMetric").getDouble("score");
+            if (base == null) {
+                System.out.printf(Locale.ROOT, "%-70s %14s %14.3f %-10s new%n", entry.getKey(), "-", score, unit);
+                continue;
+            }
+            final double reference = base.getJSONObject("primaryMetric").getDouble("score");
+            final boolean higherIsBetter = current.getString("mode").equals("thrpt");
+            final double change = (score - reference) / reference;
+            final boolean regressed = higherIsBetter ? change < -tolerance : change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-70s %14.3f %14.3f %-10s %+7.1f%%%s%n", entry.getKey(), reference, score,
+                    unit, change * 100, regressed ? "  REGRESSION" : "");
+        }
+        for (String key : baseline.keySet()) {
+            if (!result.containsKey(key)) {
+                System.out.printf(Locale.ROOT, "%-70s not run%n", key);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf(Locale.ROOT, "%d benchmark(s) regressed by more than %.0f%%%n", regressions,
+                    tolerance * 100);
+            System.exit(1);
+        }
+        System.out.printf(Locale.ROOT, "No regression beyond %.0f%%%n", tolerance * 100);
+    }
+
+    /**
+     * Reads a JMH JSON result file.
+     *
+     * @param file the file
+     * @return the results, keyed by benchmark name and parameters
+     * @throws IOException if the file cannot be read
+     */
+    private static Map<String, JSONObject> read(Path file) throws IOException {
+
+        final JSONArray results = new JSONArray(Files.readString(file));
+        final Map<String, JSONObject> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < results.length(); i++) {
+            final JSONObject result = results.getJSONObject(i);
+            final String name = result.getString("benchmark").replace("br.faustech.benchmark.", "");
+            final JSONObject params = result.optJSONObject("params");
+            final StringBuilder key = new StringBuilder(name);
+            if (params != null) {
+                new TreeMap<>(params.toMap()).forEach((param, value) -> key.append(' ').append(param).append('=')
+                        .append(value));
+            }
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+}
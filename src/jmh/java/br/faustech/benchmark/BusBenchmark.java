@@ -0,0 +1,81 @@
+package br.faustech.benchmark;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word accesses through the bus, per access, to memory, to the frame buffer pixels, and
+ * alternating between the two so that every access misses the last-region shortcut.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusBenchmark {
+
+    private static final int MEMORY_SIZE = 1 << 20;
+
+    private static final int ACCESSES = 256;
+
+    @Param({"memory", "framebuffer", "alternating"})
+    public String region;
+
+    private Bus bus;
+
+    private final int[] addresses = new int[ACCESSES];
+
+    @Setup
+    public void setUp() {
+
+        final MachineContext context = new MachineContext(320, 240, MEMORY_SIZE, 1);
+        bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final int pixels = MEMORY_SIZE + FrameBuffer.SWAP_REGISTER_SIZE; // Skips the swap register
+        for (int i = 0; i < ACCESSES; i++) {
+            final boolean toPixels = switch (region) {
+                case "memory" -> false;
+                case "framebuffer" -> true;
+                default -> i % 2 == 1;
+            };
+            addresses[i] = (toPixels ? pixels : 0x1000) + i * 4;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int readWord() {
+
+        int sum = 0;
+        for (int address : addresses) {
+            sum += bus.readWord(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void writeWord() {
+
+        for (int address : addresses) {
+            bus.writeWord(address, address);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package br.faustech.benchmark;
+
+import br.faustech.cpu.Decoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding throughput, per instruction, over a mix of every instruction format: the typed decode
+ * used by the CPU and the string decode used by the GUI and the logs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    private static final int[] MIX = {
+            0x007302B3, // add x5, x6, x7
+            0x40628433, // sub x8, x5, x6
+            0x00128293, // addi x5, x5, 1
+            0x00329313, // slli x6, x5, 3
+            0x10002283, // lw x5, 256(x0)
+            0x10604383, // lbu x7, 262(x0)
+            0x20502023, // sw x5, 512(x0)
+            0x20700323, // sb x7, 518(x0)
+            0x0062C263, // blt x5, x6, 4
+            0x00001263, // bne x0, x0, 4
+            0x004000EF, // jal x1, 4
+            0x00408067, // jalr x0, 4(x1)
+            0x123452B7, // lui x5, 0x12345
+            0x00000317, // auipc x6, 0
+            0x30529073, // csrrw x0, mtvec, x5
+            0x30200073, // mret
+    };
+
+    private int[] instructions = MIX.clone(); // Not a constant, so the JIT cannot fold the decode
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void decode(Blackhole blackhole) {
+
+        for (int instruction : instructions) {
+            blackhole.consume(Decoder.decode(instruction));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void decodeInstruction(Blackhole blackhole) {
+
+        for (int instruction : instructions) {
+            blackhole.consume(Decoder.decodeInstruction(instruction));
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package br.faustech.benchmark;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.cpu.CPU;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link CPU#executeInstruction(int)}, per instruction, for each instruction class.
+ * Every class runs seven instructions that fall through to the next one, then a jump back to the
+ * first, so the program counter stays on the same eight decode cache entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+
+    private static final int MEMORY_SIZE = 1 << 20;
+
+    private static final int JUMP_BACK = 0xFE5FF06F; // 28: jal x0, -28
+
+    private static final Map<String, int[]> PROGRAMS = Map.of(
+            "alu", new int[]{
+                    0x007302B3, //  0: add x5, x6, x7
+                    0x00128293, //  4: addi x5, x5, 1
+                    0x00329313, //  8: slli x6, x5, 3
+                    0x0062C3B3, // 12: xor x7, x5, x6
+                    0x40628433, // 16: sub x8, x5, x6
+                    0x0062A4B3, // 20: slt x9, x5, x6
+                    0x4062D533, // 24: sra x10, x5, x6
+                    JUMP_BACK},
+            "load", new int[]{
+                    0x10002283, //  0: lw x5, 256(x0)
+                    0x10401303, //  4: lh x6, 260(x0)
+                    0x10604383, //  8: lbu x7, 262(x0)
+                    0x10700403, // 12: lb x8, 263(x0)
+                    0x10802483, // 16: lw x9, 264(x0)
+                    0x10C05503, // 20: lhu x10, 268(x0)
+                    0x11002583, // 24: lw x11, 272(x0)
+                    JUMP_BACK},
+            "store", new int[]{
+                    0x20502023, //  0: sw x5, 512(x0)
+                    0x20601223, //  4: sh x6, 516(x0)
+                    0x20700323, //  8: sb x7, 518(x0)
+                    0x20802423, // 12: sw x8, 520(x0)
+                    0x20902623, // 16: sw x9, 524(x0)
+                    0x20A01823, // 20: sh x10, 528(x0)
+                    0x20B00923, // 24: sb x11, 530(x0)
+                    JUMP_BACK},
+            "branch", new int[]{
+                    0x00000263, //  0: beq x0, x0, 4, taken
+                    0x00001263, //  4: bne x0, x0, 4, not taken
+                    0x0062C263, //  8: blt x5, x6, 4
+                    0x0062D263, // 12: bge x5, x6, 4
+                    0x0062E263, // 16: bltu x5, x6, 4
+                    0x0062F263, // 20: bgeu x5, x6, 4
+                    0x00628263, // 24: beq x5, x6, 4
+                    JUMP_BACK},
+            "jump", new int[]{
+                    0x004000EF, //  0: jal x1, 4
+                    0x00408067, //  4: jalr x0, 4(x1)
+                    0x004000EF, //  8: jal x1, 4
+                    0x00408067, // 12: jalr x0, 4(x1)
+                    0x004000EF, // 16: jal x1, 4
+                    0x00408067, // 20: jalr x0, 4(x1)
+                    0x0040006F, // 24: jal x0, 4
+                    JUMP_BACK},
+            "upper", new int[]{
+                    0x123452B7, //  0: lui x5, 0x12345
+                    0x00000317, //  4: auipc x6, 0
+                    0xFFFFF3B7, //  8: lui x7, 0xfffff
+                    0x00001417, // 12: auipc x8, 1
+                    0x800004B7, // 16: lui x9, 0x80000
+                    0x00010517, // 20: auipc x10, 0x10
+                    0x007FF5B7, // 24: lui x11, 0x7ff
+                    JUMP_BACK});
+
+    @Param({"alu", "load", "store", "branch", "jump", "upper"})
+    public String instructionClass;
+
+    private CPU cpu;
+
+    private int[] program;
+
+    @Setup
+    public void setUp() {
+
+        final MachineContext context = new MachineContext(320, 240, MEMORY_SIZE, 1);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        program = PROGRAMS.get(instructionClass);
+        cpu = new CPU(context, bus, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void executeInstruction() {
+
+        for (int instruction : program) {
+            cpu.executeInstruction(instruction);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package br.faustech.benchmark;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame buffer paths of a 320x240 frame: writing every pixel, per pixel, and swapping a frame with
+ * some rows changed and copying them into a direct buffer as into a mapped PBO, per frame. A whole
+ * frame is also drawn the way the guest draws it, one bus store per pixel, then swapped and copied.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBufferBenchmark {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    private static final int PIXELS = WIDTH * HEIGHT;
+
+    private FrameBuffer frameBuffer;
+
+    private int color;
+
+    @Setup
+    public void setUp() {
+
+        frameBuffer = new FrameBuffer(new MachineContext(WIDTH, HEIGHT, 4096, 1));
+        for (int i = 0; i < PIXELS; i++) {
+            frameBuffer.writePixel(i * 4, i * 0x010203);
+        }
+        frameBuffer.swap();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public void writePixel() {
+
+        color += 0x010101;
+        for (int i = 0; i < PIXELS; i++) {
+            frameBuffer.writePixel(i * 4, color + i);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int[] copyChangedRows(final Frame frame) {
+
+        frame.color += 0x010101;
+        for (int row = 0; row < frame.changedRows; row++) {
+            frame.frameBuffer.writePixel(row * WIDTH * 4, frame.color);
+        }
+        frame.frameBuffer.swap();
+        frame.pixels.clear();
+        return frame.frameBuffer.copyChangedRows(frame.pixels);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int[] drawFrame(final Machine machine) {
+
+        machine.color += 0x010101;
+        for (int i = 0; i < PIXELS; i++) {
+            machine.bus.writeWord(machine.swapRegister + FrameBuffer.SWAP_REGISTER_SIZE + i * 4, machine.color + i);
+        }
+        machine.bus.writeWord(machine.swapRegister, 0);
+        machine.pixels.clear();
+        return machine.frameBuffer.copyChangedRows(machine.pixels);
+    }
+
+    /**
+     * A frame buffer showing the same frame from both buffers, so only the rows each frame writes
+     * change on screen.
+     */
+    @State(Scope.Thread)
+    public static class Frame {
+
+        @Param({"0", "16", "240"})
+        public int changedRows;
+
+        private FrameBuffer frameBuffer;
+
+        private final IntBuffer pixels = ByteBuffer.allocateDirect(PIXELS * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+        private int color;
+
+        @Setup
+        public void setUp() {
+
+            frameBuffer = new FrameBuffer(new MachineContext(WIDTH, HEIGHT, 4096, 1));
+            for (int buffer = 0; buffer < 2; buffer++) {
+                for (int i = 0; i < PIXELS; i++) {
+                    frameBuffer.writePixel(i * 4, i * 0x010203);
+                }
+                frameBuffer.swap();
+            }
+            frameBuffer.copyChangedRows(pixels);
+        }
+
+    }
+
+    /**
+     * A frame buffer on the bus of a machine, as the CPU reaches it.
+     */
+    @State(Scope.Thread)
+    public static class Machine {
+
+        private Bus bus;
+
+        private FrameBuffer frameBuffer;
+
+        private int swapRegister; // Bus address of the frame buffer, its swap register first
+
+        private final IntBuffer pixels = ByteBuffer.allocateDirect(PIXELS * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+        private int color;
+
+        @Setup
+        public void setUp() {
+
+            final MachineContext context = new MachineContext(WIDTH, HEIGHT, 4096, 1);
+            final Memory memory = new Memory(4096);
+            frameBuffer = new FrameBuffer(context);
+            bus = new Bus(frameBuffer, memory);
+            swapRegister = memory.getSize();
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package br.faustech.benchmark;
+
+import br.faustech.reader.ProgramUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for {@link ProgramUtils#readFile(File)} to load a 4 MiB program, as a .bin image and as
+ * the equivalent .txt file of binary words.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramReadBenchmark {
+
+    private static final int WORDS = 1 << 20;
+
+    @Param({"bin", "txt"})
+    public String format;
+
+    private final ProgramUtils utils = new ProgramUtils();
+
+    private Path program;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        final int[] words = new Random(42).ints(WORDS).toArray();
+        program = Files.createTempFile("benchmark", "." + format);
+        if (format.equals("bin")) {
+            final ByteBuffer image = ByteBuffer.allocate(WORDS * 4).order(ByteOrder.LITTLE_ENDIAN);
+            image.asIntBuffer().put(words);
+            Files.write(program, image.array());
+        } else {
+            final StringBuilder text = new StringBuilder(WORDS * 33);
+            for (int word : words) {
+                final String bits = Integer.toBinaryString(word);
+                text.append("0".repeat(32 - bits.length())).append(bits).append('\n');
+            }
+            Files.writeString(program, text);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        Files.deleteIfExists(program);
+    }
+
+    @Benchmark
+    public int[] readFile() throws IOException {
+
+        return utils.readFile(program.toFile());
+    }
+
+}
@@ -2,18 +2,35 @@ package br.faustech;
 
 import br.faustech.bus.Bus;
 import br.faustech.comum.ConfigFile;
+import br.faustech.comum.MachineContext;
 import br.faustech.cpu.CPU;
 import br.faustech.gpu.GPU;
 import br.faustech.gui.GUI;
 import br.faustech.comum.ArgsListener;
 import br.faustech.memory.FrameBuffer;
 import br.faustech.memory.Memory;
+import br.faustech.memory.MemoryStorage;
 import br.faustech.reader.ProgramUtils;
-import lombok.Getter;
+import br.faustech.runner.BatchRunner;
+import br.faustech.runner.BatchSummary;
+import br.faustech.runner.ExitCause;
+import br.faustech.runner.RunResult;
+import br.faustech.trace.TraceBuffer;
+import br.faustech.trace.TraceReader;
 import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import java.nio.file.Paths;
@@ -24,12 +41,27 @@ public class Main {
 
     private static final int HEIGHT = 240;
 
-    private static final int FRAME_BUFFER_SIZE = WIDTH * HEIGHT * 4; // 4 bytes per pixel
-
     private static final int MEMORY_SIZE = 4194304; // 4MB
 
-    @Getter
-    private static int clockSpeed = 1000; // 1Hz
+    private static final String MEMORY_PROPERTY = "emulator.memory"; // Guest RAM storage: heap, offheap or paged
+
+    private static final String MEMORY_OFF_HEAP_PROPERTY = "emulator.memory.offheap"; // Older spelling of emulator.memory=offheap
+
+    private static final String MEMORY_SIZE_PROPERTY = "emulator.memory.size"; // Bytes of guest RAM, a multiple of 4 KiB
+
+    private static final String MEMORY_FILE_PROPERTY = "emulator.memory.file"; // Maps guest RAM onto this file
+
+    private static final String TIMER_PROPERTY = "emulator.timer"; // Timer source: instructions or wallclock
+
+    private static final String TRACE_PROPERTY = "emulator.trace"; // Streams a binary trace of every instruction to this file
+
+    private static final int LOG_TRACE_CAPACITY = 256; // Instructions decoded and logged at a time with --log
+
+    private static final long BENCHMARK_INSTRUCTIONS = 100_000_000L; // Default instruction budget of --benchmark
+
+    private static final String KERNEL_DIRECTORY = "src/test/kernels"; // Default kernel suite of --kernels
+
+    private static final int CLOCK_SPEED = 1000; // 1Hz
 
     private static boolean LOG = true;
 
@@ -44,6 +76,25 @@ public class Main {
     private static final Logger log = Logger.getLogger(Main.class.getName());
 
     public static void main(String[] args) throws IOException {
+        if (args.length > 1 && args[0].equals("--trace-decode")) {
+            decodeTrace(Paths.get(args[1]));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--benchmark")) {
+            LOG = false;
+            benchmark(new File(args[1]), args.length > 2 ? Long.parseLong(args[2]) : BENCHMARK_INSTRUCTIONS);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--kernels")) {
+            LOG = false;
+            kernels(Paths.get(args.length > 1 ? args[1] : KERNEL_DIRECTORY));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--headless")) {
+            LOG = false;
+            headless(args);
+            return;
+        }
         LOG = args.length > 0 && args[0].equals("--log");
         configFile = new ConfigFile();
         ProgramUtils programUtils = new ProgramUtils();
@@ -52,14 +103,16 @@ public class Main {
             public void onArgsSelected(String path) {
                 new Thread(() -> {
                     try {
-                        final FrameBuffer frameBuffer = new FrameBuffer(FRAME_BUFFER_SIZE);
-                        final Bus bus = new Bus(frameBuffer, new Memory(MEMORY_SIZE));
+                        final MachineContext context = createContext(false);
+                        final FrameBuffer frameBuffer = new FrameBuffer(context);
+                        final Bus bus = new Bus(frameBuffer, createMemory(context));
 
                         programUtils.setUtils(bus);
                         programUtils.writeProgramInMemory(programUtils.readFile(new File(path)));
 
-                        gpu = new GPU(WIDTH, HEIGHT, frameBuffer, Paths.get(gui.getPath()).getFileName().toString());
-                        cpu = new CPU(bus, gui);
+                        gpu = new GPU(context, frameBuffer, Paths.get(gui.getPath()).getFileName().toString());
+                        cpu = new CPU(context, bus, gui);
+                        cpu.setTrace(createTrace()); // Compiled blocks are not traced, so tracing keeps every instruction interpreted
                         gpu.start();
                         cpu.start();
 
@@ -86,6 +139,205 @@ public class Main {
         }, configFile, programUtils);
     }
 
+    /**
+     * Runs a program without a window twice, once fully interpreted and once with hot blocks
+     * translated to bytecode, and prints the instructions per second of both runs, along with the
+     * time skipped or spent parked in wfi and idle loops.
+     *
+     * @param program      the .bin or .txt program to run.
+     * @param instructions the number of instructions to run in each pass.
+     * @throws IOException if the program cannot be read.
+     */
+    private static void benchmark(File program, long instructions) throws IOException {
+        ProgramUtils programUtils = new ProgramUtils();
+        int[] programBin = programUtils.readFile(program);
+
+        for (int threshold : new int[]{0, CPU.DEFAULT_TRANSLATION_THRESHOLD}) {
+            final MachineContext context = createContext(true);
+            final Bus bus = new Bus(new FrameBuffer(context), createMemory(context));
+            programUtils.setUtils(bus);
+            programUtils.writeProgramInMemory(programBin);
+
+            CPU benchmarkCpu = new CPU(context, bus, null);
+            benchmarkCpu.setTranslationThreshold(threshold);
+
+            String stoppedBy = "instruction limit";
+            long start = System.nanoTime();
+            try {
+                while (benchmarkCpu.getRetiredInstructions() < instructions) {
+                    benchmarkCpu.processNextBlock();
+                }
+            } catch (RuntimeException e) {
+                stoppedBy = String.valueOf(e.getMessage());
+            }
+            long elapsed = System.nanoTime() - start;
+            long executed = benchmarkCpu.getRetiredInstructions();
+
+            System.out.printf("%s: %d instructions in %d ms (%.2f MIPS), stopped by %s%n",
+                    threshold == 0 ? "interpreter" : "translated", executed, elapsed / 1_000_000,
+                    executed * 1000.0 / elapsed, stoppedBy);
+            System.out.printf("  idle: %d loops skipped, %d timer ticks skipped, %d ms parked%n",
+                    benchmarkCpu.getIdleLoops(), benchmarkCpu.getSkippedTicks(),
+                    benchmarkCpu.getIdleNanos() / 1_000_000);
+        }
+    }
+
+    /**
+     * Runs the guest kernel suite and prints the instructions, wall time, MIPS and allocation rate
+     * of every kernel. Kernels run one at a time on a platform thread, so they do not compete for
+     * processors and their allocations can be measured. Every kernel checks its own result and
+     * ends with ebreak if it is right; the process exits with status 1 if any kernel ended
+     * otherwise.
+     *
+     * @param directory the directory holding the kernel programs.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static void kernels(Path directory) throws IOException {
+        List<RunResult> results;
+        try {
+            results = BatchRunner.builder().threads(1).build()
+                    .run(BatchRunner.collectPrograms(List.of(directory.toString())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        BatchSummary.writeTable(results, new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if (results.stream().anyMatch(result -> result.exitCause() != ExitCause.EBREAK)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs programs without a window and writes a summary of every run. Usage:
+     * {@code --headless [--max-instructions n] [--time-limit-ms n] [--threads n] [--memory bytes]
+     * [--format csv|json] [--output file] [--profile directory] <program or directory>...}. Without
+     * --threads, runs use virtual threads. --memory sets the guest RAM of each run, 4 MiB by
+     * default; it is allocated page by page, so gigabytes only cost the pages a program touches.
+     * With --profile, a profile report of each run is written to the directory.
+     *
+     * @param args the command line, starting with --headless.
+     * @throws IOException if a program directory cannot be listed or the summary cannot be written.
+     */
+    private static void headless(String[] args) throws IOException {
+        BatchRunner.BatchRunnerBuilder runner = BatchRunner.builder();
+        List<String> paths = new ArrayList<>();
+        String format = "csv";
+        String output = null;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-instructions" -> runner.maxInstructions(Long.parseLong(args[++i]));
+                case "--time-limit-ms" -> runner.timeLimitMillis(Long.parseLong(args[++i]));
+                case "--threads" -> runner.threads(Integer.parseInt(args[++i]));
+                case "--memory" -> runner.memorySize(Integer.parseInt(args[++i]));
+                case "--format" -> format = args[++i];
+                case "--output" -> output = args[++i];
+                case "--profile" -> runner.profileDirectory(Paths.get(args[++i]));
+                default -> paths.add(args[i]);
+            }
+        }
+
+        List<RunResult> results;
+        try {
+            results = runner.build().run(BatchRunner.collectPrograms(paths));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try (Writer writer = output != null ? Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            if (format.equals("json")) {
+                BatchSummary.writeJson(results, writer);
+            } else {
+                BatchSummary.writeCsv(results, writer);
+            }
+        }
+    }
+
+    /**
+     * Creates the trace of the CPU. With -Demulator.trace=path every executed instruction is
+     * streamed to that file as binary records, which --trace-decode prints as text; with --log
+     * the records are decoded and logged in batches. Otherwise tracing is off.
+     *
+     * @return the trace, or null if tracing is off.
+     * @throws IOException if the trace file cannot be opened.
+     */
+    private static TraceBuffer createTrace() throws IOException {
+        String file = System.getProperty(TRACE_PROPERTY);
+        if (file != null) {
+            return new TraceBuffer(TraceBuffer.DEFAULT_CAPACITY, FileChannel.open(Paths.get(file),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        if (LOG) {
+            return new TraceBuffer(LOG_TRACE_CAPACITY, TraceReader.decoding(record -> log.info(record.format())));
+        }
+        return null;
+    }
+
+    /**
+     * Prints a binary trace file as text, one executed instruction per line.
+     *
+     * @param file the trace written with -Demulator.trace.
+     * @throws IOException if the file cannot be read.
+     */
+    private static void decodeTrace(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            TraceReader.forEach(channel, record -> {
+                try {
+                    writer.write(record.format());
+                    writer.write(System.lineSeparator());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the context of a machine. The timer of the window follows real time, so programs
+     * get their timer interrupt every {@code CLOCK_SPEED} milliseconds on any host; headless runs
+     * count retired instructions instead, so their timer interrupts are reproducible.
+     * -Demulator.timer=instructions or -Demulator.timer=wallclock overrides the default. Guest RAM
+     * is 4 MiB unless -Demulator.memory.size sets its size in bytes, up to a little under 2 GiB.
+     *
+     * @param headless whether the machine runs without a window.
+     * @return the machine context.
+     */
+    private static MachineContext createContext(boolean headless) {
+        MachineContext context = new MachineContext(WIDTH, HEIGHT, Integer.getInteger(MEMORY_SIZE_PROPERTY, MEMORY_SIZE), CLOCK_SPEED);
+        context.setHeadless(headless);
+        context.setWallClockTimer(System.getProperty(TIMER_PROPERTY, headless ? "instructions" : "wallclock")
+                .equals("wallclock"));
+        return context;
+    }
+
+    /**
+     * Creates the guest RAM. By default it is a heap array; -Demulator.memory=offheap keeps it in
+     * native memory, -Demulator.memory=paged allocates 4 KiB pages on first touch, and
+     * -Demulator.memory.file=path maps it onto a file, whose contents become the initial RAM and
+     * which other tools can inspect while the emulator runs. Without -Demulator.memory, the older
+     * -Demulator.memory.offheap=true still selects native memory.
+     *
+     * @param context the machine the RAM belongs to, which sets its size.
+     * @return the guest RAM.
+     * @throws IOException if the memory file cannot be mapped.
+     */
+    private static Memory createMemory(MachineContext context) throws IOException {
+        final int size = context.getMemorySize();
+        String file = System.getProperty(MEMORY_FILE_PROPERTY);
+        if (file != null) {
+            return new Memory(MemoryStorage.mapped(Paths.get(file), size));
+        }
+        return switch (System.getProperty(MEMORY_PROPERTY, Boolean.getBoolean(MEMORY_OFF_HEAP_PROPERTY) ? "offheap" : "heap")) {
+            case "offheap" -> new Memory(MemoryStorage.offHeap(size));
+            case "paged" -> new Memory(MemoryStorage.paged(size));
+            default -> new Memory(size);
+        };
+    }
+
     public static void info(String message) {
         if (LOG) {
             log.info(message);
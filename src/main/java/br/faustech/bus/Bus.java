@@ -1,40 +1,161 @@
 package br.faustech.bus;
 
-import br.faustech.comum.ComponentType;
+import br.faustech.device.Clint;
+import br.faustech.device.Keyboard;
 import br.faustech.memory.FrameBuffer;
 import br.faustech.memory.Memory;
 import br.faustech.memory.MemoryException;
+import lombok.Getter;
 import lombok.extern.java.Log;
 
-import static br.faustech.comum.ComponentType.FRAME_BUFFER;
-import static br.faustech.comum.ComponentType.MEMORY;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Represents a bus system that facilitates communication between different components like memory
  * and frame buffers.
+ *
+ * <p>Components implement {@link BusDevice} and are mapped at page-aligned base addresses. Address
+ * decode is a lookup in a table indexed by 4 KiB page, preceded by a check of the device hit last,
+ * so adding devices does not add branches to the access path.</p>
  */
 @Log // Lombok annotation to enable logging
 public class Bus {
 
-    private final FrameBuffer frameBuffer; // The frame buffer component
+    private static final int PAGE_SHIFT = 12; // 4 KiB decode granularity
 
-    private final int frameBufferSize = FrameBuffer.getBufferSize(); // Size of the frame buffer component
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
 
-    private final Memory memory; // The memory component
+    private static final Region UNMAPPED = new Region(0, 0, null); // Matches no address
 
-    private final int memorySize = Memory.getMemorySize(); // Size of the memory component
+    private final List<Region> regions = new ArrayList<>(); // Mapped devices, in mapping order
 
+    private final Memory memory; // The memory component, the only device that holds code
+
+    @Getter
+    private Clint clint; // The machine timer
+
+    @Getter
+    private int clintBase; // Address the machine timer is mapped at
+
+    @Getter
+    private Keyboard keyboard; // The keyboard, mapped right after the timer
+
+    private Region[] pages = new Region[0]; // Device region of every page, null for unmapped pages
+
+    private Region lastHit = UNMAPPED; // Region of the most recent access
+
+    private BusWriteListener writeListener; // Notified after every write to memory, if set
 
     /**
-     * Constructs a Bus with specified frame buffer and memory components.
+     * Constructs a Bus with specified frame buffer and memory components. Memory is mapped at
+     * address 0 and the frame buffer, swap register first, right after it. A new machine timer
+     * follows at the next 64 KiB boundary, and a new keyboard right after the timer. Every device
+     * must lie below 2 GiB, so memory can take up to a little under 2 GiB.
      *
      * @param frameBuffer The frame buffer to manage.
      * @param memory      The memory to manage.
+     * @throws IllegalArgumentException If the memory size is not a multiple of 4 KiB, or leaves no
+     *                                  room for the other devices below 2 GiB.
      */
     public Bus(final FrameBuffer frameBuffer, final Memory memory) {
 
-        this.frameBuffer = frameBuffer;
         this.memory = memory;
+        this.clint = new Clint();
+        this.keyboard = new Keyboard();
+        final int frameBufferSize = FrameBuffer.SWAP_REGISTER_SIZE + frameBuffer.getBufferSize();
+        if ((memory.getSize() & (PAGE_SIZE - 1)) != 0) {
+            throw new IllegalArgumentException(String.format("Memory size %d is not a multiple of %d bytes", memory.getSize(), PAGE_SIZE));
+        }
+        final long clintAddress = (memory.getSize() + (long) frameBufferSize + Clint.SIZE - 1) & -Clint.SIZE;
+        if (clintAddress + Clint.SIZE + Keyboard.SIZE > 1L << 31) {
+            throw new IllegalArgumentException(String.format(
+                    "Memory size %d leaves no room below 2 GiB for the frame buffer, timer and keyboard", memory.getSize()));
+        }
+        mapRegion(0, memory.getSize(), memory);
+        mapRegion(memory.getSize(), frameBufferSize, frameBuffer);
+        this.clintBase = (int) clintAddress;
+        mapRegion(clintBase, Clint.SIZE, clint);
+        mapRegion(clintBase + Clint.SIZE, Keyboard.SIZE, keyboard);
+    }
+
+    /**
+     * Constructs an empty bus around the given memory, which the caller maps.
+     *
+     * @param memory The memory whose writes are reported to the write listener.
+     */
+    private Bus(final Memory memory) {
+
+        this.memory = memory;
+    }
+
+    /**
+     * Maps a device into the address space.
+     *
+     * @param base   The first address of the device; must be a multiple of 4 KiB.
+     * @param size   The number of bytes the device occupies.
+     * @param device The device to map.
+     * @throws IllegalArgumentException If the base is not page-aligned or the range overlaps
+     *                                  another device.
+     */
+    public void map(final int base, final int size, final BusDevice device) {
+
+        mapRegion(base, size, device);
+    }
+
+    /**
+     * Maps a device into the address space. Unlike {@link #map}, this cannot be overridden, so the
+     * constructor maps the default devices with it.
+     *
+     * @param base   The first address of the device; must be a multiple of 4 KiB.
+     * @param size   The number of bytes the device occupies.
+     * @param device The device to map.
+     * @throws IllegalArgumentException If the base is not page-aligned or the range overlaps
+     *                                  another device.
+     */
+    private void mapRegion(final int base, final int size, final BusDevice device) {
+
+        if ((base & (PAGE_SIZE - 1)) != 0 || base < 0 || size <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid device range: base=%d size=%d", base, size));
+        }
+        final int firstPage = base >>> PAGE_SHIFT;
+        final int lastPage = (int) (((long) base + size - 1) >>> PAGE_SHIFT);
+        if (lastPage >= pages.length) {
+            pages = Arrays.copyOf(pages, lastPage + 1);
+        }
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (pages[page] != null) {
+                throw new IllegalArgumentException(String.format("Device at %d overlaps the device at %d", base, pages[page].base));
+            }
+        }
+
+        final Region region = new Region(base, size, device);
+        Arrays.fill(pages, firstPage, lastPage + 1, region);
+        regions.add(region);
+    }
+
+    /**
+     * Creates a bus over forks of every mapped device. Memory pages and frame buffer contents are
+     * shared copy-on-write where the device supports it. The write listener is not carried over.
+     *
+     * @return The forked bus.
+     */
+    public Bus fork() {
+
+        final Memory memoryFork = memory.fork();
+        final Bus fork = new Bus(memoryFork);
+        for (final Region region : regions) {
+            final BusDevice device = region.device == memory ? memoryFork : region.device.fork();
+            if (region.device == clint) {
+                fork.clint = (Clint) device;
+                fork.clintBase = region.base;
+            } else if (region.device == keyboard) {
+                fork.keyboard = (Keyboard) device;
+            }
+            fork.map(region.base, region.size, device);
+        }
+        return fork;
     }
 
     /**
@@ -45,42 +166,25 @@ public class Bus {
      */
     public void write(final int address, final int[] value) {
 
-        ComponentType componentType = whichComponentType(address); // Determine which component to use
-
-        switch (componentType) {
-            case FRAME_BUFFER:
-                // Write to frame buffer if the address corresponds to it
-                final int frameBufferAddress = address - Memory.getMemorySize();
-                if (frameBufferAddress >= 0 && frameBufferAddress <= 3) {
-                    frameBuffer.swap();
-                } else {
-                    frameBuffer.writePixel(frameBufferAddress - 4, value);
-                }
-                break;
-            case MEMORY:
-                // Write to memory if the address corresponds to it
-                memory.writeFromInt(address, value);
-                break;
-            default:
-                throw new RuntimeException("Invalid component type");
+        final Region region = regionOf(address);
+        if (region.device == memory) {
+            memory.writeFromInt(address - region.base, value);
+            notifyWrite(address, value.length * 4);
+        } else {
+            for (int i = 0; i < value.length; i++) {
+                writeWord(address + i * 4, value[i]);
+            }
         }
     }
 
     /**
-     * Determines which component type corresponds to a given address.
+     * Sets the listener notified after every write to memory, e.g. to invalidate translated code.
      *
-     * @param address The address to check against known component addresses.
-     * @return The component type associated with the address.
+     * @param writeListener The listener to notify, or null to stop notifying.
      */
-    public ComponentType whichComponentType(final int address) {
+    public void setWriteListener(final BusWriteListener writeListener) {
 
-        if (address >= 0 && address < memorySize) {
-            return MEMORY;
-        } else if (address >= memorySize && address <= frameBufferSize + memorySize) {
-            return FRAME_BUFFER;
-        } else {
-            throw new MemoryException("Invalid address: " + address);
-        }
+        this.writeListener = writeListener;
     }
 
     /**
@@ -90,19 +194,155 @@ public class Bus {
      * @param endDataPosition The end position for reading data.
      * @return The integer array read from the component.
      */
-    public int[] read(int address, final int endDataPosition) {
+    public int[] read(final int address, final int endDataPosition) {
+
+        final Region region = regionOf(address);
+        if (region.device == memory) {
+            return memory.readAsInt(address - region.base, endDataPosition - region.base);
+        }
+        final int[] value = new int[(endDataPosition - address) / 4];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = readWord(address + i * 4);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a 32-bit word from the appropriate component without allocating.
+     *
+     * @param address The address of the word.
+     * @return The word read from the component.
+     */
+    public int readWord(final int address) {
+
+        final Region region = regionOf(address);
+        return region.device.readWord(address - region.base);
+    }
+
+    /**
+     * Reads a 16-bit halfword from the appropriate component without allocating.
+     *
+     * @param address The address of the halfword.
+     * @return The halfword read from the component, sign-extended.
+     */
+    public short readHalfword(final int address) {
+
+        final Region region = regionOf(address);
+        return region.device.readHalfword(address - region.base);
+    }
+
+    /**
+     * Reads a single byte from the appropriate component without allocating.
+     *
+     * @param address The address of the byte.
+     * @return The byte read from the component.
+     */
+    public byte readByte(final int address) {
+
+        final Region region = regionOf(address);
+        return region.device.readByte(address - region.base);
+    }
+
+    /**
+     * Writes a 32-bit word to the appropriate component without allocating.
+     *
+     * @param address The address of the word.
+     * @param value   The word to write.
+     */
+    public void writeWord(final int address, final int value) {
+
+        final Region region = regionOf(address);
+        region.device.writeWord(address - region.base, value);
+        if (region.device == memory) {
+            notifyWrite(address, 4);
+        }
+    }
+
+    /**
+     * Writes the low 16 bits of a value to the appropriate component without allocating.
+     *
+     * @param address The address of the halfword.
+     * @param value   The value whose low halfword is written.
+     */
+    public void writeHalfword(final int address, final int value) {
+
+        final Region region = regionOf(address);
+        region.device.writeHalfword(address - region.base, value);
+        if (region.device == memory) {
+            notifyWrite(address, 2);
+        }
+    }
+
+    /**
+     * Writes the low 8 bits of a value to the appropriate component without allocating.
+     *
+     * @param address The address of the byte.
+     * @param value   The value whose low byte is written.
+     */
+    public void writeByte(final int address, final int value) {
+
+        final Region region = regionOf(address);
+        region.device.writeByte(address - region.base, value);
+        if (region.device == memory) {
+            notifyWrite(address, 1);
+        }
+    }
 
-        ComponentType componentType = whichComponentType(address); // Determine which component to read from
+    /**
+     * Finds the device region holding an address: the last region hit if it still matches,
+     * otherwise the region of the address's page.
+     *
+     * @param address The address to decode.
+     * @return The region holding the address.
+     * @throws MemoryException If no device is mapped at the address.
+     */
+    private Region regionOf(final int address) {
 
-        return switch (componentType) {
-            case FRAME_BUFFER:
-                address = address - Memory.getMemorySize() - 4;
-                if (address < 0) {
-                    throw new MemoryException("Invalid address");
-                }
-                yield frameBuffer.readFromPixelBufferAsInts(address, endDataPosition - Memory.getMemorySize() - 4);
-            case MEMORY:
-                yield memory.readAsInt(address, endDataPosition);
-        };
+        Region region = lastHit;
+        if (Integer.compareUnsigned(address - region.base, region.size) < 0) {
+            return region;
+        }
+        final int page = address >>> PAGE_SHIFT;
+        if (page < pages.length) {
+            region = pages[page];
+            if (region != null && Integer.compareUnsigned(address - region.base, region.size) < 0) {
+                lastHit = region;
+                return region;
+            }
+        }
+        throw new MemoryException("Invalid address: " + address);
     }
+
+    /**
+     * Notifies the write listener, if any, of a write to memory.
+     *
+     * @param address The address of the first byte written.
+     * @param length  The number of bytes written.
+     */
+    private void notifyWrite(final int address, final int length) {
+
+        if (writeListener != null) {
+            writeListener.onWrite(address, length);
+        }
+    }
+
+    /**
+     * A device mapped at a base address.
+     */
+    private static final class Region {
+
+        final int base; // The first address of the device
+
+        final int size; // The number of bytes the device occupies
+
+        final BusDevice device; // The device
+
+        Region(final int base, final int size, final BusDevice device) {
+
+            this.base = base;
+            this.size = size;
+            this.device = device;
+        }
+    }
+
 }
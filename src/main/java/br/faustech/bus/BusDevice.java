@@ -0,0 +1,80 @@
+package br.faustech.bus;
+
+/**
+ * A component mapped into the address space of the {@link Bus}. Offsets are relative to the base
+ * address the device was mapped at.
+ *
+ * <p>Devices only have to implement word accesses. By default, sub-word reads return the low part
+ * of the word at the offset and sub-word writes store the zero-extended value as a word, which
+ * suits devices whose registers are all word-sized.</p>
+ */
+public interface BusDevice {
+
+    /**
+     * Reads a 32-bit word.
+     *
+     * @param offset The offset of the word from the device base.
+     * @return The word read.
+     */
+    int readWord(int offset);
+
+    /**
+     * Writes a 32-bit word.
+     *
+     * @param offset The offset of the word from the device base.
+     * @param value  The word to write.
+     */
+    void writeWord(int offset, int value);
+
+    /**
+     * Reads a 16-bit halfword.
+     *
+     * @param offset The offset of the halfword from the device base.
+     * @return The halfword read, sign-extended.
+     */
+    default short readHalfword(final int offset) {
+
+        return (short) readWord(offset);
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @param offset The offset of the byte from the device base.
+     * @return The byte read.
+     */
+    default byte readByte(final int offset) {
+
+        return (byte) readWord(offset);
+    }
+
+    /**
+     * Writes the low 16 bits of a value.
+     *
+     * @param offset The offset of the halfword from the device base.
+     * @param value  The value whose low halfword is written.
+     */
+    default void writeHalfword(final int offset, final int value) {
+
+        writeWord(offset, value & 0xFFFF);
+    }
+
+    /**
+     * Writes the low 8 bits of a value.
+     *
+     * @param offset The offset of the byte from the device base.
+     * @param value  The value whose low byte is written.
+     */
+    default void writeByte(final int offset, final int value) {
+
+        writeWord(offset, value & 0xFF);
+    }
+
+    /**
+     * Creates an independent copy of the device, used when a machine is forked.
+     *
+     * @return The copy.
+     */
+    BusDevice fork();
+
+}
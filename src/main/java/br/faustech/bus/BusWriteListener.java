@@ -0,0 +1,17 @@
+package br.faustech.bus;
+
+/**
+ * Listener notified after data is written to memory through the {@link Bus}.
+ */
+@FunctionalInterface
+public interface BusWriteListener {
+
+    /**
+     * Called after a memory write has completed.
+     *
+     * @param address The first byte address that was written.
+     * @param length  The number of bytes written.
+     */
+    void onWrite(int address, int length);
+
+}
@@ -1,9 +0,0 @@
-package br.faustech.comum;
-
-/**
- * Enumerates the types of components that can be used within the system.
- */
-public enum ComponentType {
-    MEMORY,       // Represents a component that handles memory operations.
-    FRAME_BUFFER  // Represents a component that manages frame buffer operations.
-}
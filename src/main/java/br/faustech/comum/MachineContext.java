@@ -0,0 +1,94 @@
+package br.faustech.comum;
+
+import br.faustech.device.Keyboard;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Configuration and shared state of one emulated machine. The CPU, bus, memory, frame buffer, GPU
+ * and window of a machine all hold the same context instead of reading static fields, so any
+ * number of machines can run side by side in one JVM without seeing each other's state.
+ */
+@Getter
+public class MachineContext {
+
+    public static final int DEFAULT_TIMER_FREQUENCY = 10_000; // mtime ticks per millisecond, a nominal 10 MHz
+
+    private final int width; // Screen width in pixels
+
+    private final int height; // Screen height in pixels
+
+    private final int memorySize; // Size of guest RAM in bytes
+
+    private final int clockSpeed; // Milliseconds between two timer interrupts, until the guest sets mtimecmp
+
+    @Setter
+    private volatile Keyboard keyboard; // Keyboard of the machine's bus, fed by the window thread
+
+    @Setter
+    private volatile boolean halted; // The program stopped, the window should close
+
+    @Setter
+    private boolean headless; // Runs unattended, so idle time is skipped instead of waited out
+
+    @Setter
+    private boolean wallClockTimer; // mtime follows the system clock instead of retired instructions
+
+    @Setter
+    private int timerFrequency = DEFAULT_TIMER_FREQUENCY; // mtime ticks per millisecond
+
+    /**
+     * Constructs the context of a machine.
+     *
+     * @param width      The screen width in pixels.
+     * @param height     The screen height in pixels.
+     * @param memorySize The size of guest RAM in bytes.
+     * @param clockSpeed The milliseconds between two timer interrupts.
+     */
+    public MachineContext(final int width, final int height, final int memorySize, final int clockSpeed) {
+
+        this.width = width;
+        this.height = height;
+        this.memorySize = memorySize;
+        this.clockSpeed = clockSpeed;
+    }
+
+    /**
+     * Returns the number of bytes the guest sees for the pixels of one frame, four per pixel.
+     *
+     * @return The frame size in bytes.
+     */
+    public int getFrameSize() {
+
+        return width * height * 4;
+    }
+
+    /**
+     * Creates a context with the same configuration for a forked machine. The timer and keyboard
+     * state live in the forked bus.
+     *
+     * @return The new context.
+     */
+    public MachineContext fork() {
+
+        final MachineContext fork = new MachineContext(width, height, memorySize, clockSpeed);
+        fork.headless = headless;
+        fork.wallClockTimer = wallClockTimer;
+        fork.timerFrequency = timerFrequency;
+        return fork;
+    }
+
+    /**
+     * Queues a key press on the keyboard of the machine, once a CPU is attached to it. Called from
+     * the window thread.
+     *
+     * @param key The key code.
+     * @return false if the key was dropped, because no CPU is attached yet or the queue is full.
+     */
+    public boolean keyPressed(final int key) {
+
+        final Keyboard target = keyboard;
+        return target != null && target.press(key);
+    }
+
+}
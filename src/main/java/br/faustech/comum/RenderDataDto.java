@@ -2,6 +2,23 @@ package br.faustech.comum;
 
 import lombok.Builder;
 
+/**
+ * Pixels of the rows of a frame that changed since the previous render data.
+ *
+ * @param pixel The pixels of the changed rows back to back, top to bottom, as 0xRRGGBB.
+ * @param rows  Runs of adjacent changed rows, as pairs of first row and row count.
+ */
 @Builder
-public record RenderDataDto(float[] vertex, float[] pixel) {
-}
\ No newline at end of file
+public record RenderDataDto(int[] pixel, int[] rows) {
+
+    /**
+     * Tells whether no row changed, so there is nothing to upload.
+     *
+     * @return true if the render data holds no rows.
+     */
+    public boolean isEmpty() {
+
+        return rows.length == 0;
+    }
+
+}
@@ -0,0 +1,140 @@
+package br.faustech.cpu;
+
+/**
+ * A straight-line run of decoded instructions that is entered only at its first instruction and
+ * ends at a jump, branch or system instruction (or at a page boundary).
+ */
+final class BasicBlock {
+
+    final int startAddress; // Address of the first instruction of the block
+
+    final DecodedInstruction[] instructions; // Instructions of the block, in program order
+
+    final int[] loopWrites; // Registers written by the block if it is a side-effect-free loop to itself, else null
+
+    final int loads; // Load instructions in the block
+
+    final int stores; // Store instructions in the block
+
+    final boolean endsWithBranch; // The last instruction is a conditional branch
+
+    boolean valid = true; // Cleared when a store overwrites the code this block was translated from
+
+    int executions; // Times the block ran in the interpreter
+
+    CompiledBlock compiled; // JVM bytecode translation of the block, once it is hot
+
+    boolean profiled; // Registered with the profiler
+
+    long profiledRuns; // Complete runs counted by the profiler
+
+    long takenRuns; // Profiled complete runs that left through the taken branch at the end
+
+    long[] partialRuns; // Profiled runs cut short, indexed by instructions executed minus one
+
+    /**
+     * Constructs a basic block.
+     *
+     * @param startAddress the address of the first instruction.
+     * @param instructions the decoded instructions of the block.
+     */
+    BasicBlock(final int startAddress, final DecodedInstruction[] instructions) {
+
+        this.startAddress = startAddress;
+        this.instructions = instructions;
+        this.loopWrites = findLoopWrites(startAddress, instructions);
+        this.loads = countLoads(instructions, instructions.length);
+        this.stores = countStores(instructions, instructions.length);
+        this.endsWithBranch = instructions[instructions.length - 1].opcode().isConditionalBranch();
+    }
+
+    /**
+     * Counts the loads among the first instructions of a block.
+     *
+     * @param instructions the instructions of the block.
+     * @param length       the number of instructions to look at.
+     * @return the number of loads.
+     */
+    static int countLoads(final DecodedInstruction[] instructions, final int length) {
+
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (instructions[i].opcode().isLoad()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the stores among the first instructions of a block.
+     *
+     * @param instructions the instructions of the block.
+     * @param length       the number of instructions to look at.
+     * @return the number of stores.
+     */
+    static int countStores(final DecodedInstruction[] instructions, final int length) {
+
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (instructions[i].opcode().isStore()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Recognizes a block that may be an idle loop: it ends with a jump or branch back to its own
+     * start and otherwise only loads and computes, without stores, CSR or system instructions.
+     * Such a loop can only leave once a register it writes changes; if an iteration leaves all of
+     * them as they were, every further iteration repeats it until an interrupt or a device changes
+     * what the loads read.
+     *
+     * @param startAddress the address of the first instruction.
+     * @param instructions the decoded instructions of the block.
+     * @return the distinct registers the block writes, x0 excluded, or null if it is no such loop.
+     */
+    private static int[] findLoopWrites(final int startAddress, final DecodedInstruction[] instructions) {
+
+        final DecodedInstruction last = instructions[instructions.length - 1];
+        final int lastAddress = startAddress + (instructions.length - 1) * 4;
+        final boolean loopsToStart = (last.opcode() == Opcode.JAL || last.opcode().isConditionalBranch())
+                && lastAddress + last.imm() == startAddress;
+        if (!loopsToStart) {
+            return null;
+        }
+
+        int written = 0; // Bit set of written registers
+        for (DecodedInstruction instruction : instructions) {
+            switch (instruction.opcode()) {
+                case ADD, SUB, SLL, SLT, SLTU, XOR, SRL, SRA, OR, AND, LUI, AUIPC, JAL, LB, LH, LW, LBU, LHU,
+                     ADDI, SLTI, SLTIU, XORI, ORI, ANDI, SLLI, SRLI, SRAI -> written |= 1 << instruction.rd();
+                case BEQ, BNE, BLT, BGE, BLTU, BGEU -> {
+                    // Branches write no register
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        written &= ~1; // Writes to x0 are discarded
+
+        final int[] registers = new int[Integer.bitCount(written)];
+        for (int i = 0; written != 0; i++, written &= written - 1) {
+            registers[i] = Integer.numberOfTrailingZeros(written);
+        }
+        return registers;
+    }
+
+    /**
+     * Returns the address just past the last instruction of the block.
+     *
+     * @return the end address (exclusive).
+     */
+    int endAddress() {
+
+        return startAddress + instructions.length * 4;
+    }
+
+}
@@ -0,0 +1,151 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.BusWriteListener;
+
+/**
+ * Caches translated basic blocks by start address and drops them when their code is overwritten.
+ *
+ * <p>The cache is split into 4 KiB pages and a block never crosses a page boundary. Each page
+ * keeps a bitmap of the instruction words covered by its blocks, so a store only costs a page
+ * lookup, plus a bit test on pages that hold code. A store that hits translated code invalidates
+ * every block of that page.</p>
+ */
+final class BlockCache implements BusWriteListener {
+
+    static final int PAGE_SHIFT = 12; // 4 KiB pages
+
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int WORDS_PER_PAGE = PAGE_SIZE >>> 2;
+
+    private final Page[] pages; // Page table, a null entry means the page holds no translated code
+
+    /**
+     * Constructs a block cache covering the given number of bytes of address space.
+     *
+     * @param addressSpace the highest byte address (exclusive) code may be fetched from.
+     */
+    BlockCache(final int addressSpace) {
+
+        this.pages = new Page[(addressSpace >>> PAGE_SHIFT) + 1];
+    }
+
+    /**
+     * Returns the block starting at the given address, if one was translated.
+     *
+     * @param address the start address of the block.
+     * @return the cached block, or null if there is none.
+     */
+    BasicBlock lookup(final int address) {
+
+        final int pageIndex = address >>> PAGE_SHIFT;
+        if (pageIndex >= pages.length) {
+            return null;
+        }
+        final Page page = pages[pageIndex];
+        return page == null ? null : page.blocks[(address & (PAGE_SIZE - 1)) >>> 2];
+    }
+
+    /**
+     * Adds a translated block to the cache. Blocks outside the covered address space are not cached.
+     *
+     * @param block the block to add; it must not cross a page boundary.
+     */
+    void insert(final BasicBlock block) {
+
+        final int pageIndex = block.startAddress >>> PAGE_SHIFT;
+        if (pageIndex >= pages.length) {
+            return;
+        }
+        Page page = pages[pageIndex];
+        if (page == null) {
+            page = new Page();
+            pages[pageIndex] = page;
+        }
+
+        final int firstWord = (block.startAddress & (PAGE_SIZE - 1)) >>> 2;
+        page.blocks[firstWord] = block;
+        for (int word = firstWord; word < firstWord + block.instructions.length; word++) {
+            page.code[word >>> 6] |= 1L << word;
+        }
+    }
+
+    /**
+     * Invalidates the blocks of every page whose translated code overlaps the written range.
+     * Writes of up to a word, which is every store instruction, only test their first and last
+     * word and run no loop, so this stays small enough to inline into every compiled store.
+     *
+     * @param address the first byte address that was written.
+     * @param length  the number of bytes written.
+     */
+    @Override
+    public void onWrite(final int address, final int length) {
+
+        final int lastAddress = address + length - 1;
+        if (length <= 4) {
+            invalidateWord(address);
+            invalidateWord(lastAddress);
+            return;
+        }
+        for (int pageIndex = address >>> PAGE_SHIFT; pageIndex <= lastAddress >>> PAGE_SHIFT && pageIndex < pages.length; pageIndex++) {
+            final Page page = pages[pageIndex];
+            if (page == null) {
+                continue;
+            }
+            final int pageStart = pageIndex << PAGE_SHIFT;
+            final int firstWord = (Math.max(address, pageStart) - pageStart) >>> 2;
+            final int lastWord = (Math.min(lastAddress, pageStart + PAGE_SIZE - 1) - pageStart) >>> 2;
+            for (int word = firstWord; word <= lastWord; word++) {
+                if ((page.code[word >>> 6] & (1L << word)) != 0) {
+                    invalidatePage(pageIndex);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates the page holding an address if the word at that address is translated code.
+     *
+     * @param address a byte address that was written.
+     */
+    private void invalidateWord(final int address) {
+
+        final int pageIndex = address >>> PAGE_SHIFT;
+        if (pageIndex >= pages.length) {
+            return;
+        }
+        final Page page = pages[pageIndex];
+        final int word = (address & (PAGE_SIZE - 1)) >>> 2;
+        if (page != null && (page.code[word >>> 6] & (1L << word)) != 0) {
+            invalidatePage(pageIndex);
+        }
+    }
+
+    /**
+     * Drops every block of a page and marks them invalid so running blocks stop early.
+     *
+     * @param pageIndex the index of the page to drop.
+     */
+    private void invalidatePage(final int pageIndex) {
+
+        for (final BasicBlock block : pages[pageIndex].blocks) {
+            if (block != null) {
+                block.valid = false;
+            }
+        }
+        pages[pageIndex] = null;
+    }
+
+    /**
+     * Translated blocks and code bitmap of a single page.
+     */
+    private static final class Page {
+
+        private final BasicBlock[] blocks = new BasicBlock[WORDS_PER_PAGE]; // Blocks by start word
+
+        private final long[] code = new long[WORDS_PER_PAGE / 64]; // Words covered by any block
+
+    }
+
+}
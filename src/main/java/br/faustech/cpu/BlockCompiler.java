@@ -0,0 +1,562 @@
+package br.faustech.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates hot basic blocks into hidden JVM classes implementing {@link CompiledBlock}.
+ *
+ * <p>Every guest register used by a block is copied into a JVM local on entry, so the JIT can keep
+ * it in a host register for the whole block, and written back before each memory access and on
+ * exit. Loads and stores go through {@link CPU#compiledLoad} and {@link CPU#compiledStore}, which
+ * record the address of the accessing instruction so the CPU can fall back to the interpreter when
+ * an access fails. Conditional branches and set-less-than operations call the small static helpers
+ * of this class, which keeps the generated method free of jumps; the class file therefore needs no
+ * stack map frames.</p>
+ *
+ * <p>Only blocks of plain RV32I computation, loads, stores, jumps and branches are translated.
+ * Blocks holding system or CSR instructions keep running in the interpreter.</p>
+ */
+final class BlockCompiler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup(); // Hidden classes join this package
+
+    private static final String CLASS_NAME = "br/faustech/cpu/TranslatedBlock";
+
+    private static final String CPU_CLASS = "br/faustech/cpu/CPU";
+
+    private static final String OPCODE_CLASS = "br/faustech/cpu/Opcode";
+
+    private static final String COMPILER_CLASS = "br/faustech/cpu/BlockCompiler";
+
+    private static final int CPU_LOCAL = 1; // Local holding the CPU argument
+
+    private static final int REGISTERS_LOCAL = 2; // Local holding the register array argument
+
+    private static final int TARGET_LOCAL = REGISTERS_LOCAL + 32; // Local holding a computed jump target
+
+    private BlockCompiler() {
+    }
+
+    /**
+     * Tells whether a block only holds instructions the compiler can translate.
+     *
+     * @param block the block to check.
+     * @return true if the block can be compiled.
+     */
+    static boolean canCompile(final BasicBlock block) {
+
+        for (final DecodedInstruction instruction : block.instructions) {
+            switch (instruction.opcode()) {
+                case ECALL, EBREAK, MRET, WFI, CSRRW, CSRRS, CSRRC, CSRRWI, CSRRSI, CSRRCI, UNKNOWN -> {
+                    return false;
+                }
+                default -> {
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translates a block into a hidden class and returns an instance of it.
+     *
+     * @param block the block to translate; {@link #canCompile(BasicBlock)} must hold for it.
+     * @return the compiled block.
+     * @throws IllegalStateException if the class cannot be generated or defined.
+     */
+    static CompiledBlock compile(final BasicBlock block) {
+
+        try {
+            final MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(new ClassBuilder(block).build(), true);
+            return (CompiledBlock) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException(String.format("Failed to compile block at %d: %s", block.startAddress, e), e);
+        }
+    }
+
+    static int slt(final int a, final int b) {
+
+        return a < b ? 1 : 0;
+    }
+
+    static int sltu(final int a, final int b) {
+
+        return Integer.compareUnsigned(a, b) < 0 ? 1 : 0;
+    }
+
+    static int beq(final int a, final int b, final int taken, final int notTaken) {
+
+        return a == b ? taken : notTaken;
+    }
+
+    static int bne(final int a, final int b, final int taken, final int notTaken) {
+
+        return a != b ? taken : notTaken;
+    }
+
+    static int blt(final int a, final int b, final int taken, final int notTaken) {
+
+        return a < b ? taken : notTaken;
+    }
+
+    static int bge(final int a, final int b, final int taken, final int notTaken) {
+
+        return a >= b ? taken : notTaken;
+    }
+
+    static int bltu(final int a, final int b, final int taken, final int notTaken) {
+
+        return Integer.compareUnsigned(a, b) < 0 ? taken : notTaken;
+    }
+
+    static int bgeu(final int a, final int b, final int taken, final int notTaken) {
+
+        return Integer.compareUnsigned(a, b) >= 0 ? taken : notTaken;
+    }
+
+    /**
+     * Writes the class file of a single translated block.
+     */
+    private static final class ClassBuilder {
+
+        // Opcodes of the JVM instructions the translation uses
+        private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+        private static final int ILOAD = 0x15, ALOAD = 0x19, IALOAD = 0x2E, ISTORE = 0x36, IASTORE = 0x4F, POP = 0x57;
+        private static final int IADD = 0x60, ISUB = 0x64, ISHL = 0x78, ISHR = 0x7A, IUSHR = 0x7C;
+        private static final int IAND = 0x7E, IOR = 0x80, IXOR = 0x82, IRETURN = 0xAC, RETURN = 0xB1;
+        private static final int GETSTATIC = 0xB2, INVOKEVIRTUAL = 0xB6, INVOKESPECIAL = 0xB7, INVOKESTATIC = 0xB8;
+
+        private final BasicBlock block;
+
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream(); // Constant pool entries
+
+        private final ByteArrayOutputStream entry = new ByteArrayOutputStream(); // Constant pool entry being written
+
+        private final Map<ByteBuffer, Integer> poolIndexes = new HashMap<>(); // Indexes of the constant pool entries, by their bytes
+
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream(); // Code of the run method
+
+        private final boolean[] dirty = new boolean[32]; // Registers written to locals but not yet to the array
+
+        private int poolCount = 1;
+
+        ClassBuilder(final BasicBlock block) {
+
+            this.block = block;
+        }
+
+        /**
+         * Generates the class file bytes.
+         *
+         * @return the class file.
+         * @throws IOException never, the output is in memory.
+         */
+        byte[] build() throws IOException {
+
+            final int thisClass = classEntry(CLASS_NAME);
+            final int superClass = classEntry("java/lang/Object");
+            final int interfaceClass = classEntry("br/faustech/cpu/CompiledBlock");
+            final int codeName = utf8("Code");
+            final int initName = utf8("<init>");
+            final int initType = utf8("()V");
+            final int objectInit = methodEntry("java/lang/Object", "<init>", "()V");
+            final int runName = utf8("run");
+            final int runType = utf8("(L" + CPU_CLASS + ";[I)I");
+
+            final byte[] runCode = generateRun();
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);                      // Minor version
+            out.writeShort(52);                     // Major version, no stack map frames are needed
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(0x0010 | 0x0020);        // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0);                      // Fields
+            out.writeShort(2);                      // Methods
+
+            // public <init>() { super(); }
+            writeMethod(out, initName, initType, codeName, 1, 1,
+                    new byte[]{(byte) ALOAD, 0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN});
+            // public int run(CPU cpu, int[] registers)
+            writeMethod(out, runName, runType, codeName, 8, TARGET_LOCAL + 1, runCode);
+
+            out.writeShort(0);                      // Class attributes
+            return bytes.toByteArray();
+        }
+
+        private void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack, int maxLocals,
+                                 byte[] body) throws IOException {
+
+            out.writeShort(0x0001);                 // ACC_PUBLIC
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);                      // Exception table
+            out.writeShort(0);                      // Code attributes
+        }
+
+        /**
+         * Generates the body of the run method: load registers, translate each instruction, write
+         * registers back and return the next program counter.
+         *
+         * @return the bytecode of the method.
+         */
+        private byte[] generateRun() {
+
+            final boolean[] used = new boolean[32];
+            for (final DecodedInstruction instruction : block.instructions) {
+                used[instruction.rs1()] |= readsRs1(instruction.opcode());
+                used[instruction.rs2()] |= readsRs2(instruction.opcode());
+            }
+            for (int register = 1; register < 32; register++) {
+                if (used[register]) {
+                    op(ALOAD, REGISTERS_LOCAL);
+                    pushInt(register);
+                    op(IALOAD);
+                    op(ISTORE, REGISTERS_LOCAL + register);
+                }
+            }
+
+            boolean computedTarget = false;
+            int pc = block.startAddress;
+            for (final DecodedInstruction instruction : block.instructions) {
+                computedTarget = translate(instruction, pc);
+                pc += 4;
+            }
+
+            flushRegisters();
+            if (computedTarget) {
+                op(ILOAD, TARGET_LOCAL);
+            } else {
+                pushInt(pc);
+            }
+            op(IRETURN);
+            return code.toByteArray();
+        }
+
+        /**
+         * Emits the bytecode of one instruction.
+         *
+         * @param instruction the instruction.
+         * @param pc          its address.
+         * @return true if the instruction left the next program counter in the target local.
+         */
+        private boolean translate(final DecodedInstruction instruction, final int pc) {
+
+            final int rd = instruction.rd();
+            final int rs1 = instruction.rs1();
+            final int rs2 = instruction.rs2();
+            final int imm = instruction.imm();
+
+            switch (instruction.opcode()) {
+                case ADD -> binary(rs1, rs2, IADD, rd);
+                case SUB -> binary(rs1, rs2, ISUB, rd);
+                case SLL -> binary(rs1, rs2, ISHL, rd);
+                case SRL -> binary(rs1, rs2, IUSHR, rd);
+                case SRA -> binary(rs1, rs2, ISHR, rd);
+                case XOR -> binary(rs1, rs2, IXOR, rd);
+                case OR -> binary(rs1, rs2, IOR, rd);
+                case AND -> binary(rs1, rs2, IAND, rd);
+                case SLT -> compare(rs1, rs2, "slt", rd);
+                case SLTU -> compare(rs1, rs2, "sltu", rd);
+                case ADDI -> immediate(rs1, imm, IADD, rd);
+                case XORI -> immediate(rs1, imm, IXOR, rd);
+                case ORI -> immediate(rs1, imm, IOR, rd);
+                case ANDI -> immediate(rs1, imm, IAND, rd);
+                case SLLI -> immediate(rs1, imm, ISHL, rd);
+                case SRLI -> immediate(rs1, imm, IUSHR, rd);
+                case SRAI -> immediate(rs1, imm, ISHR, rd);
+                case SLTI -> {
+                    loadRegister(rs1);
+                    pushInt(imm);
+                    invokeStatic("slt", "(II)I");
+                    storeRegister(rd);
+                }
+                case SLTIU -> {
+                    loadRegister(rs1);
+                    pushInt(imm);
+                    invokeStatic("sltu", "(II)I");
+                    storeRegister(rd);
+                }
+                case LUI -> {
+                    pushInt(imm);
+                    storeRegister(rd);
+                }
+                case AUIPC -> {
+                    pushInt(pc + imm);
+                    storeRegister(rd);
+                }
+                case LB, LH, LW, LBU, LHU -> {
+                    flushRegisters();
+                    op(ALOAD, CPU_LOCAL);
+                    opcodeConstant(instruction.opcode());
+                    effectiveAddress(rs1, imm);
+                    pushInt(pc);
+                    invoke(INVOKEVIRTUAL, CPU_CLASS, "compiledLoad", "(L" + OPCODE_CLASS + ";II)I");
+                    storeRegister(rd);
+                }
+                case SB, SH, SW -> {
+                    flushRegisters();
+                    op(ALOAD, CPU_LOCAL);
+                    opcodeConstant(instruction.opcode());
+                    effectiveAddress(rs1, imm);
+                    loadRegister(rs2);
+                    pushInt(pc);
+                    invoke(INVOKEVIRTUAL, CPU_CLASS, "compiledStore", "(L" + OPCODE_CLASS + ";III)V");
+                }
+                case JAL -> {
+                    pushInt(pc + imm);
+                    op(ISTORE, TARGET_LOCAL);
+                    pushInt(pc + 4);
+                    storeRegister(rd);
+                    return true;
+                }
+                case JALR -> {
+                    effectiveAddress(rs1, imm);
+                    pushInt(~1);
+                    op(IAND);
+                    op(ISTORE, TARGET_LOCAL);
+                    pushInt(pc + 4);
+                    storeRegister(rd);
+                    return true;
+                }
+                case BEQ, BNE, BLT, BGE, BLTU, BGEU -> {
+                    loadRegister(rs1);
+                    loadRegister(rs2);
+                    pushInt(pc + imm);
+                    pushInt(pc + 4);
+                    invokeStatic(instruction.opcode().mnemonic(), "(IIII)I");
+                    op(ISTORE, TARGET_LOCAL);
+                    return true;
+                }
+                default -> throw new IllegalArgumentException("Cannot translate " + instruction.opcode().mnemonic());
+            }
+            return false;
+        }
+
+        private static boolean readsRs1(final Opcode opcode) {
+
+            return switch (opcode) {
+                case LUI, AUIPC, JAL -> false;
+                default -> true;
+            };
+        }
+
+        private static boolean readsRs2(final Opcode opcode) {
+
+            return switch (opcode) {
+                case ADD, SUB, SLL, SLT, SLTU, XOR, SRL, SRA, OR, AND, SB, SH, SW, BEQ, BNE, BLT, BGE, BLTU, BGEU -> true;
+                default -> false;
+            };
+        }
+
+        private void binary(int rs1, int rs2, int operation, int rd) {
+
+            loadRegister(rs1);
+            loadRegister(rs2);
+            op(operation);
+            storeRegister(rd);
+        }
+
+        private void compare(int rs1, int rs2, String helper, int rd) {
+
+            loadRegister(rs1);
+            loadRegister(rs2);
+            invokeStatic(helper, "(II)I");
+            storeRegister(rd);
+        }
+
+        private void immediate(int rs1, int imm, int operation, int rd) {
+
+            loadRegister(rs1);
+            pushInt(imm);
+            op(operation);
+            storeRegister(rd);
+        }
+
+        private void effectiveAddress(int rs1, int imm) {
+
+            loadRegister(rs1);
+            if (imm != 0) {
+                pushInt(imm);
+                op(IADD);
+            }
+        }
+
+        private void loadRegister(final int register) {
+
+            if (register == 0) {
+                op(ICONST_0);
+            } else {
+                op(ILOAD, REGISTERS_LOCAL + register);
+            }
+        }
+
+        private void storeRegister(final int register) {
+
+            if (register == 0) {
+                op(POP); // Writes to x0 are discarded
+            } else {
+                op(ISTORE, REGISTERS_LOCAL + register);
+                dirty[register] = true;
+            }
+        }
+
+        /**
+         * Writes every register changed since the last flush back to the register array.
+         */
+        private void flushRegisters() {
+
+            for (int register = 1; register < 32; register++) {
+                if (dirty[register]) {
+                    op(ALOAD, REGISTERS_LOCAL);
+                    pushInt(register);
+                    op(ILOAD, REGISTERS_LOCAL + register);
+                    op(IASTORE);
+                    dirty[register] = false;
+                }
+            }
+        }
+
+        private void opcodeConstant(final Opcode opcode) {
+
+            final int field = memberEntry(9, OPCODE_CLASS, opcode.name(), "L" + OPCODE_CLASS + ";");
+            op(GETSTATIC);
+            u2(field);
+        }
+
+        private void invokeStatic(final String name, final String descriptor) {
+
+            invoke(INVOKESTATIC, COMPILER_CLASS, name, descriptor);
+        }
+
+        private void invoke(final int opcode, final String owner, final String name, final String descriptor) {
+
+            op(opcode);
+            u2(methodEntry(owner, name, descriptor));
+        }
+
+        private void pushInt(final int value) {
+
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, value & 0xFF);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(integerEntry(value));
+            }
+        }
+
+        private void op(final int opcode) {
+
+            code.write(opcode);
+        }
+
+        private void op(final int opcode, final int operand) {
+
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        private void u2(final int value) {
+
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private int utf8(final String value) {
+
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8); // Same as modified UTF-8 for the ASCII names used
+            entry.write(1);
+            entryShort(bytes.length);
+            entry.writeBytes(bytes);
+            return addEntry();
+        }
+
+        private int integerEntry(final int value) {
+
+            entry.write(3);
+            entryShort(value >>> 16);
+            entryShort(value);
+            return addEntry();
+        }
+
+        private int classEntry(final String name) {
+
+            final int nameIndex = utf8(name);
+            entry.write(7);
+            entryShort(nameIndex);
+            return addEntry();
+        }
+
+        private int methodEntry(final String owner, final String name, final String descriptor) {
+
+            return memberEntry(10, owner, name, descriptor);
+        }
+
+        private int memberEntry(final int tag, final String owner, final String name, final String descriptor) {
+
+            final int ownerIndex = classEntry(owner);
+            final int nameIndex = utf8(name);
+            final int descriptorIndex = utf8(descriptor);
+            entry.write(12);
+            entryShort(nameIndex);
+            entryShort(descriptorIndex);
+            final int nameAndType = addEntry();
+            entry.write(tag);
+            entryShort(ownerIndex);
+            entryShort(nameAndType);
+            return addEntry();
+        }
+
+        private void entryShort(final int value) {
+
+            entry.write(value >> 8);
+            entry.write(value);
+        }
+
+        /**
+         * Adds the entry written so far to the constant pool, unless an equal entry is already
+         * there. Entries the entry refers to must be added before writing it.
+         *
+         * @return the index of the entry.
+         */
+        private int addEntry() {
+
+            final byte[] bytes = entry.toByteArray();
+            entry.reset();
+            final Integer existing = poolIndexes.putIfAbsent(ByteBuffer.wrap(bytes), poolCount);
+            if (existing != null) {
+                return existing;
+            }
+            pool.writeBytes(bytes);
+            return poolCount++;
+        }
+
+    }
+
+}
@@ -2,12 +2,14 @@ package br.faustech.cpu;
 
 import br.faustech.Main;
 import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
 import br.faustech.gui.GUI;
-import br.faustech.memory.Memory;
 import br.faustech.memory.MemoryException;
+import br.faustech.trace.TraceBuffer;
+import lombok.Setter;
 import lombok.extern.java.Log;
 
-import java.util.function.BiFunction;
+import java.util.Arrays;
 
 /**
  * CPU class that extends Thread to simulate a CPU execution environment. This class
@@ -23,54 +25,84 @@ public class CPU extends CPUInterrupt {
     private static final int MCAUSE = 834;              // CSR register
     private static final int MTVAL = 835;               // CSR register
     private static final int MIP = 836;                 // CSR register
+    private static final int MAX_BLOCK_LENGTH = 128;    // Longest basic block, bounds the interrupt latency
+    public static final int DEFAULT_TRANSLATION_THRESHOLD = 1000; // Executions before a block is compiled
+    private static final CodeModifiedException CODE_MODIFIED = new CodeModifiedException();
     private final int[] registers = new int[32];        // 32 general-purpose registers
     private final int[] csrRegisters = new int[4096];   // CSR registers
     private final Bus bus;                              // The bus to be used by the CPU for memory access
+    private final DecodeCache decodeCache;              // Decoded instructions, cached by program counter
+    private final BlockCache blockCache;                // Translated basic blocks, cached by start address
+    private final PerformanceCounters counters;         // Cycle, instret and event counters read through CSRs
     private int programCounter = 0;                     // The program counter to keep track of the current instruction
+    private BasicBlock currentBlock;                    // Block that is running
+    private final int[] loopState = new int[32];        // Registers written by an idle loop candidate, before it ran
+    @Setter
+    private boolean idleLoopSkipping;                   // Waits for an interrupt when an idle loop spins without effect
+    @Setter
+    private int translationThreshold = DEFAULT_TRANSLATION_THRESHOLD; // Executions before compiling, 0 disables it
+    @Setter
+    private Profiler profiler;                          // Counts executed blocks, null while profiling is off
+    @Setter
+    private TraceBuffer trace;                          // Receives a record per executed instruction, null while tracing is off
     private GUI gui;                                    // GUI reference to call specific functions if necessary
 
     /**
-     * Constructs a CPU with a specified bus.
+     * Constructs a CPU with a specified bus and starts the first timer period.
      *
-     * @param bus the bus to be used by the CPU
+     * @param context the machine the CPU belongs to
+     * @param bus     the bus to be used by the CPU
      */
-    public CPU(final Bus bus, GUI gui) {
-        initializeRegisters();
-        this.bus = bus;
+    public CPU(final MachineContext context, final Bus bus, GUI gui) {
+        this(context, bus, new PerformanceCounters());
         if (gui != null) {
             this.gui = gui;
             gui.setRegisterUpdater(registers);
         }
+        clint.reload(); // Starts the first timer period without calling the overridable restartTimer()
     }
 
     /**
-     * Retrieves the index of a register from the instruction parts.
+     * Constructs a CPU with a specified bus, leaving the timer as the bus holds it.
      *
-     * @param parts     the instruction parts
-     * @param partIndex the index of the part to retrieve the register index from
-     * @return the register index
+     * @param context  the machine the CPU belongs to
+     * @param bus      the bus to be used by the CPU
+     * @param counters the performance counters to continue from
      */
-    private static int getRegisterIndex(String[] parts, int partIndex) {
-        try {
-            return Integer.parseInt(parts[partIndex].split("=")[1].replace(",", ""));
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Invalid register index in part: %s", parts[partIndex]));
-        }
+    private CPU(final MachineContext context, final Bus bus, final PerformanceCounters counters) {
+        super(context, bus);
+        initializeRegisters();
+        this.bus = bus;
+        this.counters = counters;
+        this.idleLoopSkipping = context.isHeadless() || context.isWallClockTimer();
+        this.decodeCache = new DecodeCache(context.getMemorySize());
+        this.blockCache = new BlockCache(context.getMemorySize());
+        bus.setWriteListener(blockCache);
     }
 
     /**
-     * Retrieves the immediate value from the instruction parts.
+     * Constructs a CPU that resumes from a snapshot, on its own fork of the snapshot's memory,
+     * frame buffer and timer.
      *
-     * @param parts     the instruction parts
-     * @param partIndex the index of the part to retrieve the immediate value from
-     * @return the immediate value
+     * @param snapshot the state to resume from
      */
-    private static int getImmediateValue(String[] parts, int partIndex) {
-        try {
-            return Integer.parseInt(parts[partIndex].split("=")[1].replace(",", ""));
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Invalid immediate value in part: %s", parts[partIndex]));
-        }
+    CPU(final MachineSnapshot snapshot) {
+        this(snapshot.context.fork(), snapshot.bus.fork(), snapshot.counters.copy());
+        System.arraycopy(snapshot.registers, 0, registers, 0, registers.length);
+        System.arraycopy(snapshot.csrRegisters, 0, csrRegisters, 0, csrRegisters.length);
+        this.programCounter = snapshot.programCounter;
+    }
+
+    /**
+     * Captures the registers, CSRs, program counter, memory and frame buffer of this CPU. Memory
+     * and frame buffer are forked copy-on-write, so the CPU can keep running afterwards. Must be
+     * called from the CPU thread or while the CPU is not running.
+     *
+     * @return the snapshot, from which any number of CPUs can be forked
+     */
+    public MachineSnapshot snapshot() {
+        return new MachineSnapshot(context, registers.clone(), csrRegisters.clone(), counters.copy(), programCounter,
+                bus.fork());
     }
 
     /**
@@ -97,22 +129,28 @@ public class CPU extends CPUInterrupt {
      */
     private void initializeRegisters() {
         // Stack Pointer (sp) to the top of the memory
-        registers[2] = Memory.getMemorySize() - 4;
+        registers[2] = context.getMemorySize() - 4;
         // Global Pointer (gp) to some midpoint in memory, e.g., for global data
-        registers[3] = Memory.getMemorySize() / 2;
+        registers[3] = context.getMemorySize() / 2;
         // Thread Pointer (tp) to some specific address for thread-local data
         // Frame Pointer (fp) to the start of the stack
         registers[8] = registers[2];
     }
 
     /**
-     * The main execution loop of the CPU. Fetches and executes instructions continuously.
+     * The main execution loop of the CPU. Fetches and executes basic blocks continuously, and
+     * flushes the trace, if any, once it stops.
      */
     @Override
     public void run() {
-        setStartTime();
-        while (!isInterrupted()) {
-            processNextInstruction();
+        try {
+            while (!isInterrupted()) {
+                processNextBlock();
+            }
+        } finally {
+            if (trace != null) {
+                trace.flush();
+            }
         }
     }
 
@@ -127,6 +165,7 @@ public class CPU extends CPUInterrupt {
 
         csrRegisters[MEPC] = programCounter;
         setCsrRegister(MIP, 1);
+        counters.interrupt();
         if (csrRegisters[MCAUSE] >= 2) {
             setCsrRegister(MTVAL, csrRegisters[MCAUSE] - 2); // MTVAL has the value of the key pressed
             setCsrRegister(MCAUSE, 2);// MCAUSE has the value that was a key interrupt
@@ -136,26 +175,271 @@ public class CPU extends CPUInterrupt {
         setCsrRegister(MCAUSE, 0);
     }
 
+    /**
+     * Takes a pending interrupt, if interrupts are enabled and no handler is running. Costs a
+     * comparison and a read of the key queue when nothing is pending.
+     */
+    private void checkInterrupts() {
+        if (csrRegisters[MIE] == 1 && csrRegisters[MIP] == 0) {
+            setCsrRegister(MCAUSE, checkInterruption());
+            if (csrRegisters[MCAUSE] != 0) {
+                interruptHandler();
+            }
+        }
+    }
+
     /**
      * Fetches the next instruction from memory and executes it.
      */
     public void processNextInstruction() {
         // Set the pc to the first memory position and start reading 4 bytes instruction and sending them to execution
         try {
-            if (csrRegisters[MIE] == 1 && csrRegisters[MIP] == 0) {
-                isInterruptEnabled = true;
-                setCsrRegister(MCAUSE, checkInterruption());
-                if (csrRegisters[MCAUSE] != 0) {
-                    interruptHandler();
+            checkInterrupts();
+            final int pc = programCounter;
+            final DecodedInstruction instruction = decodeCache.get(pc, bus.readWord(pc));
+            execute(instruction);
+            clint.retire(1);
+            counters.retire(instruction, pc, programCounter);
+        } catch (MemoryException e) {
+            reportFailure(e);
+        }
+    }
+
+    /**
+     * Executes the basic block at the program counter, translating it first if it is not cached.
+     * Interrupts are only taken between blocks, and the timer advances by whole blocks. If the
+     * block is a loop to itself that just spun once without changing any register, the CPU waits
+     * for the next interrupt as if the guest had executed wfi. This is on by default for headless
+     * machines and for machines whose timer follows real time; an interactive machine counting
+     * instructions keeps spinning, so its timer advances exactly as the guest's code runs.
+     *
+     * @return the number of instructions executed.
+     */
+    public int processNextBlock() {
+        try {
+            checkInterrupts();
+            BasicBlock block = blockCache.lookup(programCounter);
+            if (block == null) {
+                block = translateBlock(programCounter);
+                blockCache.insert(block);
+            }
+            final int[] loopWrites = idleLoopSkipping ? block.loopWrites : null;
+            if (loopWrites != null) {
+                for (int i = 0; i < loopWrites.length; i++) {
+                    loopState[i] = registers[loopWrites[i]];
                 }
+                clint.pollTimeRead(); // Forgets reads of mtime made before the loop
+            }
+            int executed;
+            if (block.compiled != null && trace == null) {
+                executed = executeCompiledBlock(block);
+            } else {
+                executed = executeBlock(block);
+                if (trace == null && translationThreshold > 0 && ++block.executions == translationThreshold) {
+                    compileBlock(block);
+                }
+            }
+            retire(block, executed);
+            if (loopWrites != null && programCounter == block.startAddress && isIdleIteration(loopWrites)
+                    && !clint.pollTimeRead()) {
+                idleLoops++;
+                waitForInterrupt();
             }
-            int instruction = bus.read(programCounter, programCounter + 4)[0];
-            executeInstruction(instruction);
+            return executed;
         } catch (MemoryException e) {
+            reportFailure(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Advances the timer, the performance counters and the profiler past a run of a block.
+     *
+     * @param block    the block that ran
+     * @param executed the number of its instructions that retired
+     */
+    private void retire(BasicBlock block, int executed) {
+        clint.retire(executed);
+        counters.retire(block, executed, programCounter);
+        if (profiler != null) {
+            profiler.blockExecuted(block, executed, programCounter);
+        }
+    }
+
+    /**
+     * Returns the number of instructions retired so far, including those of a block that ended
+     * early in a fault, ebreak or ecall. Unlike minstret, guest writes do not change it.
+     *
+     * @return the retired instruction count
+     */
+    public long getRetiredInstructions() {
+        return counters.getInstret();
+    }
+
+    /**
+     * Tells whether the last run of an idle loop candidate left the registers it writes unchanged,
+     * so that the next run would repeat it exactly.
+     *
+     * @param loopWrites the registers the loop writes
+     * @return true if none of them changed
+     */
+    private boolean isIdleIteration(int[] loopWrites) {
+        for (int i = 0; i < loopWrites.length; i++) {
+            if (loopState[i] != registers[loopWrites[i]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the straight-line run of instructions starting at the given address. The run ends at
+     * the first instruction that ends a basic block, at a page boundary, at the end of memory or
+     * after {@code MAX_BLOCK_LENGTH} instructions.
+     *
+     * @param startAddress the address of the first instruction
+     * @return the translated block
+     * @throws MemoryException if the first instruction cannot be fetched
+     */
+    private BasicBlock translateBlock(int startAddress) throws MemoryException {
+        DecodedInstruction[] instructions = new DecodedInstruction[MAX_BLOCK_LENGTH];
+        int length = 0;
+        int address = startAddress;
+        do {
+            DecodedInstruction instruction = Decoder.decode(bus.readWord(address));
+            instructions[length++] = instruction;
+            address += 4;
+            if (instruction.opcode().endsBasicBlock()) {
+                break;
+            }
+        } while (length < MAX_BLOCK_LENGTH && (address & (BlockCache.PAGE_SIZE - 1)) != 0
+                && address <= context.getMemorySize() - 4);
+
+        return new BasicBlock(startAddress, Arrays.copyOf(instructions, length));
+    }
+
+    /**
+     * Executes the instructions of a block in order. Stops early if one of them overwrote the code
+     * of the block itself, so the rest is re-translated from the new code. If an instruction
+     * faults or ends the program, the instructions before it are retired before the exception
+     * leaves.
+     *
+     * @param block the block to execute
+     * @return the number of instructions executed
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private int executeBlock(BasicBlock block) throws MemoryException {
+        final DecodedInstruction[] instructions = block.instructions;
+        currentBlock = block;
+        int i = 0;
+        try {
+            for (; i < instructions.length; i++) {
+                execute(instructions[i]);
+                if (!block.valid) {
+                    return i + 1;
+                }
+            }
+            return instructions.length;
+        } catch (RuntimeException e) {
+            retire(block, i);
+            throw e;
+        } finally {
+            currentBlock = null;
+        }
+    }
+
+    /**
+     * Compiles a hot block to JVM bytecode, if it only holds instructions the compiler supports.
+     *
+     * @param block the block to compile
+     */
+    private void compileBlock(BasicBlock block) {
+        if (!BlockCompiler.canCompile(block)) {
+            return;
+        }
+        try {
+            block.compiled = BlockCompiler.compile(block);
+        } catch (IllegalStateException e) {
+            log.warning(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the compiled code of a block. If a store rewrites the code of the block, execution
+     * resumes in the interpreter right after the store. If a memory access fails, the accessing
+     * instruction is executed again by the interpreter, which reports the failure after the
+     * instructions before it are retired.
+     *
+     * @param block the compiled block to run
+     * @return the number of instructions executed
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private int executeCompiledBlock(BasicBlock block) throws MemoryException {
+        currentBlock = block;
+        try {
+            programCounter = block.compiled.run(this, registers);
+            return block.instructions.length;
+        } catch (CodeModifiedException e) {
+            programCounter += 4;
+            return (programCounter - block.startAddress) >>> 2;
+        } catch (RuntimeException e) {
+            int executed = (programCounter - block.startAddress) >>> 2;
+            try {
+                executeInstruction(bus.readWord(programCounter));
+            } catch (RuntimeException fault) {
+                retire(block, executed);
+                throw fault;
+            }
+            return executed + 1;
+        } finally {
+            currentBlock = null;
+        }
+    }
+
+    /**
+     * Loads a value for compiled code, recording the address of the load first.
+     *
+     * @param operation the load operation
+     * @param address   the effective address
+     * @param pc        the address of the load instruction
+     * @return the loaded value
+     * @throws MemoryException if there is an error accessing memory
+     */
+    int compiledLoad(Opcode operation, int address, int pc) throws MemoryException {
+        programCounter = pc;
+        return load(operation, address);
+    }
+
+    /**
+     * Stores a value for compiled code, recording the address of the store first. Leaves the
+     * compiled code if the store overwrote the code of the running block.
+     *
+     * @param operation the store operation
+     * @param address   the effective address
+     * @param value     the value to store
+     * @param pc        the address of the store instruction
+     * @throws MemoryException if there is an error accessing memory
+     */
+    void compiledStore(Opcode operation, int address, int value, int pc) throws MemoryException {
+        programCounter = pc;
+        store(operation, address, value);
+        if (!currentBlock.valid) {
+            throw CODE_MODIFIED;
+        }
+    }
+
+    /**
+     * Reports an execution failure to the console and the GUI, then stops the CPU. Without a GUI
+     * nothing is printed; the caller gets the failure, with the original exception as its cause.
+     *
+     * @param e the failure
+     */
+    private void reportFailure(MemoryException e) {
+        if (gui != null) {
             System.out.println(String.valueOf(e));
             gui.consoleInfo(String.valueOf(e));
-            throw new RuntimeException(e);
         }
+        throw new RuntimeException(e);
     }
 
     /**
@@ -165,402 +449,375 @@ public class CPU extends CPUInterrupt {
      * @throws MemoryException if there is an error accessing memory
      */
     public void executeInstruction(int instruction) throws MemoryException {
+        execute(decodeCache.get(programCounter, instruction));
+    }
+
+    /**
+     * Executes an already decoded instruction, recording it in the trace if tracing is on. With
+     * tracing off this costs a single null check.
+     *
+     * @param instruction the decoded instruction to be executed
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private void execute(DecodedInstruction instruction) throws MemoryException {
+        final TraceBuffer trace = this.trace;
+        if (trace == null) {
+            dispatch(instruction);
+            return;
+        }
+        final int pc = programCounter;
+        final int rd = instruction.rd();
+        final int address = instruction.opcode().accessesMemory() ? registers[instruction.rs1()] + instruction.imm() : 0; // Before rd is written
+        dispatch(instruction);
+        trace.record(pc, instruction.raw(), rd == 0 ? 0 : registers[rd], address);
+    }
+
+    /**
+     * Executes an already decoded instruction.
+     *
+     * @param instruction the decoded instruction to be executed
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private void dispatch(DecodedInstruction instruction) throws MemoryException {
         registers[0] = 0;   // r0 is always zero
-        String decodedInstruction = Decoder.decodeInstruction(instruction);
-        String[] parts = decodedInstruction.split(" ");// Parse the decoded instruction
-        String operation = parts[0];
         programCounter += 4; // Increment PC for next instruction, by default
         try {
-            switch (operation) {
-                case "add":
-                    executeRType(parts, Integer::sum);
-                    break;
-                case "sub":
-                    executeRType(parts, (a, b) -> a - b);
-                    break;
-                case "sll":
-                    executeRType(parts, (a, b) -> a << b);
-                    break;
-                case "slt":
-                    executeRType(parts, (a, b) -> a < b ? 1 : 0);
-                    break;
-                case "sltu":
-                    executeRType(parts, (a, b) -> Integer.compareUnsigned(a, b) < 0 ? 1 : 0);
-                    break;
-                case "xor":
-                    executeRType(parts, (a, b) -> a ^ b);
-                    break;
-                case "srl":
-                    executeRType(parts, (a, b) -> a >>> b);
-                    break;
-                case "sra":
-                    executeRType(parts, (a, b) -> a >> b);
-                    break;
-                case "or":
-                    executeRType(parts, (a, b) -> a | b);
-                    break;
-                case "and":
-                    executeRType(parts, (a, b) -> a & b);
-                    break;
-                case "lui":
-                case "auipc":
-                    executeUType(parts);
-                    break;
-                case "jal":
-                    executeJType(parts);
-                    break;
-                case "jalr":
-                    executeITypeJumpAndLinkRegister(parts);
-                    break;
-                case "lb":
-                case "lh":
-                case "lw":
-                case "lbu":
-                case "lhu":
-                    executeITypeLoad(parts);
-                    break;
-                case "beq":
-                case "bne":
-                case "blt":
-                case "bge":
-                case "bltu":
-                case "bgeu":
-                    executeBType(parts);
-                    break;
-                case "sb":
-                case "sh":
-                case "sw":
-                    executeSType(parts);
-                    break;
-                case "addi":
-                case "slti":
-                case "sltiu":
-                case "xori":
-                case "ori":
-                case "andi":
-                case "slli":
-                case "srli":
-                case "srai":
-                    executeITypeImmediate(parts);
-                    break;
-                case "ecall":
-                case "ebreak":
-                case "mret":
-                    executeEType(parts);
-                    break;
-                case "csrrw":
-                case "csrrs":
-                case "csrrc":
-                case "csrrwi":
-                case "csrrsi":
-                case "csrrci":
-                    executeITypeControlStatusRegister(parts);
-                    break;
-                default:
+            switch (instruction.opcode()) {
+                case ADD, SUB, SLL, SLT, SLTU, XOR, SRL, SRA, OR, AND -> executeRType(instruction);
+                case LUI, AUIPC -> executeUType(instruction);
+                case JAL -> executeJType(instruction);
+                case JALR -> executeITypeJumpAndLinkRegister(instruction);
+                case LB, LH, LW, LBU, LHU -> executeITypeLoad(instruction);
+                case BEQ, BNE, BLT, BGE, BLTU, BGEU -> executeBType(instruction);
+                case SB, SH, SW -> executeSType(instruction);
+                case ADDI, SLTI, SLTIU, XORI, ORI, ANDI, SLLI, SRLI, SRAI -> executeITypeImmediate(instruction);
+                case ECALL, EBREAK, MRET, WFI -> executeEType(instruction);
+                case CSRRW, CSRRS, CSRRC, CSRRWI, CSRRSI, CSRRCI -> executeITypeControlStatusRegister(instruction);
+                default -> {
                     programCounter -= 4; // Revert PC increment if the operation is unknown
-                    gui.consoleInfo(String.format("Unknown operation: %s", operation));
-                    throw new RuntimeException(String.format("Unknown operation: %s", operation));
+                    String message = String.format("Unknown operation: 0x%08X", instruction.raw());
+                    if (gui != null) {
+                        gui.consoleInfo(message);
+                    }
+                    throw new RuntimeException(message);
+                }
             }
         } catch (Exception e) {
-            throw new MemoryException(e.getMessage());
+            throw new MemoryException(e.getMessage(), e);
         }
     }
 
     /**
      * Executes R-Type instructions which involve register-to-register operations.
      *
-     * @param parts     the instruction parts
-     * @param operation the operation to be performed
+     * @param instruction the decoded instruction
      */
-    private void executeRType(String[] parts, BiFunction<Integer, Integer, Integer> operation) {
-
-        int rd = getRegisterIndex(parts, 1);
-        int rs1 = getRegisterIndex(parts, 2);
-        int rs2 = getRegisterIndex(parts, 3);
+    private void executeRType(DecodedInstruction instruction) {
 
         // Access the values in registers rs1 and rs2
-        int value1 = registers[rs1];
-        int value2 = registers[rs2];
+        int value1 = registers[instruction.rs1()];
+        int value2 = registers[instruction.rs2()];
 
         // Perform the operation and store the result in register rd
-        registers[rd] = operation.apply(value1, value2);
-
-        Main.info(String.format("Executing: %s rs1=%d rs2=%d -> rd=%d", parts[0], rs1, rs2, rd));
+        registers[instruction.rd()] = switch (instruction.opcode()) {
+            case ADD -> value1 + value2;
+            case SUB -> value1 - value2;
+            case SLL -> value1 << value2;
+            case SLT -> value1 < value2 ? 1 : 0;
+            case SLTU -> Integer.compareUnsigned(value1, value2) < 0 ? 1 : 0;
+            case XOR -> value1 ^ value2;
+            case SRL -> value1 >>> value2;
+            case SRA -> value1 >> value2;
+            case OR -> value1 | value2;
+            default -> value1 & value2;
+        };
     }
 
     /**
      * Executes U-Type instructions which involve immediate values.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeUType(String[] parts) {
+    private void executeUType(DecodedInstruction instruction) {
 
-        int rd = getRegisterIndex(parts, 1);
-        int imm = getImmediateValue(parts, 2) << 12;
+        int rd = instruction.rd();
+        int imm = instruction.imm();
 
-        switch (parts[0]) {
-            case "lui":
-                registers[rd] = imm;
-                break;
-            case "auipc":
-                programCounter -= 4; // Adjust for the default increment
-                registers[rd] = imm + programCounter;
-                programCounter += 4;
-                break;
+        if (instruction.opcode() == Opcode.LUI) {
+            registers[rd] = imm;
+        } else {
+            registers[rd] = imm + programCounter - 4; // Adjust for the default increment
         }
-
-        Main.info(String.format("Executing: %s imm=%d -> rd=%d", parts[0], imm, rd));
     }
 
     /**
      * Executes J-Type instructions which involve jump operations.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeJType(String[] parts) {
+    private void executeJType(DecodedInstruction instruction) {
 
-        int rd = getRegisterIndex(parts, 1);
-        int imm = getImmediateValue(parts, 2);
-        imm = signExtendImmediate(imm, 20);
+        int rd = instruction.rd();
+        int imm = instruction.imm();
         registers[rd] = programCounter;
         programCounter += imm - 4; // Adjust for the default increment
-
-        Main.info(String.format("Executing: %s imm=%d -> rd=%d PC=%d", parts[0], imm, rd, programCounter));
     }
 
     /**
      * Executes I-Type jump and link register instructions.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeITypeJumpAndLinkRegister(String[] parts) {
+    private void executeITypeJumpAndLinkRegister(DecodedInstruction instruction) {
 
-        int rd = getRegisterIndex(parts, 1);
-        int rs1 = getRegisterIndex(parts, 2);
-        int imm = getImmediateValue(parts, 3);
-        imm = signExtendImmediate(imm, 12);
+        int rd = instruction.rd();
+        int rs1 = instruction.rs1();
+        int imm = instruction.imm();
+        int target = (registers[rs1] + imm) & ~1; // Read rs1 before rd is written, as rd may equal rs1
         registers[rd] = programCounter;
-        programCounter = (registers[rs1] + imm) & ~1;
-
-        Main.info(String.format("Executing: %s rs1=%d imm=%d -> rd=%d PC=%d", parts[0], rs1, imm, rd, programCounter));
+        programCounter = target;
     }
 
     /**
      * Executes I-Type load instructions which involve memory load operations.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      * @throws MemoryException if there is an error accessing memory
      */
-    private void executeITypeLoad(String[] parts) throws MemoryException {
+    private void executeITypeLoad(DecodedInstruction instruction) throws MemoryException {
 
-        int rd = getRegisterIndex(parts, 1);
-        int rs1 = getRegisterIndex(parts, 2);
-        int imm = getImmediateValue(parts, 3);
-        imm = signExtendImmediate(imm, 12);
+        int rd = instruction.rd();
+        int rs1 = instruction.rs1();
+        int imm = instruction.imm();
         int address = registers[rs1] + imm;
+        int value = load(instruction.opcode(), address);
+        registers[rd] = value;
+    }
+
+    /**
+     * Reads memory for a load instruction and extends the value to the register width.
+     *
+     * @param operation the load operation
+     * @param address   the effective address
+     * @return the value to write to the destination register
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private int load(Opcode operation, int address) throws MemoryException {
 
         if (address < 0) {
             throw new MemoryException(String.format("Memory access out of bounds: %d", address));
         }
 
-        int value = bus.read(address, address + 4)[0];
+        return switch (operation) {
+            case LB -> bus.readByte(address);
+            case LH -> bus.readHalfword(address);
+            case LBU -> bus.readByte(address) & 0xFF;
+            case LHU -> bus.readHalfword(address) & 0xFFFF;
+            default -> bus.readWord(address);
+        };
+    }
 
-        switch (parts[0]) {
-            case "lb":
-                registers[rd] = (byte) value;
-                break;
-            case "lh":
-                registers[rd] = (short) value;
-                break;
-            case "lw":
-                registers[rd] = value;
-                break;
-            case "lbu":
-                registers[rd] = value & 0xFF;
-                break;
-            case "lhu":
-                registers[rd] = value & 0xFFFF;
-                break;
+    /**
+     * Writes memory for a store instruction.
+     *
+     * @param operation the store operation
+     * @param address   the effective address
+     * @param value     the register value to store
+     * @throws MemoryException if there is an error accessing memory
+     */
+    private void store(Opcode operation, int address, int value) throws MemoryException {
+
+        if (address < 0) {
+            throw new MemoryException(String.format("Memory access out of bounds: %d", address));
         }
 
-        Main.info(String.format("Executing: %s rs1=%d imm=%d -> rd=%d address=%d value=%d", parts[0], rs1, imm, rd, address, value));
+        switch (operation) {
+            case SB -> bus.writeByte(address, value);
+            case SH -> bus.writeHalfword(address, value);
+            default -> bus.writeWord(address, value);
+        }
     }
 
     /**
      * Executes B-Type instructions which involve conditional branches.
      *
-     * @param parts the instruction parts
-     */
-    private void executeBType(String[] parts) {
-
-        int rs1 = getRegisterIndex(parts, 1);
-        int rs2 = getRegisterIndex(parts, 2);
-        int imm = getImmediateValue(parts, 3);
-        imm = signExtendImmediate(imm, 12);
-        boolean condition = switch (parts[0]) {
-            case "beq" -> (registers[rs1] == registers[rs2]);
-            case "bne" -> (registers[rs1] != registers[rs2]);
-            case "blt" -> (registers[rs1] < registers[rs2]);
-            case "bge" -> (registers[rs1] >= registers[rs2]);
-            case "bltu" -> (Integer.compareUnsigned(registers[rs1], registers[rs2]) < 0);
-            case "bgeu" -> (Integer.compareUnsigned(registers[rs1], registers[rs2]) >= 0);
+     * @param instruction the decoded instruction
+     */
+    private void executeBType(DecodedInstruction instruction) {
+
+        int rs1 = instruction.rs1();
+        int rs2 = instruction.rs2();
+        int imm = instruction.imm();
+        boolean condition = switch (instruction.opcode()) {
+            case BEQ -> (registers[rs1] == registers[rs2]);
+            case BNE -> (registers[rs1] != registers[rs2]);
+            case BLT -> (registers[rs1] < registers[rs2]);
+            case BGE -> (registers[rs1] >= registers[rs2]);
+            case BLTU -> (Integer.compareUnsigned(registers[rs1], registers[rs2]) < 0);
+            case BGEU -> (Integer.compareUnsigned(registers[rs1], registers[rs2]) >= 0);
             default -> false;
         };
 
         if (condition) {
             programCounter += imm - 4; // Adjust for the default increment
         }
-
-        Main.info(String.format("Executing: %s rs1=%d rs2=%d imm=%d -> PC=%d", parts[0], rs1, rs2, imm, programCounter));
     }
 
     /**
      * Executes S-Type instructions which involve memory store operations.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeSType(String[] parts) {
+    private void executeSType(DecodedInstruction instruction) {
 
-        int rs1 = getRegisterIndex(parts, 1);
-        int rs2 = getRegisterIndex(parts, 2);
-        int imm = getImmediateValue(parts, 3);
-        imm = signExtendImmediate(imm, 12);
+        int rs1 = instruction.rs1();
+        int rs2 = instruction.rs2();
+        int imm = instruction.imm();
         int address = registers[rs1] + imm;
-        if (address < 0) {
-            throw new RuntimeException(String.format("Memory access out of bounds: %d", address));
-        }
-
-        switch (parts[0]) {
-            case "sb":
-                bus.write(address, new int[]{registers[rs2] & 0xFF});
-                break;
-            case "sh":
-                bus.write(address, new int[]{(registers[rs2] & 0xFFFF)});
-                break;
-            case "sw":
-                bus.write(address, new int[]{registers[rs2]});
-                break;
-        }
-
-        Main.info(String.format("Executing: %s rs1=%d rs2=%d imm=%d -> address=%d, value=%d", parts[0], rs1, rs2, imm, address, registers[rs2]));
+        store(instruction.opcode(), address, registers[rs2]);
     }
 
     /**
      * Executes I-Type immediate instructions which involve immediate values.
      *
-     * @param parts the instruction parts
-     */
-    private void executeITypeImmediate(String[] parts) {
-
-        int rd = getRegisterIndex(parts, 1);
-        int rs1 = getRegisterIndex(parts, 2);
-        int imm = getImmediateValue(parts, 3);
-        imm = signExtendImmediate(imm, 12);
-        int result = switch (parts[0]) {
-            case "addi" -> registers[rs1] + imm;
-            case "slti" -> (registers[rs1] < imm) ? 1 : 0;
-            case "sltiu" -> (Integer.compareUnsigned(registers[rs1], imm) < 0) ? 1 : 0;
-            case "xori" -> registers[rs1] ^ imm;
-            case "ori" -> registers[rs1] | imm;
-            case "andi" -> registers[rs1] & imm;
-            case "slli" -> registers[rs1] << imm;
-            case "srli" -> registers[rs1] >>> imm;
-            case "srai" -> registers[rs1] >> imm;
+     * @param instruction the decoded instruction
+     */
+    private void executeITypeImmediate(DecodedInstruction instruction) {
+
+        int rd = instruction.rd();
+        int rs1 = instruction.rs1();
+        int imm = instruction.imm();
+        registers[rd] = switch (instruction.opcode()) {
+            case ADDI -> registers[rs1] + imm;
+            case SLTI -> (registers[rs1] < imm) ? 1 : 0;
+            case SLTIU -> (Integer.compareUnsigned(registers[rs1], imm) < 0) ? 1 : 0;
+            case XORI -> registers[rs1] ^ imm;
+            case ORI -> registers[rs1] | imm;
+            case ANDI -> registers[rs1] & imm;
+            case SLLI -> registers[rs1] << imm;
+            case SRLI -> registers[rs1] >>> imm;
+            case SRAI -> registers[rs1] >> imm;
             default -> 0;
         };
-
-        registers[rd] = result;
-
-        Main.info(String.format("Executing: %s rs1=%d imm=%d -> rd=%d", parts[0], rs1, imm, rd));
     }
 
     /**
-     * Executes E-Type instructions which handle system calls and breaks.
+     * Executes E-Type instructions which handle system calls, breaks and waits.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeEType(String[] parts) {
-        switch (parts[0]) {
-            case "ecall":
-                handleEcall();
-                break;
-            case "ebreak":
-                handleEbreak();
-                break;
-            case "mret":
-                handleMret();
-                break;
+    private void executeEType(DecodedInstruction instruction) {
+        switch (instruction.opcode()) {
+            case ECALL -> handleEcall();
+            case EBREAK -> handleEbreak();
+            case WFI -> handleWfi();
+            default -> handleMret();
         }
     }
 
     /**
      * Executes I-Type control and status register instructions.
      *
-     * @param parts the instruction parts
+     * @param instruction the decoded instruction
      */
-    private void executeITypeControlStatusRegister(String[] parts) {
-
-        int rd = getRegisterIndex(parts, 1);
-        int csr = getImmediateValue(parts, 2);
-        int rs1 = getRegisterIndex(parts, 3);
-        csr = signExtendImmediate(csr, 12);
+    private void executeITypeControlStatusRegister(DecodedInstruction instruction) {
+
+        int rd = instruction.rd();
+        int csr = instruction.imm();
+        int rs1 = instruction.rs1();
+        if (PerformanceCounters.handles(csr)) {
+            executeCounterAccess(instruction);
+            return;
+        }
         int csrValue = csrRegisters[csr];
-        switch (parts[0]) {
-            case "csrrw":
-                csrRegisters[csr] = registers[rs1];
-                registers[rd] = csrValue;
-                break;
-            case "csrrs":
-                csrRegisters[csr] |= registers[rs1];
-                registers[rd] = csrValue;
-                break;
-            case "csrrc":
-                csrRegisters[csr] &= ~registers[rs1];
-                registers[rd] = csrValue;
-                break;
-            case "csrrwi":
-                csrRegisters[csr] = rs1;
-                registers[rd] = csrValue;
-                break;
-            case "csrrsi":
-                csrRegisters[csr] |= rs1;
-                registers[rd] = csrValue;
-                break;
-            case "csrrci":
-                csrRegisters[csr] &= ~rs1;
-                registers[rd] = csrValue;
-                break;
+        switch (instruction.opcode()) {
+            case CSRRW -> csrRegisters[csr] = registers[rs1];
+            case CSRRS -> csrRegisters[csr] |= registers[rs1];
+            case CSRRC -> csrRegisters[csr] &= ~registers[rs1];
+            case CSRRWI -> csrRegisters[csr] = rs1;
+            case CSRRSI -> csrRegisters[csr] |= rs1;
+            default -> csrRegisters[csr] &= ~rs1;
         }
+        registers[rd] = csrValue;
+    }
 
-        Main.info(String.format("Executing: %s rs1=%d csr=%d -> rd=%d", parts[0], rs1, csr, rd));
+    /**
+     * Executes a CSR instruction on a performance counter. The instructions of the running block
+     * before it are retired first, so the guest reads exact counts. As in hardware, csrrs and
+     * csrrc with x0 or a zero immediate only read.
+     *
+     * @param instruction the decoded instruction
+     */
+    private void executeCounterAccess(DecodedInstruction instruction) {
+
+        int rd = instruction.rd();
+        int csr = instruction.imm();
+        int rs1 = instruction.rs1();
+        counters.commitBefore(currentBlock, programCounter - 4);
+        clint.sync();
+        int csrValue = counters.read(csr, clint.getMtime());
+        boolean writes = switch (instruction.opcode()) {
+            case CSRRW, CSRRWI -> true;
+            default -> rs1 != 0;
+        };
+        if (writes) {
+            counters.write(csr, switch (instruction.opcode()) {
+                case CSRRW -> registers[rs1];
+                case CSRRS -> csrValue | registers[rs1];
+                case CSRRC -> csrValue & ~registers[rs1];
+                case CSRRWI -> rs1;
+                case CSRRSI -> csrValue | rs1;
+                default -> csrValue & ~rs1;
+            });
+        }
+        registers[rd] = csrValue;
     }
 
     /**
      * Handles the "ecall" instruction by entering in system mode.
      */
     private void handleEcall() {
-        throw new RuntimeException("Program has terminated via syscall exit.");
+        throw new EcallException("Program has terminated via syscall exit.");
     }
 
     /**
      * Handles the "ebreak" instruction by terminating the program via syscall exit.
      */
     private void handleEbreak() {
-        int timerInterruptCount = bus.read(1024, 1028)[0];   // Reading the value from position 1024
-        int keyInterruptCount = bus.read(1028, 1032)[0];     // Reading the value from position 1028
+        int timerInterruptCount = bus.readWord(1024);   // Reading the value from position 1024
+        int keyInterruptCount = bus.readWord(1028);     // Reading the value from position 1028
 
         Main.info("Timer Interrupt Count (memory at position 1024): " + timerInterruptCount);
         Main.info("Key Interrupt Count (memory at position 1028): " + keyInterruptCount);
+        context.setHalted(true); // Closes the window, if one is open
         throw new EbreakException("Program has terminated via syscall exit.");
     }
 
+    /**
+     * Handles the "wfi" instruction by parking the CPU until an interrupt may be pending.
+     */
+    private void handleWfi() {
+        waitForInterrupt();
+        Main.info("WFI: Woke up waiting for an interrupt.");
+    }
+
     /**
      * Handles the "eret" instruction by returning from interrupt handling.
      */
     private void handleMret() {
         programCounter = csrRegisters[MEPC];
         setCsrRegister(MIP, 0);
-        setStartTime();
+        restartTimer();
         Main.info("MRET: Return from machine interrupt handler.");
     }
+
+    /**
+     * Thrown by compiled code, without a stack trace, when a store rewrote the running block.
+     */
+    private static final class CodeModifiedException extends RuntimeException {
+
+        CodeModifiedException() {
+            super("Code of the running block was modified", null, false, false);
+        }
+    }
 }
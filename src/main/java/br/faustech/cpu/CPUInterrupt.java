@@ -1,63 +1,134 @@
 package br.faustech.cpu;
 
-import br.faustech.Main;
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.device.Clint;
+import br.faustech.device.KeyEventQueue;
+import br.faustech.device.Keyboard;
 import lombok.Getter;
-import lombok.Setter;
+
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents an abstract CPU interrupt handler that extends the Thread class.
- * This class manages interrupt states, handles interrupt data, and monitors key presses.
+ * This class manages interrupt states, handles interrupt data, and monitors key presses through
+ * the context of its machine, so CPUs of different machines never see each other's interrupts.
+ * Timer interrupts come from the machine timer, whose deadline is compared against a counter
+ * instead of reading the system clock on every check.
  */
 public abstract class CPUInterrupt extends Thread {
 
     /**
-     * Indicates whether interrupts are currently enabled.
+     * Longest single park, so a CPU waiting without any deadline still notices being stopped.
+     */
+    private static final long MAX_WAIT_NANOS = 10_000_000L;
+
+    /**
+     * Configuration and interrupt state of the machine this CPU belongs to.
      */
     @Getter
-    protected static boolean isInterruptEnabled = false;
+    protected final MachineContext context;
 
     /**
-     * Stores data related to the current interrupt.
+     * The machine timer raising timer interrupts.
      */
-    @Setter
-    protected static int interruptData;
+    @Getter
+    protected final Clint clint;
+
+    /**
+     * The keyboard whose queued key presses raise key interrupts.
+     */
+    @Getter
+    protected final Keyboard keyboard;
+
+    /**
+     * Total time the CPU thread spent parked in wfi or an idle loop, in nanoseconds.
+     */
+    @Getter
+    protected long idleNanos;
 
     /**
-     * Flag to indicate if a key has been pressed.
+     * Total timer ticks that passed in wfi or an idle loop when the timer counts instructions,
+     * skipped at once by headless machines and waited out in real time otherwise.
      */
-    @Setter
-    protected static boolean keyPressedFlag = false;
+    @Getter
+    protected long skippedTicks;
 
     /**
-     * Records the start time of the interrupt monitoring.
+     * Number of times a guest spin-wait was detected and skipped ahead like wfi.
      */
     @Getter
-    protected static long startTime = 0;
+    protected long idleLoops;
 
     /**
-     * Checks if an interrupt condition has been met based on elapsed time or key press.
+     * Constructs an interrupt handler for the given machine, taking interrupts from the timer and
+     * keyboard of its bus. The keyboard is attached to the context, so the window feeds it.
      *
-     * @return 1 if the elapsed time has exceeded the clock speed, 2 if a key has been pressed, or 0 otherwise.
+     * @param context the machine context holding the interrupt configuration
+     * @param bus     the bus holding the timer, configured from the context, and the keyboard
      */
-    public static int checkInterruption() {
-        long elapsedTime = System.currentTimeMillis() - startTime;
+    protected CPUInterrupt(final MachineContext context, final Bus bus) {
+        this.context = context;
+        this.clint = bus.getClint();
+        this.keyboard = bus.getKeyboard();
+        clint.configure(context);
+        context.setKeyboard(keyboard);
+    }
 
-        if (elapsedTime >= Main.getClockSpeed()) {
-            isInterruptEnabled = false;
-            setStartTime();
+    /**
+     * Checks if an interrupt condition has been met based on the timer deadline or queued key
+     * presses. A key press is taken off the queue when its interrupt is raised.
+     *
+     * @return 1 if the timer deadline has been reached, 2 plus the key code if a key has been pressed, or 0 otherwise.
+     */
+    public int checkInterruption() {
+        if (clint.isDue()) {
+            restartTimer();
             return 1;
-        } else if (keyPressedFlag) {
-            isInterruptEnabled = false;
-            keyPressedFlag = false;
-            return interruptData + 2;
         }
-        return 0;
+        int key = keyboard.poll();
+        return key != KeyEventQueue.EMPTY ? key + 2 : 0;
+    }
+
+    /**
+     * Waits until an interrupt may be pending. When a headless machine's timer counts
+     * instructions, nothing can advance it while the CPU waits, so the timer jumps straight to its
+     * deadline. Otherwise the thread parks until the deadline, a key press unparks it, or
+     * {@code MAX_WAIT_NANOS} pass, and a timer counting instructions is moved forward by the time
+     * parked, so an idle interactive machine neither burns a processor nor runs ahead of real time.
+     * Callers execute wfi in a loop, as the guest does.
+     */
+    protected void waitForInterrupt() {
+        if (clint.isDue() || keyboard.hasPending()) {
+            return;
+        }
+        if (context.isHeadless() && !clint.isWallClock() && clint.hasDeadline()) {
+            skippedTicks += clint.skipToDeadline();
+            return;
+        }
+        final long start = System.nanoTime();
+        keyboard.setWaiter(Thread.currentThread());
+        try {
+            if (!keyboard.hasPending()) {
+                LockSupport.parkNanos(this, Math.min(clint.nanosUntilDue(), MAX_WAIT_NANOS));
+            }
+        } finally {
+            keyboard.setWaiter(null);
+        }
+        final long waited = System.nanoTime() - start;
+        idleNanos += waited;
+        if (clint.isWallClock()) {
+            clint.sync();
+        } else if (!context.isHeadless()) {
+            skippedTicks += clint.elapse(waited);
+        }
     }
 
     /**
-     * Sets the start time to the current system time in milliseconds.
+     * Starts a new timer period from the current time, unless the guest programs the deadline
+     * itself.
      */
-    public static void setStartTime() {
-        startTime = System.currentTimeMillis();
+    public void restartTimer() {
+        clint.reload();
     }
 }
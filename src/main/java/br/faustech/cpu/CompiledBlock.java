@@ -0,0 +1,18 @@
+package br.faustech.cpu;
+
+/**
+ * A basic block translated to JVM bytecode by the {@link BlockCompiler}.
+ */
+interface CompiledBlock {
+
+    /**
+     * Runs the translated block. Guest registers live in JVM locals while the block runs and are
+     * written back to {@code registers} before every memory access and on exit.
+     *
+     * @param cpu       the CPU whose memory helpers the block calls for loads and stores.
+     * @param registers the general-purpose registers of the CPU.
+     * @return the address of the next instruction to execute.
+     */
+    int run(CPU cpu, int[] registers);
+
+}
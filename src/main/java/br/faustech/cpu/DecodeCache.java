@@ -0,0 +1,58 @@
+package br.faustech.cpu;
+
+/**
+ * Caches decoded instructions by program counter so each instruction word is decoded only once.
+ *
+ * <p>Entries are kept in lazily allocated pages of 1024 instructions (4 KiB of code), so only
+ * the parts of the address space that actually hold code cost memory. An entry is reused only
+ * while the word fetched at that address still matches the cached raw word, which keeps
+ * self-modifying code correct.</p>
+ */
+final class DecodeCache {
+
+    private static final int PAGE_SHIFT = 10; // 1024 instructions per page
+
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    private final DecodedInstruction[][] pages; // Page table of decoded instructions
+
+    /**
+     * Constructs a decode cache covering the given number of bytes of address space.
+     *
+     * @param addressSpace the highest byte address (exclusive) code may be fetched from.
+     */
+    DecodeCache(final int addressSpace) {
+
+        this.pages = new DecodedInstruction[((addressSpace >>> 2) >>> PAGE_SHIFT) + 1][];
+    }
+
+    /**
+     * Returns the decoded form of the instruction word fetched at the given program counter.
+     *
+     * @param programCounter the address the word was fetched from.
+     * @param raw            the instruction word.
+     * @return the cached decoded instruction, decoding and caching it if needed.
+     */
+    DecodedInstruction get(final int programCounter, final int raw) {
+
+        final int index = programCounter >>> 2;
+        final int pageIndex = index >>> PAGE_SHIFT;
+        if (pageIndex >= pages.length) {
+            return Decoder.decode(raw);
+        }
+
+        DecodedInstruction[] page = pages[pageIndex];
+        if (page == null) {
+            page = new DecodedInstruction[PAGE_MASK + 1];
+            pages[pageIndex] = page;
+        }
+
+        DecodedInstruction decoded = page[index & PAGE_MASK];
+        if (decoded == null || decoded.raw() != raw) {
+            decoded = Decoder.decode(raw);
+            page[index & PAGE_MASK] = decoded;
+        }
+        return decoded;
+    }
+
+}
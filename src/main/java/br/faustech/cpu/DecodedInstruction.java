@@ -0,0 +1,18 @@
+package br.faustech.cpu;
+
+/**
+ * Compact, typed form of a 32-bit instruction produced once by {@link Decoder#decode(int)}.
+ *
+ * <p>Immediates are already sign-extended (U-Type immediates are already shifted into the upper
+ * 20 bits). For CSR instructions {@code imm} holds the unsigned CSR number and {@code rs1} holds
+ * either the source register or the 5-bit zero-extended immediate.</p>
+ *
+ * @param opcode the decoded operation
+ * @param rd     the destination register index
+ * @param rs1    the first source register index
+ * @param rs2    the second source register index
+ * @param imm    the immediate value
+ * @param raw    the raw instruction word this was decoded from
+ */
+public record DecodedInstruction(Opcode opcode, int rd, int rs1, int rs2, int imm, int raw) {
+}
@@ -152,6 +152,8 @@ public class Decoder {
                     operation = "ecall";
                 } else if (csr == 0x01) {
                     operation = "ebreak";
+                } else if (csr == 0x105) {
+                    operation = "wfi";
                 } else if (csr > 0x01) {
                     operation = "mret";
                 }
@@ -267,6 +269,234 @@ public class Decoder {
         return String.format("jal rd=%d, imm=%d", rd, imm);
     }
 
+    /**
+     * Decodes a given instruction into its compact typed form, without building any strings.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded instruction, with {@link Opcode#UNKNOWN} for unsupported encodings.
+     */
+    public static DecodedInstruction decode(int instruction) {
+
+        int opcode = instruction & 0x7F;                                // Extract the 7-bit opcode
+
+        return switch (opcode) {
+            case 0x33 -> decodeRTypeFields(instruction);                      // R-Type
+            case 0x67 -> decodeITypeFields(Opcode.JALR, instruction);         // I-Type-jalr
+            case 0x03 -> decodeITypeLoadFields(instruction);                  // I-Type-load
+            case 0x13 -> decodeITypeImmediateFields(instruction);             // I-Type-immediate
+            case 0x73 -> decodeITypeControlStatusRegisterFields(instruction); // I-Type-csr
+            case 0x23 -> decodeSTypeFields(instruction);                      // S-Type
+            case 0x63 -> decodeBTypeFields(instruction);                      // B-Type
+            case 0x37 -> decodeUTypeFields(Opcode.LUI, instruction);          // U-Type
+            case 0x17 -> decodeUTypeFields(Opcode.AUIPC, instruction);        // U-Type
+            case 0x6F -> decodeJTypeFields(instruction);                      // J-Type
+            default -> new DecodedInstruction(Opcode.UNKNOWN, 0, 0, 0, 0, instruction);
+        };
+    }
+
+    /**
+     * Decodes the fields of an R-Type instruction.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded R-Type instruction.
+     */
+    private static DecodedInstruction decodeRTypeFields(int instruction) {
+
+        int funct3 = (instruction >> 12) & 0x7;
+        int funct7 = (instruction >> 25) & 0x7F;
+
+        Opcode operation = switch (funct3) {
+            case 0b000 -> (funct7 == 0) ? Opcode.ADD : Opcode.SUB;
+            case 0b001 -> Opcode.SLL;
+            case 0b010 -> Opcode.SLT;
+            case 0b011 -> Opcode.SLTU;
+            case 0b100 -> Opcode.XOR;
+            case 0b101 -> (funct7 == 0) ? Opcode.SRL : Opcode.SRA;
+            case 0b110 -> Opcode.OR;
+            default -> Opcode.AND;
+        };
+
+        return new DecodedInstruction(operation, rd(instruction), rs1(instruction), rs2(instruction), 0, instruction);
+    }
+
+    /**
+     * Decodes the fields of an I-Type instruction with a sign-extended 12-bit immediate.
+     *
+     * @param operation   The operation the instruction performs.
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded I-Type instruction.
+     */
+    private static DecodedInstruction decodeITypeFields(Opcode operation, int instruction) {
+
+        return new DecodedInstruction(operation, rd(instruction), rs1(instruction), 0, instruction >> 20, instruction);
+    }
+
+    /**
+     * Decodes the fields of an I-Type load instruction.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded I-Type load instruction.
+     */
+    private static DecodedInstruction decodeITypeLoadFields(int instruction) {
+
+        Opcode operation = switch ((instruction >> 12) & 0x7) {
+            case 0b000 -> Opcode.LB;
+            case 0b001 -> Opcode.LH;
+            case 0b010 -> Opcode.LW;
+            case 0b100 -> Opcode.LBU;
+            case 0b101 -> Opcode.LHU;
+            default -> Opcode.UNKNOWN;
+        };
+
+        return decodeITypeFields(operation, instruction);
+    }
+
+    /**
+     * Decodes the fields of an I-Type immediate instruction. Shift amounts are reduced to 5 bits.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded I-Type immediate instruction.
+     */
+    private static DecodedInstruction decodeITypeImmediateFields(int instruction) {
+
+        int imm = instruction >> 20;
+        int funct3 = (instruction >> 12) & 0x7;
+
+        Opcode operation = switch (funct3) {
+            case 0b000 -> Opcode.ADDI;
+            case 0b010 -> Opcode.SLTI;
+            case 0b011 -> Opcode.SLTIU;
+            case 0b100 -> Opcode.XORI;
+            case 0b110 -> Opcode.ORI;
+            case 0b111 -> Opcode.ANDI;
+            case 0b001 -> Opcode.SLLI;
+            default -> (imm & 0xFE0) == 0 ? Opcode.SRLI : Opcode.SRAI;
+        };
+        if (funct3 == 0b001 || funct3 == 0b101) {
+            imm &= 0x1F;
+        }
+
+        return new DecodedInstruction(operation, rd(instruction), rs1(instruction), 0, imm, instruction);
+    }
+
+    /**
+     * Decodes the fields of a system or CSR instruction. The CSR number is kept unsigned.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded system or CSR instruction.
+     */
+    private static DecodedInstruction decodeITypeControlStatusRegisterFields(int instruction) {
+
+        int csr = instruction >>> 20;
+
+        Opcode operation = switch ((instruction >> 12) & 0x7) {
+            case 0b000 -> switch (csr) {
+                case 0x000 -> Opcode.ECALL;
+                case 0x001 -> Opcode.EBREAK;
+                case 0x105 -> Opcode.WFI;
+                default -> Opcode.MRET;
+            };
+            case 0b001 -> Opcode.CSRRW;
+            case 0b010 -> Opcode.CSRRS;
+            case 0b011 -> Opcode.CSRRC;
+            case 0b101 -> Opcode.CSRRWI;
+            case 0b110 -> Opcode.CSRRSI;
+            case 0b111 -> Opcode.CSRRCI;
+            default -> Opcode.UNKNOWN;
+        };
+
+        return new DecodedInstruction(operation, rd(instruction), rs1(instruction), 0, csr, instruction);
+    }
+
+    /**
+     * Decodes the fields of an S-Type instruction.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded S-Type instruction.
+     */
+    private static DecodedInstruction decodeSTypeFields(int instruction) {
+
+        int imm = ((instruction >> 25) << 5) | ((instruction >> 7) & 0x1F);
+
+        Opcode operation = switch ((instruction >> 12) & 0x7) {
+            case 0b000 -> Opcode.SB;
+            case 0b001 -> Opcode.SH;
+            case 0b010 -> Opcode.SW;
+            default -> Opcode.UNKNOWN;
+        };
+
+        return new DecodedInstruction(operation, 0, rs1(instruction), rs2(instruction), imm, instruction);
+    }
+
+    /**
+     * Decodes the fields of a B-Type instruction.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded B-Type instruction.
+     */
+    private static DecodedInstruction decodeBTypeFields(int instruction) {
+
+        int imm = ((instruction >> 31) << 12)       // imm[12], sign
+                | (((instruction >> 7) & 0x1) << 11) // imm[11]
+                | (((instruction >> 25) & 0x3F) << 5) // imm[10:5]
+                | (((instruction >> 8) & 0xF) << 1);  // imm[4:1]
+
+        Opcode operation = switch ((instruction >> 12) & 0x7) {
+            case 0b000 -> Opcode.BEQ;
+            case 0b001 -> Opcode.BNE;
+            case 0b100 -> Opcode.BLT;
+            case 0b101 -> Opcode.BGE;
+            case 0b110 -> Opcode.BLTU;
+            case 0b111 -> Opcode.BGEU;
+            default -> Opcode.UNKNOWN;
+        };
+
+        return new DecodedInstruction(operation, 0, rs1(instruction), rs2(instruction), imm, instruction);
+    }
+
+    /**
+     * Decodes the fields of a U-Type instruction. The immediate is kept in the upper 20 bits.
+     *
+     * @param operation   The operation the instruction performs.
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded U-Type instruction.
+     */
+    private static DecodedInstruction decodeUTypeFields(Opcode operation, int instruction) {
+
+        return new DecodedInstruction(operation, rd(instruction), 0, 0, instruction & 0xFFFFF000, instruction);
+    }
+
+    /**
+     * Decodes the fields of a J-Type instruction.
+     *
+     * @param instruction The 32-bit instruction to decode.
+     * @return The decoded J-Type instruction.
+     */
+    private static DecodedInstruction decodeJTypeFields(int instruction) {
+
+        int imm = ((instruction >> 31) << 20)          // imm[20], sign
+                | (((instruction >> 12) & 0xFF) << 12) // imm[19:12]
+                | (((instruction >> 20) & 0x1) << 11)  // imm[11]
+                | (((instruction >> 21) & 0x3FF) << 1); // imm[10:1]
+
+        return new DecodedInstruction(Opcode.JAL, rd(instruction), 0, 0, imm, instruction);
+    }
+
+    private static int rd(int instruction) {
+
+        return (instruction >> 7) & 0x1F;
+    }
+
+    private static int rs1(int instruction) {
+
+        return (instruction >> 15) & 0x1F;
+    }
+
+    private static int rs2(int instruction) {
+
+        return (instruction >> 20) & 0x1F;
+    }
+
     /**
      * Decodes a given instruction and returns a string in the RISC-V correct format.
      *
@@ -414,6 +644,8 @@ public class Decoder {
                     operation = "ecall";
                 } else if (csr == 0x01) {
                     operation = "ebreak";
+                } else if (csr == 0x105) {
+                    operation = "wfi";
                 } else if (csr > 0x01) {
                     operation = "mret";
                 }
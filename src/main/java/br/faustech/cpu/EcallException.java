@@ -0,0 +1,17 @@
+package br.faustech.cpu;
+
+/**
+ * Custom exception that signals an "ecall" condition in the CPU execution, which terminates the
+ * program.
+ */
+public class EcallException extends RuntimeException {
+
+    /**
+     * Constructs a new EcallException with the specified detail message.
+     *
+     * @param message the detail message that explains the cause of the exception.
+     */
+    public EcallException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,67 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import lombok.Getter;
+
+/**
+ * Frozen state of a machine: the CPU registers, CSRs and program counter, plus memory and both
+ * frame buffers. Every fork starts from exactly this state and runs independently of the others.
+ * With paged memory storage, pages are shared copy-on-write, so snapshots and forks cost a page
+ * table copy instead of a copy of the whole memory.
+ */
+public final class MachineSnapshot {
+
+    final MachineContext context; // Configuration and timer state of the machine, copied by every fork
+
+    final int[] registers;      // General-purpose registers at the snapshot
+
+    final int[] csrRegisters;   // CSR registers at the snapshot
+
+    final PerformanceCounters counters; // Performance counters at the snapshot, copied by every fork
+
+    @Getter
+    final int programCounter;   // Address of the next instruction to execute
+
+    final Bus bus;              // Memory and frame buffer at the snapshot, never written
+
+    MachineSnapshot(final MachineContext context, final int[] registers, final int[] csrRegisters,
+                    final PerformanceCounters counters, final int programCounter, final Bus bus) {
+        this.context = context.fork();
+        this.registers = registers;
+        this.csrRegisters = csrRegisters;
+        this.counters = counters;
+        this.programCounter = programCounter;
+        this.bus = bus;
+    }
+
+    /**
+     * Creates a new, unstarted CPU resuming from this snapshot. It can be started as a thread or
+     * stepped with {@link CPU#processNextBlock()}.
+     *
+     * @return the forked CPU
+     */
+    public CPU fork() {
+        return new CPU(this);
+    }
+
+    /**
+     * Returns the value of a general-purpose register at the snapshot.
+     *
+     * @param index the register number
+     * @return the register value
+     */
+    public int getRegister(final int index) {
+        return registers[index];
+    }
+
+    /**
+     * Reads a word of memory or frame buffer at the snapshot.
+     *
+     * @param address the bus address of the word
+     * @return the word at that address
+     */
+    public int readWord(final int address) {
+        return bus.readWord(address);
+    }
+}
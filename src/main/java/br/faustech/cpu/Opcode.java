@@ -0,0 +1,106 @@
+package br.faustech.cpu;
+
+import java.util.Locale;
+
+/**
+ * Enumerates the operations understood by the CPU after decoding.
+ */
+public enum Opcode {
+    // R-Type
+    ADD, SUB, SLL, SLT, SLTU, XOR, SRL, SRA, OR, AND,
+    // U-Type
+    LUI, AUIPC,
+    // J-Type and I-Type jump
+    JAL, JALR,
+    // I-Type load
+    LB, LH, LW, LBU, LHU,
+    // B-Type
+    BEQ, BNE, BLT, BGE, BLTU, BGEU,
+    // S-Type
+    SB, SH, SW,
+    // I-Type immediate
+    ADDI, SLTI, SLTIU, XORI, ORI, ANDI, SLLI, SRLI, SRAI,
+    // System
+    ECALL, EBREAK, MRET, WFI,
+    // I-Type control and status register
+    CSRRW, CSRRS, CSRRC, CSRRWI, CSRRSI, CSRRCI,
+    // Anything the decoder does not recognize
+    UNKNOWN;
+
+    private final String mnemonic = name().toLowerCase(Locale.ROOT); // Assembly name of the operation
+
+    /**
+     * Returns the assembly mnemonic of the operation.
+     *
+     * @return the lowercase mnemonic, e.g. "addi".
+     */
+    public String mnemonic() {
+
+        return mnemonic;
+    }
+
+    /**
+     * Tells whether the operation ends a basic block: jumps, branches, and system or CSR
+     * instructions, which may redirect control flow or change the interrupt state.
+     *
+     * @return true if no instruction may follow this one in the same basic block.
+     */
+    public boolean endsBasicBlock() {
+
+        return switch (this) {
+            case JAL, JALR, BEQ, BNE, BLT, BGE, BLTU, BGEU, ECALL, EBREAK, MRET, WFI, CSRRW, CSRRS,
+                 CSRRC, CSRRWI, CSRRSI, CSRRCI, UNKNOWN -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Tells whether the operation is a load or a store.
+     *
+     * @return true if the operation accesses memory at rs1 plus the immediate.
+     */
+    public boolean accessesMemory() {
+
+        return isLoad() || isStore();
+    }
+
+    /**
+     * Tells whether the operation loads from memory.
+     *
+     * @return true for lb, lh, lw, lbu and lhu.
+     */
+    public boolean isLoad() {
+
+        return switch (this) {
+            case LB, LH, LW, LBU, LHU -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Tells whether the operation stores to memory.
+     *
+     * @return true for sb, sh and sw.
+     */
+    public boolean isStore() {
+
+        return switch (this) {
+            case SB, SH, SW -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Tells whether the operation is a conditional branch.
+     *
+     * @return true for beq, bne, blt, bge, bltu and bgeu.
+     */
+    public boolean isConditionalBranch() {
+
+        return switch (this) {
+            case BEQ, BNE, BLT, BGE, BLTU, BGEU -> true;
+            default -> false;
+        };
+    }
+
+}
@@ -0,0 +1,246 @@
+package br.faustech.cpu;
+
+/**
+ * Hardware performance counters of the CPU, read by the guest through the counter CSRs:
+ * {@code mcycle}/{@code cycle}, {@code minstret}/{@code instret}, {@code time}, and the
+ * {@code mhpmcounter3..31}/{@code hpmcounter3..31} counters with their {@code h} halves. Each
+ * {@code mhpmeventN} CSR selects the event its counter counts: {@link #EVENT_LOADS},
+ * {@link #EVENT_STORES}, {@link #EVENT_TAKEN_BRANCHES} or {@link #EVENT_INTERRUPTS}, and 0 stops
+ * it. Counters 3 to 6 count these four events from reset.
+ *
+ * <p>The CPU retires whole basic blocks at once, so counting costs a few additions per block:
+ * each event keeps a running total, and a counter is its event total plus an offset set when the
+ * guest writes the counter or changes its event. One cycle is counted per retired instruction.</p>
+ */
+final class PerformanceCounters {
+
+    static final int EVENT_LOADS = 1; // Retired loads
+
+    static final int EVENT_STORES = 2; // Retired stores
+
+    static final int EVENT_TAKEN_BRANCHES = 3; // Taken conditional branches
+
+    static final int EVENT_INTERRUPTS = 4; // Interrupts taken
+
+    private static final int EVENT_COUNT = 5; // Event numbers, 0 counting nothing
+
+    private static final int MCYCLE = 0xB00;       // Machine cycle counter, low word
+
+    private static final int MINSTRET = 0xB02;     // Machine retired instruction counter, low word
+
+    private static final int MHPMCOUNTER3 = 0xB03; // First machine event counter, low word
+
+    private static final int CYCLE = 0xC00;        // Read-only shadow of mcycle
+
+    private static final int TIME = 0xC01;         // Read-only shadow of the machine timer
+
+    private static final int HIGH = 0x80;          // Added to a counter CSR number to address its high word
+
+    private static final int MHPMEVENT3 = 0x323;   // Event selector of the first event counter
+
+    private static final int FIRST_EVENT_COUNTER = 3; // Counters 0 to 2 are cycle, time and instret
+
+    private static final int LAST_COUNTER = 31;
+
+    private long instret; // Instructions retired
+
+    private long instretOffset; // minstret minus instret, set by guest writes
+
+    private long cycleOffset; // mcycle minus instret, set by guest writes
+
+    private final long[] events = new long[EVENT_COUNT]; // Running total of each event, the first unused
+
+    private final int[] selectors = new int[LAST_COUNTER + 1]; // Event counted by each counter
+
+    private final long[] offsets = new long[LAST_COUNTER + 1]; // Counter value minus its event total
+
+    private int committedInstructions; // Instructions of the running block already retired by a counter read
+
+    private int committedLoads; // Loads of the running block already counted
+
+    private int committedStores; // Stores of the running block already counted
+
+    /**
+     * Creates counters at zero, with counters 3 to 6 counting loads, stores, taken branches and
+     * interrupts.
+     */
+    PerformanceCounters() {
+
+        for (int event = EVENT_LOADS; event < EVENT_COUNT; event++) {
+            selectors[FIRST_EVENT_COUNTER + event - 1] = event;
+        }
+    }
+
+    /**
+     * Tells whether a CSR is one of the counters or event selectors.
+     *
+     * @param csr the CSR number
+     * @return true if the counters handle the CSR
+     */
+    static boolean handles(final int csr) {
+
+        final int base = csr & ~HIGH & ~0x1F; // Counter CSRs come in blocks of 32, high words 0x80 above
+        if (base == CYCLE) {
+            return true;
+        }
+        if (base == MCYCLE) {
+            return (csr & 0x1F) != 1; // There is no machine copy of time
+        }
+        return csr >= MHPMEVENT3 && csr <= MHPMEVENT3 + LAST_COUNTER - FIRST_EVENT_COUNTER;
+    }
+
+    /**
+     * Retires a run of a basic block.
+     *
+     * @param block    the block that ran
+     * @param executed the number of its instructions that executed
+     * @param nextPc   the program counter after the run
+     */
+    void retire(final BasicBlock block, final int executed, final int nextPc) {
+
+        instret += executed - committedInstructions;
+        if (executed == block.instructions.length) {
+            events[EVENT_LOADS] += block.loads - committedLoads;
+            events[EVENT_STORES] += block.stores - committedStores;
+            if (block.endsWithBranch && nextPc != block.endAddress()) {
+                events[EVENT_TAKEN_BRANCHES]++;
+            }
+        } else {
+            events[EVENT_LOADS] += BasicBlock.countLoads(block.instructions, executed) - committedLoads;
+            events[EVENT_STORES] += BasicBlock.countStores(block.instructions, executed) - committedStores;
+        }
+        committedInstructions = 0;
+        committedLoads = 0;
+        committedStores = 0;
+    }
+
+    /**
+     * Retires a single instruction executed outside of a block.
+     *
+     * @param instruction the instruction
+     * @param pc          the address of the instruction
+     * @param nextPc      the program counter after the instruction
+     */
+    void retire(final DecodedInstruction instruction, final int pc, final int nextPc) {
+
+        instret++;
+        if (instruction.opcode().isLoad()) {
+            events[EVENT_LOADS]++;
+        } else if (instruction.opcode().isStore()) {
+            events[EVENT_STORES]++;
+        } else if (instruction.opcode().isConditionalBranch() && nextPc != pc + 4) {
+            events[EVENT_TAKEN_BRANCHES]++;
+        }
+    }
+
+    /**
+     * Returns the number of instructions retired, whatever the guest wrote to minstret.
+     *
+     * @return the retired instruction count
+     */
+    long getInstret() {
+
+        return instret;
+    }
+
+    /**
+     * Counts an interrupt taken.
+     */
+    void interrupt() {
+
+        events[EVENT_INTERRUPTS]++;
+    }
+
+    /**
+     * Retires the instructions of the running block that precede a counter CSR instruction, so
+     * the guest reads exact counts although blocks are otherwise retired as a whole. The CSR
+     * instruction ends its block, so every load and store of the block precedes it.
+     *
+     * @param block the running block, null if the instruction runs outside of a block
+     * @param pc    the address of the CSR instruction
+     */
+    void commitBefore(final BasicBlock block, final int pc) {
+
+        if (block == null) {
+            return;
+        }
+        final int before = (pc - block.startAddress) >>> 2;
+        instret += before - committedInstructions;
+        events[EVENT_LOADS] += block.loads - committedLoads;
+        events[EVENT_STORES] += block.stores - committedStores;
+        committedInstructions = before;
+        committedLoads = block.loads;
+        committedStores = block.stores;
+    }
+
+    /**
+     * Reads a counter CSR.
+     *
+     * @param csr   the CSR number
+     * @param mtime the current machine time, read by {@code time}
+     * @return the CSR value
+     */
+    int read(final int csr, final long mtime) {
+
+        if (csr >= MHPMEVENT3 && csr <= MHPMEVENT3 + LAST_COUNTER - FIRST_EVENT_COUNTER) {
+            return selectors[csr - MHPMEVENT3 + FIRST_EVENT_COUNTER];
+        }
+        final int counter = csr & 0x1F;
+        final long value = switch (counter) {
+            case 0 -> instret + cycleOffset;
+            case 1 -> mtime;
+            case 2 -> instret + instretOffset;
+            default -> events[selectors[counter]] + offsets[counter];
+        };
+        return (csr & HIGH) != 0 ? (int) (value >>> 32) : (int) value;
+    }
+
+    /**
+     * Writes a counter CSR. Machine counters take the written word; the value is the one the
+     * counter holds after the writing instruction retired. The read-only shadows and {@code time}
+     * ignore writes.
+     *
+     * @param csr   the CSR number
+     * @param value the word to write
+     */
+    void write(final int csr, final int value) {
+
+        if (csr >= MHPMEVENT3 && csr <= MHPMEVENT3 + LAST_COUNTER - FIRST_EVENT_COUNTER) {
+            final int counter = csr - MHPMEVENT3 + FIRST_EVENT_COUNTER;
+            final long current = events[selectors[counter]] + offsets[counter];
+            selectors[counter] = value > 0 && value < EVENT_COUNT ? value : 0;
+            offsets[counter] = current - events[selectors[counter]];
+            return;
+        }
+        if ((csr & ~HIGH & ~0x1F) != MCYCLE) {
+            return; // cycle, time, instret and hpmcounters are read-only
+        }
+        final int counter = csr & 0x1F;
+        final long old = read(csr & ~HIGH, 0) & 0xFFFFFFFFL | (long) read(csr | HIGH, 0) << 32;
+        final long updated = (csr & HIGH) != 0 ? (old & 0xFFFFFFFFL) | (long) value << 32
+                : (old & 0xFFFFFFFF00000000L) | (value & 0xFFFFFFFFL);
+        switch (counter) {
+            case 0 -> cycleOffset = updated - instret - 1; // The writing instruction retires afterwards
+            case 2 -> instretOffset = updated - instret - 1;
+            default -> offsets[counter] = updated - events[selectors[counter]];
+        }
+    }
+
+    /**
+     * Creates a copy continuing from the same counts, for a forked CPU.
+     *
+     * @return the copy
+     */
+    PerformanceCounters copy() {
+
+        final PerformanceCounters copy = new PerformanceCounters();
+        copy.instret = instret;
+        copy.instretOffset = instretOffset;
+        copy.cycleOffset = cycleOffset;
+        System.arraycopy(events, 0, copy.events, 0, events.length);
+        System.arraycopy(selectors, 0, copy.selectors, 0, selectors.length);
+        System.arraycopy(offsets, 0, copy.offsets, 0, offsets.length);
+        return copy;
+    }
+
+}
@@ -0,0 +1,104 @@
+package br.faustech.cpu;
+
+import br.faustech.reader.ElfSymbols;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Writes the counts of a {@link Profiler} as a text report or as folded stacks.
+ */
+public final class ProfileReport {
+
+    private ProfileReport() {
+    }
+
+    /**
+     * Writes the instruction mix, the branch statistics and the hottest blocks, each instruction
+     * of a block with its count and disassembly.
+     *
+     * @param profiler the profiler to report on.
+     * @param symbols  the symbols naming block addresses, possibly empty.
+     * @param limit    the number of hottest blocks to list.
+     * @param writer   the destination.
+     * @throws IOException if writing fails.
+     */
+    public static void writeText(Profiler profiler, ElfSymbols symbols, int limit, Writer writer) throws IOException {
+        final long total = profiler.getInstructions();
+        writer.write(String.format(Locale.ROOT, "%d instructions executed%n%nInstruction mix%n", total));
+
+        final Opcode[] opcodes = Opcode.values();
+        final long[] counts = profiler.opcodeCounts();
+        final Integer[] byCount = new Integer[opcodes.length];
+        for (int i = 0; i < byCount.length; i++) {
+            byCount[i] = i;
+        }
+        Arrays.sort(byCount, (a, b) -> Long.compare(counts[b], counts[a]));
+        for (int i : byCount) {
+            if (counts[i] > 0) {
+                writer.write(String.format(Locale.ROOT, "  %-8s %14d %7.2f%%%n", opcodes[i].mnemonic(), counts[i],
+                        percent(counts[i], total)));
+            }
+        }
+
+        writer.write(String.format("%nBranches%n"));
+        final long[] taken = profiler.takenCounts();
+        final long[] notTaken = profiler.notTakenCounts();
+        for (Opcode opcode : opcodes) {
+            final int i = opcode.ordinal();
+            if (taken[i] + notTaken[i] > 0) {
+                writer.write(String.format(Locale.ROOT, "  %-8s %14d taken %14d not taken %7.2f%% taken%n",
+                        opcode.mnemonic(), taken[i], notTaken[i], percent(taken[i], taken[i] + notTaken[i])));
+            }
+        }
+
+        writer.write(String.format("%nHottest blocks%n"));
+        int rank = 1;
+        for (Profiler.BlockProfile block : profiler.hottestBlocks(limit)) {
+            writer.write(String.format(Locale.ROOT, "%n#%d 0x%08x %s: %d runs, %d instructions (%.2f%%)%n", rank++,
+                    block.startAddress(), name(symbols, block.startAddress()), block.runs(), block.instructions(),
+                    percent(block.instructions(), total)));
+            for (int i = 0; i < block.code().length; i++) {
+                writer.write(String.format(Locale.ROOT, "  0x%08x %14d  %s%n", block.startAddress() + i * 4,
+                        block.counts()[i], Decoder.decodeInstructionInFormat(block.code()[i])));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes one line per block in the folded stack format read by flame graph tools: the symbol
+     * and the block address separated by a semicolon, then the instructions the block executed.
+     *
+     * @param profiler the profiler to report on.
+     * @param symbols  the symbols naming block addresses, possibly empty.
+     * @param writer   the destination.
+     * @throws IOException if writing fails.
+     */
+    public static void writeFolded(Profiler profiler, ElfSymbols symbols, Writer writer) throws IOException {
+        for (Profiler.BlockProfile block : profiler.hottestBlocks(Integer.MAX_VALUE)) {
+            final String function = symbols.nameOf(block.startAddress());
+            writer.write(String.format(Locale.ROOT, "%s;0x%08x %d%n", function == null ? "[unknown]" : function,
+                    block.startAddress(), block.instructions()));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Names an address for the report.
+     *
+     * @param symbols the symbols.
+     * @param address the address.
+     * @return the symbol and offset, or "?" if no symbol covers the address.
+     */
+    private static String name(ElfSymbols symbols, int address) {
+        final String symbol = symbols.describe(address);
+        return symbol == null ? "?" : symbol;
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : part * 100.0 / whole;
+    }
+}
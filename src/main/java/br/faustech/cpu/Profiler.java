@@ -0,0 +1,218 @@
+package br.faustech.cpu;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guest profiler. The CPU reports every executed basic block, and the profiler only bumps a
+ * counter on the block, so profiling costs a few instructions per block, also for compiled
+ * blocks. Per-instruction figures are derived from the block counts when asked for: the count of
+ * every program counter, the instruction mix, and how often each conditional branch was taken.
+ * Must be read from the CPU thread or while the CPU is not running.
+ */
+public final class Profiler {
+
+    private final int memorySize; // Size of guest RAM, bounds the program counters counted
+
+    private final List<BasicBlock> blocks = new ArrayList<>(); // Every block that ran, in order of first run
+
+    /**
+     * Creates a profiler with no counts.
+     *
+     * @param memorySize the size of guest RAM in bytes
+     */
+    public Profiler(final int memorySize) {
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * Counts a run of a block. A run that stopped early, e.g. because a store rewrote the block,
+     * counts only for the instructions that executed.
+     *
+     * @param block    the block that ran
+     * @param executed the number of its instructions that executed
+     * @param nextPc   the program counter after the run
+     */
+    void blockExecuted(final BasicBlock block, final int executed, final int nextPc) {
+        if (!block.profiled) {
+            block.profiled = true;
+            blocks.add(block);
+        }
+        if (executed == block.instructions.length) {
+            block.profiledRuns++;
+            if (nextPc != block.endAddress()) {
+                block.takenRuns++;
+            }
+        } else if (executed > 0) {
+            if (block.partialRuns == null) {
+                block.partialRuns = new long[block.instructions.length];
+            }
+            block.partialRuns[executed - 1]++;
+        }
+    }
+
+    /**
+     * Returns how often each instruction executed.
+     *
+     * @return the counts, indexed by program counter divided by 4
+     */
+    public long[] pcCounts() {
+        final long[] counts = new long[memorySize >>> 2];
+        for (BasicBlock block : blocks) {
+            final int first = block.startAddress >>> 2;
+            for (int i = 0; i < block.instructions.length && first + i < counts.length; i++) {
+                counts[first + i] += runsThrough(block, i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns how often each operation executed.
+     *
+     * @return the counts, indexed by {@link Opcode#ordinal()}
+     */
+    public long[] opcodeCounts() {
+        final long[] counts = new long[Opcode.values().length];
+        for (BasicBlock block : blocks) {
+            for (int i = 0; i < block.instructions.length; i++) {
+                counts[block.instructions[i].opcode().ordinal()] += runsThrough(block, i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns how often the conditional branches of each operation were taken.
+     *
+     * @return the counts, indexed by {@link Opcode#ordinal()}
+     */
+    public long[] takenCounts() {
+        final long[] counts = new long[Opcode.values().length];
+        for (BasicBlock block : blocks) {
+            if (block.endsWithBranch) {
+                counts[lastOpcode(block).ordinal()] += block.takenRuns;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns how often the conditional branches of each operation fell through.
+     *
+     * @return the counts, indexed by {@link Opcode#ordinal()}
+     */
+    public long[] notTakenCounts() {
+        final long[] counts = new long[Opcode.values().length];
+        for (BasicBlock block : blocks) {
+            if (block.endsWithBranch) {
+                counts[lastOpcode(block).ordinal()] += block.profiledRuns - block.takenRuns;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the total number of instructions executed while profiling.
+     *
+     * @return the number of instructions
+     */
+    public long getInstructions() {
+        long total = 0;
+        for (BasicBlock block : blocks) {
+            for (int i = 0; i < block.instructions.length; i++) {
+                total += runsThrough(block, i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the blocks that executed the most instructions. Blocks translated again from the
+     * same address, e.g. after their code was rewritten, are merged.
+     *
+     * @param limit the maximum number of blocks returned
+     * @return the blocks, hottest first
+     */
+    public List<BlockProfile> hottestBlocks(final int limit) {
+        final Map<Integer, BlockProfile> merged = new LinkedHashMap<>();
+        for (BasicBlock block : blocks) {
+            final long[] counts = new long[block.instructions.length];
+            long instructions = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = runsThrough(block, i);
+                instructions += counts[i];
+            }
+            final int[] code = new int[counts.length];
+            for (int i = 0; i < code.length; i++) {
+                code[i] = block.instructions[i].raw();
+            }
+            final long taken = block.endsWithBranch ? block.takenRuns : 0;
+            merged.merge(block.startAddress, new BlockProfile(block.startAddress, code, counts, instructions, taken),
+                    BlockProfile::plus);
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparingLong(BlockProfile::instructions).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Returns the number of runs of a block that executed a given instruction.
+     *
+     * @param block the block
+     * @param index the index of the instruction in the block
+     * @return the complete runs plus the partial runs that reached the instruction
+     */
+    private static long runsThrough(final BasicBlock block, final int index) {
+        long runs = block.profiledRuns;
+        if (block.partialRuns != null) {
+            for (int i = index; i < block.partialRuns.length; i++) {
+                runs += block.partialRuns[i];
+            }
+        }
+        return runs;
+    }
+
+    private static Opcode lastOpcode(final BasicBlock block) {
+        return block.instructions[block.instructions.length - 1].opcode();
+    }
+
+    /**
+     * Execution counts of one basic block.
+     *
+     * @param startAddress the address of the first instruction
+     * @param code         the raw instructions of the block
+     * @param counts       how often each instruction executed
+     * @param instructions the total number of instructions the block executed
+     * @param taken        how often the conditional branch ending the block was taken, 0 if there is none
+     */
+    public record BlockProfile(int startAddress, int[] code, long[] counts, long instructions, long taken) {
+
+        /**
+         * Returns how often the block was entered.
+         *
+         * @return the count of its first instruction
+         */
+        public long runs() {
+            return counts[0];
+        }
+
+        /**
+         * Adds the counts of another translation of the block at the same address.
+         *
+         * @param other the other translation
+         * @return the merged counts, with the code of this translation
+         */
+        private BlockProfile plus(final BlockProfile other) {
+            final long[] sum = counts.clone();
+            for (int i = 0; i < sum.length && i < other.counts.length; i++) {
+                sum[i] += other.counts[i];
+            }
+            return new BlockProfile(startAddress, code, sum, instructions + other.instructions, taken + other.taken);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package br.faustech.device;
+
+import br.faustech.bus.BusDevice;
+import br.faustech.comum.MachineContext;
+import lombok.Getter;
+
+/**
+ * Core-local interruptor holding the machine timer, with the register layout of the RISC-V CLINT:
+ * {@code msip} at offset 0, {@code mtimecmp} at 0x4000 and {@code mtime} at 0xBFF8, the 64-bit
+ * registers as two little-endian words.
+ *
+ * <p>By default {@code mtime} counts retired instructions, so timer interrupts fall on the same
+ * instruction in every run. In wall-clock mode it follows real time instead, read from the system
+ * clock only once every {@value #SYNC_INTERVAL} retired instructions. Until the guest writes
+ * {@code mtimecmp} itself, the timer reloads automatically with the clock speed of the machine,
+ * which is how the bundled programs expect their periodic timer interrupt.</p>
+ */
+public final class Clint implements BusDevice {
+
+    public static final int SIZE = 0x10000; // Bytes of the register block
+
+    public static final int MSIP = 0x0000; // Software interrupt pending, stored but never raised
+
+    public static final int MTIMECMP = 0x4000; // Timer deadline, low word first
+
+    public static final int MTIME = 0xBFF8; // Timer, low word first
+
+    private static final int SYNC_INTERVAL = 4096; // Retired instructions between two reads of the clock
+
+    @Getter
+    private long mtime; // Current time, in ticks
+
+    @Getter
+    private long mtimecmp = Long.MAX_VALUE; // Deadline of the timer interrupt, never by default
+
+    private int msip; // Software interrupt pending register
+
+    private long period; // Ticks between automatic reloads, 0 before the timer is configured
+
+    private boolean periodic = true; // Reloads automatically, until the guest programs the deadline
+
+    @Getter
+    private boolean wallClock; // mtime follows the system clock instead of retired instructions
+
+    private long ticksPerMillisecond; // Frequency of mtime
+
+    private long origin = System.nanoTime(); // System time at which mtime was 0, in wall-clock mode
+
+    private int sinceSync; // Instructions retired since the last read of the clock
+
+    private boolean timeRead; // The guest read mtime since the last call to pollTimeRead()
+
+    /**
+     * Creates a timer at zero with no deadline.
+     */
+    public Clint() {
+
+    }
+
+    /**
+     * Constructs a fork continuing from the state of the given timer.
+     *
+     * @param parent The timer to fork.
+     */
+    private Clint(final Clint parent) {
+
+        this.mtime = parent.mtime;
+        this.mtimecmp = parent.mtimecmp;
+        this.msip = parent.msip;
+        this.period = parent.period;
+        this.periodic = parent.periodic;
+        this.wallClock = parent.wallClock;
+        this.ticksPerMillisecond = parent.ticksPerMillisecond;
+        this.origin = parent.origin;
+    }
+
+    /**
+     * Applies the timer settings of a machine: the clock mode, the frequency of {@code mtime}, and
+     * the clock speed used as the automatic reload period.
+     *
+     * @param context The machine the timer belongs to.
+     */
+    public void configure(final MachineContext context) {
+
+        this.wallClock = context.isWallClockTimer();
+        this.ticksPerMillisecond = context.getTimerFrequency();
+        this.period = (long) context.getClockSpeed() * ticksPerMillisecond;
+    }
+
+    /**
+     * Advances the timer after instructions retired. Called between basic blocks, so the guest
+     * sees {@code mtime} move in steps of whole blocks.
+     *
+     * @param instructions The number of instructions retired.
+     */
+    public void retire(final int instructions) {
+
+        if (!wallClock) {
+            mtime += instructions;
+        } else if ((sinceSync += instructions) >= SYNC_INTERVAL) {
+            sync();
+        }
+    }
+
+    /**
+     * Tells whether the timer interrupt is due.
+     *
+     * @return true once mtime reached mtimecmp.
+     */
+    public boolean isDue() {
+
+        return mtime >= mtimecmp;
+    }
+
+    /**
+     * Sets the next deadline one period from now, if the timer reloads automatically.
+     */
+    public void reload() {
+
+        if (periodic && period > 0) {
+            mtimecmp = mtime + period;
+        }
+    }
+
+    /**
+     * Tells whether a deadline is set.
+     *
+     * @return false if the timer can never become due.
+     */
+    public boolean hasDeadline() {
+
+        return mtimecmp != Long.MAX_VALUE;
+    }
+
+    /**
+     * Moves mtime forward to the deadline, for a CPU that would otherwise idle until then. Only
+     * used when mtime counts instructions, since no instructions retire while idling.
+     *
+     * @return The number of ticks skipped.
+     */
+    public long skipToDeadline() {
+
+        final long skipped = Math.max(0, mtimecmp - mtime);
+        mtime += skipped;
+        return skipped;
+    }
+
+    /**
+     * Moves mtime forward by the ticks that pass in the given time, but not past the deadline, for
+     * a CPU that waited that long. Only used when mtime counts instructions, so a waiting machine
+     * still sees its timer follow real time.
+     *
+     * @param nanos The time waited, in nanoseconds.
+     * @return The number of ticks passed.
+     */
+    public long elapse(final long nanos) {
+
+        long ticks = nanos / 1_000L * ticksPerMillisecond / 1_000L;
+        if (hasDeadline()) {
+            ticks = Math.min(ticks, Math.max(0, mtimecmp - mtime));
+        }
+        mtime += ticks;
+        return ticks;
+    }
+
+    /**
+     * Returns how long the system clock has to advance until the deadline, in wall-clock mode.
+     *
+     * @return The nanoseconds until the deadline, 0 if it passed, Long.MAX_VALUE if there is none.
+     */
+    public long nanosUntilDue() {
+
+        if (!hasDeadline() || ticksPerMillisecond == 0) {
+            return Long.MAX_VALUE;
+        }
+        sync();
+        final long ticks = Math.max(0, mtimecmp - mtime);
+        return ticks > Long.MAX_VALUE / 1_000_000L ? Long.MAX_VALUE : ticks * 1_000_000L / ticksPerMillisecond;
+    }
+
+    /**
+     * Reads the system clock into mtime, in wall-clock mode. Does nothing when mtime counts
+     * instructions.
+     */
+    public void sync() {
+
+        if (wallClock) {
+            sinceSync = 0;
+            mtime = Math.max(mtime, (System.nanoTime() - origin) * ticksPerMillisecond / 1_000_000L);
+        }
+    }
+
+    /**
+     * Tells whether the guest read {@code mtime} since the last call, and clears the flag. A loop
+     * that polls the timer waits for time to pass, not for an interrupt, so it is never idle.
+     *
+     * @return true if mtime was read.
+     */
+    public boolean pollTimeRead() {
+
+        final boolean read = timeRead;
+        timeRead = false;
+        return read;
+    }
+
+    @Override
+    public int readWord(final int offset) {
+
+        if (offset == MTIME || offset == MTIME + 4) {
+            timeRead = true;
+            sync();
+        }
+        return switch (offset) {
+            case MSIP -> msip;
+            case MTIMECMP -> (int) mtimecmp;
+            case MTIMECMP + 4 -> (int) (mtimecmp >>> 32);
+            case MTIME -> (int) mtime;
+            case MTIME + 4 -> (int) (mtime >>> 32);
+            default -> 0;
+        };
+    }
+
+    @Override
+    public void writeWord(final int offset, final int value) {
+
+        switch (offset) {
+            case MSIP -> msip = value & 1;
+            case MTIMECMP -> {
+                mtimecmp = (mtimecmp & 0xFFFFFFFF00000000L) | (value & 0xFFFFFFFFL);
+                periodic = false;
+            }
+            case MTIMECMP + 4 -> {
+                mtimecmp = (mtimecmp & 0xFFFFFFFFL) | ((long) value << 32);
+                periodic = false;
+            }
+            case MTIME -> mtime = (mtime & 0xFFFFFFFF00000000L) | (value & 0xFFFFFFFFL);
+            case MTIME + 4 -> mtime = (mtime & 0xFFFFFFFFL) | ((long) value << 32);
+            default -> {
+                // Reserved registers ignore writes
+            }
+        }
+    }
+
+    @Override
+    public Clint fork() {
+
+        return new Clint(this);
+    }
+
+}
@@ -0,0 +1,135 @@
+package br.faustech.device;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded lock-free queue of key events between exactly one producer thread, the window, and one
+ * consumer thread, the CPU. The producer publishes an event with a release store of the tail
+ * index and the consumer frees its slot with a release store of the head index, so each side sees
+ * the other's writes in order without locks. Each side caches the other's index and only re-reads
+ * it when the queue looks full or empty.
+ *
+ * <p>Events offered while the queue is full are dropped and counted.</p>
+ */
+public final class KeyEventQueue {
+
+    public static final int EMPTY = 0; // Returned by poll when no event is queued
+
+    private static final VarHandle HEAD;
+
+    private static final VarHandle TAIL;
+
+    private static final VarHandle DROPPED;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(KeyEventQueue.class, "head", long.class);
+            TAIL = lookup.findVarHandle(KeyEventQueue.class, "tail", long.class);
+            DROPPED = lookup.findVarHandle(KeyEventQueue.class, "dropped", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int[] events; // Ring of events, indexed by sequence number modulo capacity
+
+    private final int mask; // Capacity minus one
+
+    private long head; // Sequence number of the next event to take, written by the consumer only
+
+    private long tail; // Sequence number of the next free slot, written by the producer only
+
+    private long dropped; // Events dropped because the queue was full, written by the producer only
+
+    private long cachedHead; // Producer's copy of head
+
+    private long cachedTail; // Consumer's copy of tail
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity The maximum number of queued events, a power of two.
+     */
+    public KeyEventQueue(final int capacity) {
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.events = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Appends an event. Must only be called from the producer thread.
+     *
+     * @param event The event, anything but {@link #EMPTY}.
+     * @return false if the queue was full and the event was dropped.
+     */
+    public boolean offer(final int event) {
+
+        final long t = tail;
+        if (t - cachedHead > mask) {
+            cachedHead = (long) HEAD.getAcquire(this);
+            if (t - cachedHead > mask) {
+                DROPPED.setRelease(this, dropped + 1);
+                return false;
+            }
+        }
+        events[(int) t & mask] = event;
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest event. Must only be called from the consumer thread.
+     *
+     * @return The event, or {@link #EMPTY} if there is none.
+     */
+    public int poll() {
+
+        final long h = head;
+        if (h == cachedTail) {
+            cachedTail = (long) TAIL.getAcquire(this);
+            if (h == cachedTail) {
+                return EMPTY;
+            }
+        }
+        final int event = events[(int) h & mask];
+        HEAD.setRelease(this, h + 1);
+        return event;
+    }
+
+    /**
+     * Returns the number of queued events, as seen by the consumer.
+     *
+     * @return The number of events poll can take right now.
+     */
+    public int size() {
+
+        return (int) ((long) TAIL.getAcquire(this) - head);
+    }
+
+    /**
+     * Tells whether the queue is empty, as seen by the consumer. Uses a volatile read, so it is
+     * ordered after a preceding volatile write of the consumer, e.g. registering to be woken up.
+     *
+     * @return true if poll would return {@link #EMPTY}.
+     */
+    public boolean isEmpty() {
+
+        return (long) TAIL.getVolatile(this) == head;
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDropped() {
+
+        return (long) DROPPED.getAcquire(this);
+    }
+
+}
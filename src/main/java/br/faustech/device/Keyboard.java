@@ -0,0 +1,111 @@
+package br.faustech.device;
+
+import br.faustech.bus.BusDevice;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Memory-mapped keyboard fed by the window through a {@link KeyEventQueue}. Key presses are
+ * queued instead of overwriting each other, so bursts of keys reach the guest in order. The CPU
+ * takes queued keys as key interrupts whenever interrupts are enabled; with interrupts disabled,
+ * the guest can poll the registers instead:
+ *
+ * <ul>
+ *     <li>{@code STATUS} at offset 0: number of queued key presses.</li>
+ *     <li>{@code DATA} at offset 4: reading takes the oldest key code, 0 if none is queued.</li>
+ *     <li>{@code DROPPED} at offset 8: key presses lost because the queue was full.</li>
+ * </ul>
+ */
+public final class Keyboard implements BusDevice {
+
+    public static final int SIZE = 0x1000; // Bytes of the register block
+
+    public static final int STATUS = 0x0; // Number of queued keys
+
+    public static final int DATA = 0x4; // Oldest queued key, taken by the read
+
+    public static final int DROPPED = 0x8; // Keys lost to a full queue
+
+    private static final int CAPACITY = 64; // Key presses held before new ones are dropped
+
+    private final KeyEventQueue queue = new KeyEventQueue(CAPACITY); // Presses, from the window to the CPU
+
+    private volatile Thread waiter; // CPU thread parked until the next key press, if any
+
+    /**
+     * Queues a key press. Called from the window thread only.
+     *
+     * @param key The key code, not {@link KeyEventQueue#EMPTY}.
+     * @return false if the queue was full and the key was dropped.
+     */
+    public boolean press(final int key) {
+
+        final boolean queued = queue.offer(key);
+        VarHandle.fullFence(); // Publish the key before looking for a parked CPU, which checks in the other order
+        final Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+        return queued;
+    }
+
+    /**
+     * Tells whether a key press is queued, with the ordering needed to decide whether to park.
+     *
+     * @return true if poll would return a key.
+     */
+    public boolean hasPending() {
+
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Registers the thread to unpark on the next key press. Called from the CPU thread only.
+     *
+     * @param thread The parking CPU thread, or null once it stopped waiting.
+     */
+    public void setWaiter(final Thread thread) {
+
+        this.waiter = thread;
+    }
+
+    /**
+     * Takes the oldest queued key press. Called from the CPU thread only.
+     *
+     * @return The key code, or {@link KeyEventQueue#EMPTY} if none is queued.
+     */
+    public int poll() {
+
+        return queue.poll();
+    }
+
+    @Override
+    public int readWord(final int offset) {
+
+        return switch (offset) {
+            case STATUS -> queue.size();
+            case DATA -> queue.poll();
+            case DROPPED -> (int) queue.getDropped();
+            default -> 0;
+        };
+    }
+
+    @Override
+    public void writeWord(final int offset, final int value) {
+
+        // Read-only registers
+    }
+
+    /**
+     * Creates a keyboard with an empty queue; key presses queued so far stay with this machine.
+     *
+     * @return The new keyboard.
+     */
+    @Override
+    public Keyboard fork() {
+
+        return new Keyboard();
+    }
+
+}
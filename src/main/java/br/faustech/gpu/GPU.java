@@ -1,25 +1,27 @@
 package br.faustech.gpu;
 
+import br.faustech.comum.MachineContext;
 import br.faustech.memory.FrameBuffer;
 import br.faustech.memory.MemoryException;
 import lombok.Getter;
+import lombok.extern.java.Log;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL46;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
 
 /**
  * Represents a GPU component that handles rendering operations.
  */
+@Log
 public class GPU extends RenderData {
 
-    @Getter
-    private static int width;
-
-    @Getter
-    private static int height;
-
     @Getter
     private String title;
 
+    private final MachineContext context;
+
     private final FrameBuffer frameBuffer;
 
     private ShaderProgram shaderProgram;
@@ -27,17 +29,15 @@ public class GPU extends RenderData {
     private Window window;
 
     /**
-     * Constructs a new GPU instance with specified dimensions and framebuffer.
+     * Constructs a new GPU instance for the screen of a machine.
      *
-     * @param width       the width of the render window.
-     * @param height      the height of the render window.
+     * @param context     the machine whose screen is rendered, which also sets the window size.
      * @param frameBuffer the framebuffer to use for rendering.
      */
-    public GPU(final int width, final int height, final FrameBuffer frameBuffer, String title) {
-        super(width, height);
+    public GPU(final MachineContext context, final FrameBuffer frameBuffer, String title) {
+        super(context.getWidth(), context.getHeight());
 
-        GPU.width = width;
-        GPU.height = height;
+        this.context = context;
         this.frameBuffer = frameBuffer;
         this.title = title;
     }
@@ -68,13 +68,16 @@ public class GPU extends RenderData {
             throw new IllegalStateException("Failed to initialize GLFW");
         }
 
-        window = new Window(width, height, title);
+        window = new Window(width, height, title, context);
         window.init();
         window.setIcon();
-        GL46.glViewport(0, 0, width, height);
-        window.setResizeCallback((ignore, newWidth, newHeight) -> {
-            GL46.glViewport(0, 0, newWidth, newHeight);
-        });
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer framebufferWidth = stack.mallocInt(1);
+            IntBuffer framebufferHeight = stack.mallocInt(1);
+            GLFW.glfwGetFramebufferSize(window.getWindow(), framebufferWidth, framebufferHeight);
+            resize(framebufferWidth.get(0), framebufferHeight.get(0));
+        }
+        window.setResizeCallback((ignore, newWidth, newHeight) -> resize(newWidth, newHeight));
 
         shaderProgram = new ShaderProgram();
         shaderProgram.loadShaders();
@@ -88,11 +91,11 @@ public class GPU extends RenderData {
     /**
      * Checks if the window is still open and the rendering should continue.
      *
-     * @return true if the window is not marked to close, false otherwise
+     * @return true if the window is not marked to close and the program has not halted, false otherwise
      */
     private boolean isRunning() {
 
-        return !window.shouldClose();
+        return !window.shouldClose() && !context.isHalted();
     }
 
     public void setShouldClose(boolean shouldClose) {
@@ -108,18 +111,21 @@ public class GPU extends RenderData {
 
         GL46.glClear(GL46.GL_COLOR_BUFFER_BIT | GL46.GL_DEPTH_BUFFER_BIT);
 
-        draw(frameBuffer.getRenderData());
+        draw(frameBuffer);
 
         window.swapBuffers();
         window.pollEvents();
     }
 
     /**
-     * Cleans up resources upon shutdown, ensuring graceful termination of GLFW and other components.
+     * Cleans up resources upon shutdown, ensuring graceful termination of GLFW and other components,
+     * and logs how many frames of the CPU were dropped or shown twice.
      */
     public void cleanup() {
         super.cleanup();
 
+        log.info(String.format("%s: %d frames dropped, %d frames duplicated", title, frameBuffer.getDroppedFrames(), frameBuffer.getDuplicatedFrames()));
+
         shaderProgram.cleanup();
         window.cleanup();
     }
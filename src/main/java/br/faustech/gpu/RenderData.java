@@ -1,30 +1,45 @@
 package br.faustech.gpu;
 
-import br.faustech.comum.RenderDataDto;
 import br.faustech.memory.FrameBuffer;
 import lombok.extern.java.Log;
 import org.lwjgl.opengl.GL46;
 
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 
 /**
- * Handles the setup, updating, and drawing of render data for OpenGL.
+ * Handles the setup, updating, and drawing of render data for OpenGL. The screen is a texture
+ * drawn on one quad covering the viewport, sampled with nearest filtering.
+ *
+ * <p>Pixels reach the texture through a ring of pixel buffer objects that stay mapped for the
+ * whole run. The frame buffer copies the changed rows straight into the mapped slot, and a fence
+ * after the texture upload tells when the slot may be written again, so neither side reallocates
+ * buffers or waits on the upload of the previous frame.</p>
  */
 @Log
 public abstract class RenderData extends Thread {
 
     protected final int width, height; // Dimensions for the texture
 
-    protected final int bufferSize = FrameBuffer.getBufferSize(); // Size of the buffer
-
-    protected final int numVertices = bufferSize / 8; // Number of vertices to draw
+    protected final int bufferSize; // Bytes of one frame of packed pixels
 
     protected int vao, vbo, textureId; // OpenGL object identifiers
 
+    private static final int PBO_COUNT = 3; // Frames in flight between the frame buffer and the texture
+
+    private static final long FENCE_TIMEOUT = 1_000_000L; // Nanoseconds per wait for a slot, before checking again
+
+    private static final int MAP_FLAGS = GL46.GL_MAP_WRITE_BIT | GL46.GL_MAP_PERSISTENT_BIT | GL46.GL_MAP_COHERENT_BIT;
+
     protected int[] pboIds; // Array of Pixel Buffer Object identifiers
 
     protected int nextPboIndex = 0; // Index of the next PBO to use
 
+    private final IntBuffer[] pboPixels = new IntBuffer[PBO_COUNT]; // Persistent mappings of the PBOs
+
+    private final long[] pboFences = new long[PBO_COUNT]; // Fences of the last upload from each PBO, 0 if none
+
     /**
      * Constructs a RenderData instance with specified texture dimensions.
      *
@@ -35,6 +50,31 @@ public abstract class RenderData extends Thread {
 
         this.width = width;
         this.height = height;
+        this.bufferSize = width * height * Integer.BYTES;
+    }
+
+    /**
+     * Computes where the screen is drawn in a window: scaled by the largest whole factor that
+     * fits, so every pixel covers the same number of window pixels, or shrunk to fit keeping the
+     * aspect ratio when the window is smaller than the screen. The rest of the window is left
+     * black around the centered screen.
+     *
+     * @param width        the screen width in pixels
+     * @param height       the screen height in pixels
+     * @param windowWidth  the width of the window framebuffer in pixels
+     * @param windowHeight the height of the window framebuffer in pixels
+     * @return the viewport as x, y, width and height
+     */
+    public static int[] viewport(final int width, final int height, final int windowWidth, final int windowHeight) {
+
+        final int scale = Math.min(windowWidth / width, windowHeight / height);
+        int viewportWidth = width * scale;
+        int viewportHeight = height * scale;
+        if (scale == 0) {
+            viewportWidth = Math.min(windowWidth, (int) ((long) windowHeight * width / height));
+            viewportHeight = Math.min(windowHeight, (int) ((long) windowWidth * height / width));
+        }
+        return new int[]{(windowWidth - viewportWidth) / 2, (windowHeight - viewportHeight) / 2, viewportWidth, viewportHeight};
     }
 
     /**
@@ -42,30 +82,44 @@ public abstract class RenderData extends Thread {
      */
     protected void setup() {
 
-        GL46.glEnable(GL46.GL_TEXTURE_2D);
         GL46.glPixelStorei(GL46.GL_UNPACK_ALIGNMENT, 4);
         setupTexture();
         setupVAOAndVBO();
         setupPBOs();
-        GL46.glPointSize(4.0f);
     }
 
     /**
-     * Initializes the texture settings and allocates texture memory.
+     * Fits the viewport to a new size of the window framebuffer.
+     *
+     * @param windowWidth  the width of the window framebuffer in pixels
+     * @param windowHeight the height of the window framebuffer in pixels
+     */
+    protected void resize(final int windowWidth, final int windowHeight) {
+
+        final int[] viewport = viewport(width, height, windowWidth, windowHeight);
+        GL46.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+    }
+
+    /**
+     * Initializes the texture settings and allocates texture memory. The texture holds one RGBA8
+     * texel per pixel, filled from the packed 0xRRGGBB words of the frame buffer as is. It has a
+     * single level, as it is only sampled with nearest filtering.
      */
     private void setupTexture() {
 
         textureId = GL46.glGenTextures();
         GL46.glBindTexture(GL46.GL_TEXTURE_2D, textureId);
-        GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_WRAP_S, GL46.GL_REPEAT);
-        GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_WRAP_T, GL46.GL_REPEAT);
+        GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_WRAP_S, GL46.GL_CLAMP_TO_EDGE);
+        GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_WRAP_T, GL46.GL_CLAMP_TO_EDGE);
         GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_MIN_FILTER, GL46.GL_NEAREST);
         GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_MAG_FILTER, GL46.GL_NEAREST);
-        GL46.glTexImage2D(GL46.GL_TEXTURE_2D, 0, GL46.GL_RGBA, width, height, 0, GL46.GL_RGBA, GL46.GL_FLOAT, (FloatBuffer) null);
+        GL46.glTexParameteri(GL46.GL_TEXTURE_2D, GL46.GL_TEXTURE_MAX_LEVEL, 0);
+        GL46.glTexImage2D(GL46.GL_TEXTURE_2D, 0, GL46.GL_RGBA8, width, height, 0, GL46.GL_BGRA, GL46.GL_UNSIGNED_INT_8_8_8_8_REV, (IntBuffer) null);
     }
 
     /**
-     * Sets up the Vertex Array Object (VAO) and Vertex Buffer Object (VBO).
+     * Sets up the Vertex Array Object (VAO) and Vertex Buffer Object (VBO) of the quad covering the
+     * viewport, drawn as a strip of two triangles with the first texture row at the top.
      */
     private void setupVAOAndVBO() {
 
@@ -74,58 +128,115 @@ public abstract class RenderData extends Thread {
         vbo = GL46.glGenBuffers();
         GL46.glBindBuffer(GL46.GL_ARRAY_BUFFER, vbo);
 
-        int stride = 8 * Float.BYTES;
+        final float[] vertices = {
+                -1, 1, 0, 0,  // Top left
+                -1, -1, 0, 1, // Bottom left
+                1, 1, 1, 0,   // Top right
+                1, -1, 1, 1,  // Bottom right
+        };
+        GL46.glBufferData(GL46.GL_ARRAY_BUFFER, vertices, GL46.GL_STATIC_DRAW);
+
+        int stride = 4 * Float.BYTES;
         GL46.glVertexAttribPointer(0, 2, GL46.GL_FLOAT, false, stride, 0);
         GL46.glEnableVertexAttribArray(0);
-        GL46.glVertexAttribPointer(1, 4, GL46.GL_FLOAT, false, stride, 2 * Float.BYTES);
+        GL46.glVertexAttribPointer(1, 2, GL46.GL_FLOAT, false, stride, 2 * Float.BYTES);
         GL46.glEnableVertexAttribArray(1);
-        GL46.glVertexAttribPointer(2, 2, GL46.GL_FLOAT, false, stride, 6 * Float.BYTES);
-        GL46.glEnableVertexAttribArray(2);
     }
 
     /**
-     * Sets up the Pixel Buffer Objects (PBOs) for efficient texture streaming.
+     * Sets up the Pixel Buffer Objects (PBOs) for efficient texture streaming: immutable storage
+     * for a whole frame each, mapped persistent and coherent once, so writes through the mapping
+     * are seen by the GPU without flushing or unmapping.
      */
     private void setupPBOs() {
 
-        int pboCount = 2;
-        pboIds = new int[pboCount];
+        pboIds = new int[PBO_COUNT];
         GL46.glGenBuffers(pboIds);
-        for (int i = 0; i < pboCount; i++) {
+        for (int i = 0; i < PBO_COUNT; i++) {
             GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, pboIds[i]);
-            GL46.glBufferData(GL46.GL_PIXEL_UNPACK_BUFFER, bufferSize, GL46.GL_STREAM_DRAW);
+            GL46.glBufferStorage(GL46.GL_PIXEL_UNPACK_BUFFER, bufferSize, MAP_FLAGS);
+            final ByteBuffer mapping = GL46.glMapBufferRange(GL46.GL_PIXEL_UNPACK_BUFFER, 0, bufferSize, MAP_FLAGS);
+            if (mapping == null) {
+                throw new IllegalStateException("Failed to map pixel buffer " + i);
+            }
+            pboPixels[i] = mapping.order(ByteOrder.nativeOrder()).asIntBuffer();
         }
+        GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, 0);
     }
 
     /**
-     * Draws the vertex data and updates the texture.
+     * Updates the rows of the texture that changed, if any, and draws it.
      *
-     * @param dataDto the object containing the vertex and pixel data
+     * @param frameBuffer the frame buffer whose changed rows are uploaded
      */
-    protected void draw(RenderDataDto dataDto) {
-        // Update the VBO with new data
-        GL46.glBindBuffer(GL46.GL_ARRAY_BUFFER, vbo);
-        GL46.glBufferData(GL46.GL_ARRAY_BUFFER, dataDto.vertex(), GL46.GL_STREAM_DRAW);
-
-        int pboId = pboIds[nextPboIndex];
-        nextPboIndex = (nextPboIndex + 1) % pboIds.length;
+    protected void draw(final FrameBuffer frameBuffer) {
+
+        final int slot = nextPboIndex;
+        awaitFence(slot);
+        final IntBuffer pixels = pboPixels[slot];
+        pixels.clear();
+        final int[] rows = frameBuffer.copyChangedRows(pixels);
+        if (rows.length > 0) {
+            upload(slot, rows);
+            nextPboIndex = (slot + 1) % PBO_COUNT;
+        }
 
-        GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, pboId);
-        GL46.glBufferData(GL46.GL_PIXEL_UNPACK_BUFFER, dataDto.pixel(), GL46.GL_STREAM_DRAW);
+        GL46.glDrawArrays(GL46.GL_TRIANGLE_STRIP, 0, 4);
+    }
 
-        GL46.glUnmapBuffer(GL46.GL_PIXEL_UNPACK_BUFFER);
+    /**
+     * Copies each run of rows from a PBO into the texture, and fences the PBO until the copy is done.
+     *
+     * @param slot the PBO holding the rows back to back
+     * @param rows runs of rows, as pairs of first row and row count
+     */
+    private void upload(final int slot, final int[] rows) {
 
-        GL46.glTexSubImage2D(GL46.GL_TEXTURE_2D, 0, 0, 0, width, height, GL46.GL_RGBA, GL46.GL_FLOAT, 0);
+        GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, pboIds[slot]);
+        long offset = 0;
+        for (int run = 0; run < rows.length; run += 2) {
+            GL46.glTexSubImage2D(GL46.GL_TEXTURE_2D, 0, 0, rows[run], width, rows[run + 1], GL46.GL_BGRA, GL46.GL_UNSIGNED_INT_8_8_8_8_REV, offset);
+            offset += (long) rows[run + 1] * width * Integer.BYTES;
+        }
+        GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, 0);
+        pboFences[slot] = GL46.glFenceSync(GL46.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
 
-        GL46.glGenerateMipmap(GL46.GL_TEXTURE_2D);
+    /**
+     * Waits until the GPU finished reading a PBO, so it may be written again. With three PBOs the
+     * upload being waited for was issued two frames ago, so this rarely waits at all.
+     *
+     * @param slot the PBO to wait for
+     */
+    private void awaitFence(final int slot) {
 
-        GL46.glDrawArrays(GL46.GL_POINTS, 0, numVertices);
+        final long fence = pboFences[slot];
+        if (fence == 0) {
+            return;
+        }
+        int status;
+        do {
+            status = GL46.glClientWaitSync(fence, GL46.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+        } while (status == GL46.GL_TIMEOUT_EXPIRED);
+        GL46.glDeleteSync(fence);
+        pboFences[slot] = 0;
+        if (status == GL46.GL_WAIT_FAILED) {
+            throw new IllegalStateException("Failed to wait for pixel buffer " + slot);
+        }
     }
 
     /**
      * Cleans up resources upon shutdown, ensuring graceful termination of GLFW and other components.
      */
     protected void cleanup() {
+        for (int i = 0; i < PBO_COUNT; i++) {
+            if (pboFences[i] != 0) {
+                GL46.glDeleteSync(pboFences[i]);
+            }
+            GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, pboIds[i]);
+            GL46.glUnmapBuffer(GL46.GL_PIXEL_UNPACK_BUFFER);
+        }
+        GL46.glBindBuffer(GL46.GL_PIXEL_UNPACK_BUFFER, 0);
         GL46.glDeleteBuffers(vbo);
         GL46.glDeleteVertexArrays(vao);
         GL46.glDeleteTextures(textureId);
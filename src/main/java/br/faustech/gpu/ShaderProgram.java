@@ -20,14 +20,11 @@ public class ShaderProgram {
         int vertexShader = compileShader(GL46.GL_VERTEX_SHADER, """
                    #version 460
                      layout (location = 0) in vec2 vertexPosition;
-                     layout (location = 1) in vec4 vertexColor;
-                     layout (location = 2) in vec2 texCoord;
+                     layout (location = 1) in vec2 texCoord;
                      out vec2 TexCoord;
-                     out vec4 outColor;
                      void main() {
                          gl_Position = vec4(vertexPosition, 0.0, 1.0);
                          TexCoord = texCoord;
-                         outColor = vertexColor;
                      }
                 """);
 
@@ -35,11 +32,10 @@ public class ShaderProgram {
         int fragmentShader = compileShader(GL46.GL_FRAGMENT_SHADER, """
                     #version 460
                      in vec2 TexCoord;
-                     in vec4 outColor;
                      out vec4 FragColor;
                      uniform sampler2D ourTexture;
                      void main() {
-                         FragColor = texture(ourTexture, TexCoord) * outColor;
+                         FragColor = vec4(texture(ourTexture, TexCoord).rgb, 1.0); // The guest leaves alpha unused
                      }
                 """);
 
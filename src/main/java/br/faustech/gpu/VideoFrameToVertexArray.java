@@ -1,8 +1,8 @@
 package br.faustech.gpu;
 
 import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
 import br.faustech.memory.FrameBuffer;
-import br.faustech.memory.Memory;
 import br.faustech.memory.MemoryException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.java.Log;
@@ -24,9 +24,7 @@ public class VideoFrameToVertexArray extends Thread {
 
     private final Java2DFrameConverter converter = new Java2DFrameConverter(); // Converter for frames to images
 
-    private final int width; // Width of the target rendering
-
-    private final int height; // Height of the target rendering
+    private final MachineContext context; // Machine whose screen shows the video
 
     private final Bus bus; // Bus to write the converted frames
 
@@ -95,16 +93,18 @@ public class VideoFrameToVertexArray extends Thread {
      */
     private void processFrameAndWriteWithBus(Frame frame) {
 
+        final int width = context.getWidth();
+        final int height = context.getHeight();
         BufferedImage originalImage = converter.getBufferedImage(frame);
         BufferedImage resizedImage = resizeImage(originalImage, width, height);
         int address = 4100;
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                bus.write(address, new int[]{resizedImage.getRGB(x, y)});
+                bus.writeWord(address, resizedImage.getRGB(x, y));
                 address += 4;
             }
         }
-        bus.write(Memory.getMemorySize(), new int[]{0}); // Swap frame buffer
+        bus.writeWord(context.getMemorySize(), 0); // Swap frame buffer
     }
 
     /**
@@ -115,25 +115,14 @@ public class VideoFrameToVertexArray extends Thread {
      */
     private void processFrameAndWriteInBuffer(Frame frame) throws MemoryException {
 
+        final int width = context.getWidth();
+        final int height = context.getHeight();
         BufferedImage originalImage = converter.getBufferedImage(frame);
         BufferedImage resizedImage = resizeImage(originalImage, width, height);
 
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                float normX = (x / (float) width) * 2 - 1;
-                float normY = ((height - y) / (float) height) * 2 - 1;
-
-                int color = resizedImage.getRGB(x, y);
-
-                final float[] pixel = new float[]{normX, normY, ((color >> 16) & 0xFF) / 255.0f,  // r
-                        ((color >> 8) & 0xFF) / 255.0f,                         // g
-                        (color & 0xFF) / 255.0f,                                // b
-                        1,                                                      // a
-                        x / (float) width,                                      // u
-                        y / (float) height                                      // v
-                };
-
-                frameBuffer.writeToVertexBufferFromFloats((y * width + x) * 32, pixel);
+                frameBuffer.writePixel((y * width + x) * 4, resizedImage.getRGB(x, y));
             }
         }
         frameBuffer.swap();
@@ -1,6 +1,6 @@
 package br.faustech.gpu;
 
-import br.faustech.cpu.CPUInterrupt;
+import br.faustech.comum.MachineContext;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.lwjgl.glfw.GLFW;
@@ -21,11 +21,11 @@ import java.nio.IntBuffer;
 @RequiredArgsConstructor
 public class Window {
 
-    @Getter
-    private static long window; // Native handle to the GLFW window
+    private long window; // Native handle to the GLFW window
     private final int width;  // Width of the window
     private final int height; // Height of the window
     private final String title; // Title of the window
+    private final MachineContext context; // Machine receiving the key interrupts of this window
 
     /**
      * Initializes and creates a window. Throws IllegalStateException if window creation fails.
@@ -53,9 +53,8 @@ public class Window {
 
         // Set key callback
         GLFW.glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
-            if (CPUInterrupt.isInterruptEnabled() && action == GLFW.GLFW_PRESS) {
-                CPUInterrupt.setKeyPressedFlag(true);
-                CPUInterrupt.setInterruptData(key);
+            if (action == GLFW.GLFW_PRESS && key != GLFW.GLFW_KEY_UNKNOWN) {
+                context.keyPressed(key);
             }
         });
     }
@@ -0,0 +1,79 @@
+package br.faustech.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Storage backed by a direct or memory-mapped byte buffer in little-endian order.
+ */
+final class BufferStorage implements MemoryStorage {
+
+    private final ByteBuffer buffer; // Direct or mapped buffer holding the data
+
+    BufferStorage(final ByteBuffer buffer) {
+
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int size() {
+
+        return buffer.capacity();
+    }
+
+    @Override
+    public byte readByte(final int address) {
+
+        return buffer.get(address);
+    }
+
+    @Override
+    public short readHalfword(final int address) {
+
+        return buffer.getShort(address);
+    }
+
+    @Override
+    public int readWord(final int address) {
+
+        return buffer.getInt(address);
+    }
+
+    @Override
+    public void writeByte(final int address, final byte value) {
+
+        buffer.put(address, value);
+    }
+
+    @Override
+    public void writeHalfword(final int address, final short value) {
+
+        buffer.putShort(address, value);
+    }
+
+    @Override
+    public void writeWord(final int address, final int value) {
+
+        buffer.putInt(address, value);
+    }
+
+    @Override
+    public void read(final int address, final byte[] destination, final int offset, final int length) {
+
+        buffer.get(address, destination, offset, length);
+    }
+
+    @Override
+    public void write(final int address, final byte[] source, final int offset, final int length) {
+
+        buffer.put(address, source, offset, length);
+    }
+
+    @Override
+    public MemoryStorage fork() {
+
+        final ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity());
+        copy.put(0, buffer, 0, buffer.capacity());
+        return new BufferStorage(copy);
+    }
+}
@@ -1,248 +1,416 @@
 package br.faustech.memory;
 
+import br.faustech.bus.BusDevice;
+import br.faustech.comum.MachineContext;
 import br.faustech.comum.RenderDataDto;
-import br.faustech.gpu.GPU;
 import lombok.Getter;
 import lombok.extern.java.Log;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
- * A class representing a framebuffer that manages two buffers for double buffering.
+ * A class representing a framebuffer that manages two buffers for double buffering. On the bus,
+ * the first word is the swap register and pixels follow, one word per pixel. Pixels are kept
+ * packed as the guest wrote them, 0xRRGGBB in one int, so the GPU uploads a buffer straight into
+ * an RGBA8 texture without converting it.
+ *
+ * <p>The frame buffer also tracks which rows changed on screen, so the GPU only uploads those. A
+ * span of pixels is marked when the guest writes to it, as the two buffers may then differ there;
+ * at a swap the marked spans are compared and the rows of those that really differ are what the
+ * new front changes on screen. Each such row is stamped with the frame that changed it, so the
+ * GPU takes every row changed after the last frame it showed, and frames it skips are not lost.</p>
+ *
+ * <p>The CPU thread swaps while the GPU thread copies the front buffer, without locks: a swap
+ * makes a sequence number odd while it exchanges the buffers and stamps rows, and even again
+ * after. The GPU copies between two reads of the sequence and keeps the copy only if it did not
+ * change, so it never takes a frame that was half swapped or overwritten while it was copying, and
+ * the CPU never waits for it. Frames replaced before the GPU copied them are counted as dropped,
+ * and GPU frames without a new complete frame as duplicated.</p>
  */
 @Log
-public class FrameBuffer {
+public class FrameBuffer implements BusDevice {
 
-    @Getter
-    private static int bufferSize; // Size of each buffer
+    public static final int SWAP_REGISTER_SIZE = 4; // Bytes of the swap register before the pixels
 
-    private byte[] frontPixelBuffer; // Buffer to store pixel data
+    private static final int SPAN_SHIFT = 5; // Pixels of a span tracked for changes, as a power of two
 
-    private byte[] backPixelBuffer; // Buffer to store pixel data
+    private static final int COPY_ATTEMPTS = 4; // Copies tried while swaps keep overlapping them, before showing the last frame again
 
-    private byte[] frontVertexBuffer; // Buffer currently displayed
+    private static final int[] NO_ROWS = {}; // Runs of a copy without changed rows
 
-    private byte[] backVertexBuffer; // Buffer to write new data to
+    private static final VarHandle SEQUENCE;
 
-    /**
-     * Constructs a FrameBuffer with specified memory addresses and buffer size.
-     *
-     * @param bufferSize The size of each buffer.
-     */
-    public FrameBuffer(final int bufferSize) {
+    private static final VarHandle DROPPED_FRAMES;
+
+    private static final VarHandle DUPLICATED_FRAMES;
 
-        final int size = bufferSize * 8;
-        this.frontPixelBuffer = new byte[size];  // Initialize pixel buffer
-        this.backPixelBuffer = new byte[size];  // Initialize pixel buffer
-        this.frontVertexBuffer = new byte[size];  // Initialize front buffer
-        this.backVertexBuffer = new byte[size];   // Initialize back buffer
-        FrameBuffer.bufferSize = bufferSize * 2;
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            SEQUENCE = lookup.findVarHandle(FrameBuffer.class, "sequence", long.class);
+            DROPPED_FRAMES = lookup.findVarHandle(FrameBuffer.class, "droppedFrames", long.class);
+            DUPLICATED_FRAMES = lookup.findVarHandle(FrameBuffer.class, "duplicatedFrames", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
     }
 
-    /**
-     * Writes pixel data to the back buffer starting from a specified position.
-     *
-     * @param beginAddress The starting position in the back buffer.
-     * @param data         The pixel data as an array of integers.
-     * @throws MemoryException If the write operation exceeds buffer limits.
-     */
-    public void writePixel(int beginAddress, final int[] data) throws MemoryException {
+    @Getter
+    private final int bufferSize; // Bytes of the bus window for the pixels, reserved past the frame
 
-        int width = GPU.getWidth();
-        int height = GPU.getHeight();
+    @Getter
+    private final int width; // Screen width in pixels
 
-        for (int i = 0; i < data.length; i++) {
-            int color = data[i];
+    @Getter
+    private final int height; // Screen height in pixels
 
-            // Calculate normalized coordinates for texture mapping
-            int x = ((beginAddress / 4) + (i * 4)) % width;
-            int y = ((beginAddress / 4) + (i * 4)) / width;
+    private int[] frontPixelBuffer; // Pixels currently displayed
 
-            float normX = (x / (float) width) * 2 - 1;
-            float normY = ((height - y) / (float) height) * 2 - 1;
+    private int[] backPixelBuffer; // Pixels the guest writes the next frame to
 
-            float r = ((color >> 16) & 0xFF) / 255.0f;
-            float g = ((color >> 8) & 0xFF) / 255.0f;
-            float b = (color & 0xFF) / 255.0f;
-            float u = x / (float) width;
-            float v = y / (float) height;
+    private boolean frontShared; // Front buffer may also be referenced by a fork
 
-            this.writeToPixelBufferFromFloats(beginAddress * 4, new float[]{r, g, b, 1});
+    private boolean backShared; // Back buffer may also be referenced by a fork, copy before writing
 
-            this.writeToVertexBufferFromFloats((y * width + x) * 32, new float[]{normX, normY, r, g, b, 1, u, v});
-        }
-    }
+    private final long[] spansMayDiffer; // Bitmap of the spans written since the buffers last held the same pixels
+
+    private final boolean[] changedRows; // Rows the next swap changes on screen, used by the swap only
+
+    private final long[] rowChangedAt; // Frame that last changed each row on screen, written in swaps
+
+    private long sequence; // Twice the number of swaps, odd during a swap, written by the CPU thread only
+
+    private long shownFrame = -1; // Last frame copied for display, used by the GPU thread only
+
+    private final int[] copiedRuns; // Runs of the copy in progress, used by the GPU thread only
+
+    private long droppedFrames; // Frames replaced before the GPU copied them, written by the GPU thread only
+
+    private long duplicatedFrames; // GPU frames without a new complete frame, written by the GPU thread only
 
     /**
-     * Writes float data to the pixel buffer, converting them to bytes before storing.
+     * Constructs a FrameBuffer sized for the screen of the given machine.
      *
-     * @param beginAddress The starting index where data is to be written.
-     * @param data         The float data to be converted and written.
-     * @throws MemoryException If the write operation exceeds buffer limits.
+     * @param context The machine whose screen the frame buffer holds.
      */
+    public FrameBuffer(final MachineContext context) {
+
+        this.width = context.getWidth();
+        this.height = context.getHeight();
+        this.frontPixelBuffer = new int[width * height];  // Initialize front buffer
+        this.backPixelBuffer = new int[width * height];   // Initialize back buffer
+        this.bufferSize = context.getFrameSize() * 2;
+        this.spansMayDiffer = new long[(width * height + (1 << (SPAN_SHIFT + 6)) - 1) >> (SPAN_SHIFT + 6)];
+        this.changedRows = new boolean[height];
+        this.rowChangedAt = new long[height]; // Every row of frame 0 is new to the GPU
+        this.copiedRuns = new int[height + 1]; // At most every other row starts a run
+    }
 
-    public void writeToVertexBufferFromFloats(final int beginAddress, final float[] data) throws MemoryException {
-        this.writeToBufferFromFloats(this.backVertexBuffer, beginAddress, data);
+    /**
+     * Constructs a fork sharing the buffers of the given frame buffer copy-on-write. The fork has
+     * shown nothing yet, so its first copy takes the whole frame.
+     *
+     * @param parent The frame buffer to fork.
+     */
+    private FrameBuffer(final FrameBuffer parent) {
+
+        this.width = parent.width;
+        this.height = parent.height;
+        this.bufferSize = parent.bufferSize;
+        this.frontPixelBuffer = parent.frontPixelBuffer;
+        this.backPixelBuffer = parent.backPixelBuffer;
+        this.spansMayDiffer = parent.spansMayDiffer.clone();
+        this.changedRows = new boolean[height];
+        this.rowChangedAt = parent.rowChangedAt.clone();
+        this.copiedRuns = new int[height + 1];
+        this.sequence = parent.sequence;
+        this.frontShared = this.backShared = parent.frontShared = parent.backShared = true;
     }
 
     /**
-     * Writes float data to the pixel buffer, converting them to bytes before storing.
+     * Creates an independent copy of this frame buffer. The buffers are shared until either side
+     * writes a pixel, so forking does not copy any pixel data up front.
      *
-     * @param beginAddress The starting index where data is to be written.
-     * @param data         The float data to be converted and written.
-     * @throws MemoryException If the write operation exceeds buffer limits.
+     * @return The copy.
      */
-    public void writeToPixelBufferFromFloats(final int beginAddress, final float[] data) throws MemoryException {
-        this.writeToBufferFromFloats(this.backPixelBuffer, beginAddress, data);
+    @Override
+    public FrameBuffer fork() {
+
+        return new FrameBuffer(this);
     }
 
     /**
-     * Writes float data to the buffer, converting them to bytes before storing.
+     * Writes pixel data to the back buffer starting from a specified position.
      *
-     * @param buffer       The buffer to write data to.
-     * @param beginAddress The starting index where data is to be written.
-     * @param data         The float data to be converted and written.
+     * @param beginAddress The starting position in the back buffer.
+     * @param data         The pixel data as an array of integers.
      * @throws MemoryException If the write operation exceeds buffer limits.
      */
-    public void writeToBufferFromFloats(final byte[] buffer, final int beginAddress, final float[] data) throws MemoryException {
+    public void writePixel(int beginAddress, final int[] data) throws MemoryException {
 
-        checkAddressRange(beginAddress, data.length, buffer);
+        checkAddressRange(beginAddress, data.length * 4);
+        if (data.length == 0) {
+            return;
+        }
+        ownBackBuffer();
+        System.arraycopy(data, 0, this.backPixelBuffer, beginAddress / 4, data.length);
+        for (int span = (beginAddress / 4) >> SPAN_SHIFT; span <= (beginAddress / 4 + data.length - 1) >> SPAN_SHIFT; span++) {
+            spansMayDiffer[span >> 6] |= 1L << span;
+        }
+    }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(data.length * 4).order(ByteOrder.nativeOrder());
-        FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-        floatBuffer.put(data);
+    /**
+     * Writes a single pixel to the back buffer, marking its span in the span bitmap.
+     *
+     * @param beginAddress The position of the pixel in the back buffer, four bytes per pixel.
+     * @param color        The pixel color as 0xRRGGBB.
+     * @throws MemoryException If the pixel lies outside the frame.
+     */
+    public void writePixel(final int beginAddress, final int color) throws MemoryException {
+
+        checkAddressRange(beginAddress, 4);
+        ownBackBuffer();
+        final int pixel = beginAddress >>> 2; // Not negative once checked
+        this.backPixelBuffer[pixel] = color;
+        final long span = 1L << (pixel >>> SPAN_SHIFT);
+        final long marked = spansMayDiffer[pixel >>> (SPAN_SHIFT + 6)];
+        if ((marked & span) == 0) { // Stores only on the first write to the span, so writes do not wait on each other
+            spansMayDiffer[pixel >>> (SPAN_SHIFT + 6)] = marked | span;
+        }
+    }
+
+    /**
+     * Copies the back buffer if it is shared with a fork, so writes do not leak into it.
+     */
+    private void ownBackBuffer() {
 
-        byteBuffer.rewind();
-        byteBuffer.get(buffer, beginAddress, byteBuffer.remaining());
+        if (backShared) {
+            backPixelBuffer = backPixelBuffer.clone();
+            backShared = false;
+        }
     }
 
     /**
-     * Checks if the address range is valid for the given data length.
+     * Checks if the byte range lies within the pixels of one frame.
      *
-     * @param beginAddress The starting index in the buffer.
-     * @param data         The length of the data to be written.
-     * @param backBuffer   The buffer to write data to.
+     * @param beginAddress The starting byte offset of the range.
+     * @param length       The length of the range in bytes.
      * @throws MemoryException If the address range is invalid.
      */
-    private void checkAddressRange(int beginAddress, int data, byte[] backBuffer) throws MemoryException {
-        int endAddress = beginAddress + data;
-        if (beginAddress < 0 || endAddress > backBuffer.length) {
+    private void checkAddressRange(final int beginAddress, final int length) throws MemoryException {
+
+        final int endAddress = beginAddress + length;
+        if (beginAddress < 0 || endAddress > frontPixelBuffer.length * 4) {
             throw new MemoryException("Invalid data positions or data length. (beginAddress: " + beginAddress + ", endAddress: " + endAddress + ")");
         }
     }
 
     /**
-     * Swaps the front and back buffers, promoting the back to front for display.
+     * Swaps the front and back buffers, promoting the back to front for display. Only the spans
+     * written since the buffers last matched are compared to find the rows that change on screen.
+     * Never waits for the GPU thread.
      */
     public void swap() {
 
-        byte[] temp = frontVertexBuffer;
-        frontVertexBuffer = backVertexBuffer;
-        backVertexBuffer = temp;
+        for (int word = 0; word < spansMayDiffer.length; word++) {
+            for (long marked = spansMayDiffer[word]; marked != 0; marked &= marked - 1) {
+                final int span = (word << 6) + Long.numberOfTrailingZeros(marked);
+                final int begin = span << SPAN_SHIFT;
+                final int end = Math.min(begin + (1 << SPAN_SHIFT), frontPixelBuffer.length);
+                if (Arrays.equals(frontPixelBuffer, begin, end, backPixelBuffer, begin, end)) {
+                    spansMayDiffer[word] &= ~(1L << span);
+                } else {
+                    Arrays.fill(changedRows, begin / width, (end - 1) / width + 1, true);
+                }
+            }
+        }
+
+        final long current = sequence;
+        final long frame = (current >> 1) + 1;
+        SEQUENCE.setOpaque(this, current + 1);
+        VarHandle.storeStoreFence(); // The odd sequence is visible before any of the changes below
+
+        for (int row = 0; row < height; row++) {
+            if (changedRows[row]) {
+                rowChangedAt[row] = frame;
+                changedRows[row] = false;
+            }
+        }
 
-        temp = frontPixelBuffer;
+        int[] temp = frontPixelBuffer;
         frontPixelBuffer = backPixelBuffer;
         backPixelBuffer = temp;
+
+        SEQUENCE.setRelease(this, current + 2);
+
+        boolean shared = frontShared;
+        frontShared = backShared;
+        backShared = shared;
     }
 
     /**
-     * Retrieves the render data from the front buffer.
+     * Retrieves the rows of the front buffer that changed on screen since the last frame shown, and
+     * marks the current frame as shown. Without changes the render data is empty. Must only be
+     * called from the thread displaying the frames.
      *
-     * @return A RenderDataDto object containing the vertex and pixel data.
-     * @throws MemoryException If invalid data positions are used.
+     * @return A RenderDataDto object containing a copy of the changed rows.
      */
-    public RenderDataDto getRenderData() throws MemoryException {
-        return RenderDataDto.builder().vertex(readFromVertexBufferAsFloats(0, bufferSize)).pixel(readFromPixelBufferAsFloats(0, bufferSize)).build();
+    public RenderDataDto getRenderData() {
+
+        final IntBuffer pixels = IntBuffer.allocate(width * height);
+        final int[] rows = copyChangedRows(pixels);
+        return RenderDataDto.builder().pixel(Arrays.copyOf(pixels.array(), pixels.position())).rows(rows).build();
     }
 
     /**
-     * Reads a segment of the front buffer as integer data.
+     * Copies the rows of the front buffer that changed on screen since the last frame shown into
+     * the destination, back to back from its position, and marks the current frame as shown. The
+     * destination may be memory mapped by the GPU, so the pixels reach it without an intermediate
+     * copy. Must only be called from the thread displaying the frames.
      *
-     * @param beginAddress The starting index in the buffer.
-     * @param endAddress   The ending index in the buffer.
-     * @return An array of integers read from the buffer.
-     * @throws MemoryException If invalid data positions are used.
+     * <p>A copy overlapped by a swap is discarded and tried again. If swaps keep overlapping, the
+     * copy gives up without changed rows and the last frame is shown again.</p>
+     *
+     * @param destination The buffer receiving the pixels, with room for a whole frame.
+     * @return Runs of adjacent changed rows, as pairs of first row and row count, empty if no row
+     * changed or no complete frame could be copied.
      */
-    public float[] readFromPixelBufferAsFloats(final int beginAddress, final int endAddress) throws MemoryException {
-        return this.readFromBufferAsFloats(frontPixelBuffer, beginAddress, endAddress);
+    public int[] copyChangedRows(final IntBuffer destination) {
+
+        final int start = destination.position();
+        for (int attempt = 0; attempt < COPY_ATTEMPTS; attempt++) {
+            final long current = (long) SEQUENCE.getAcquire(this);
+            if ((current & 1) != 0) {
+                Thread.onSpinWait(); // A swap is in progress
+                continue;
+            }
+            destination.position(start);
+            final int[] runs = copyRowsChangedAfter(frontPixelBuffer, shownFrame, destination);
+            VarHandle.loadLoadFence(); // The copy is read before checking no swap overlapped it
+            if ((long) SEQUENCE.getOpaque(this) == current) {
+                show(current >> 1);
+                return runs;
+            }
+        }
+        destination.position(start);
+        DUPLICATED_FRAMES.setRelease(this, duplicatedFrames + 1);
+        return NO_ROWS;
     }
 
     /**
-     * Reads a segment of the front buffer as float data.
+     * Copies the rows stamped after a frame, without checking for a concurrent swap.
      *
-     * @param beginAddress The starting index in the buffer.
-     * @param endAddress   The ending index in the buffer.
-     * @return An array of floats read from the buffer.
-     * @throws MemoryException If invalid data positions are used.
+     * @param front       The front buffer to copy from.
+     * @param after       The last frame the rows were copied for.
+     * @param destination The buffer receiving the pixels.
+     * @return Runs of adjacent copied rows, as pairs of first row and row count.
      */
-    public float[] readFromVertexBufferAsFloats(final int beginAddress, final int endAddress) throws MemoryException {
-        return this.readFromBufferAsFloats(frontVertexBuffer, beginAddress, endAddress);
+    private int[] copyRowsChangedAfter(final int[] front, final long after, final IntBuffer destination) {
+
+        int run = 0;
+        for (int row = 0; row < height; row++) {
+            if (rowChangedAt[row] > after) {
+                final int first = row;
+                while (row < height && rowChangedAt[row] > after) {
+                    row++;
+                }
+                destination.put(front, first * width, (row - first) * width);
+                copiedRuns[run++] = first;
+                copiedRuns[run++] = row - first;
+            }
+        }
+        return run == 0 ? NO_ROWS : Arrays.copyOf(copiedRuns, run);
     }
 
     /**
-     * Reads a segment of the given buffer as float data.
+     * Records that a frame was copied for display, counting the frames skipped before it or the
+     * repeat of the last one.
      *
-     * @param beginAddress The starting index in the buffer.
-     * @param endAddress   The ending index in the buffer.
-     * @return An array of floats read from the buffer.
-     * @throws MemoryException If invalid data positions are used.
+     * @param frame The frame copied.
      */
-    public float[] readFromBufferAsFloats(final byte[] buffer, final int beginAddress, final int endAddress) throws MemoryException {
+    private void show(final long frame) {
 
-        int length = endAddress - beginAddress;
+        if (frame == shownFrame) {
+            DUPLICATED_FRAMES.setRelease(this, duplicatedFrames + 1);
+        } else {
+            DROPPED_FRAMES.setRelease(this, droppedFrames + frame - shownFrame - 1);
+            shownFrame = frame;
+        }
+    }
 
-        final ByteBuffer byteBuffer = getByteBufferFromBuffer(buffer, beginAddress, endAddress);
+    /**
+     * Returns the number of frames swapped in and replaced before the GPU copied them.
+     *
+     * @return The number of dropped frames.
+     */
+    public long getDroppedFrames() {
 
-        FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-        float[] floatArray = new float[length];
-        floatBuffer.get(floatArray, 0, length);
+        return (long) DROPPED_FRAMES.getAcquire(this);
+    }
 
-        return floatArray;
+    /**
+     * Returns the number of times the GPU found no new complete frame and showed the last one again.
+     *
+     * @return The number of duplicated frames.
+     */
+    public long getDuplicatedFrames() {
+
+        return (long) DUPLICATED_FRAMES.getAcquire(this);
     }
 
     /**
-     * Retrieves a ByteBuffer from the given buffer with specified start and end positions.
+     * Reads a segment of the front buffer.
      *
-     * @param buffer       The byte array buffer.
-     * @param beginAddress The starting index in the buffer.
-     * @param endAddress   The ending index in the buffer.
-     * @return A ByteBuffer positioned at the specified data range.
+     * @param beginAddress The index of the first pixel.
+     * @param endAddress   The index past the last pixel.
+     * @return The pixels in that range, as 0xRRGGBB.
      * @throws MemoryException If invalid data positions are used.
      */
-    private ByteBuffer getByteBufferFromBuffer(final byte[] buffer, final int beginAddress, final int endAddress) throws MemoryException {
+    public int[] readFromPixelBufferAsInts(final int beginAddress, final int endAddress) throws MemoryException {
 
-        if (beginAddress < 0 || endAddress > buffer.length || beginAddress >= endAddress) {
+        if (beginAddress < 0 || endAddress > frontPixelBuffer.length || beginAddress >= endAddress) {
             throw new MemoryException("Invalid data positions or data length. (beginAddress: " + beginAddress + ", endAddress: " + endAddress + ")");
         }
-
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        byteBuffer.position(beginAddress);
-        return byteBuffer;
+        return Arrays.copyOfRange(frontPixelBuffer, beginAddress, endAddress);
     }
 
     /**
-     * Reads a segment of the front buffer as integer data.
+     * Reads a pixel of the front buffer. The part of the bus window past the last pixel is
+     * reserved and reads as zero.
      *
-     * @param beginAddress The starting index in the buffer.
-     * @param endAddress   The ending index in the buffer.
-     * @return An array of integers read from the buffer.
-     * @throws MemoryException If invalid data positions are used.
+     * @param offset The bus offset of the word, past the swap register.
+     * @return The pixel at that position, as written.
+     * @throws MemoryException If the word lies outside the bus window.
      */
-    public int[] readFromPixelBufferAsInts(final int beginAddress, final int endAddress) throws MemoryException {
+    @Override
+    public int readWord(final int offset) throws MemoryException {
 
-        int length = endAddress - beginAddress;
-
-        final ByteBuffer byteBuffer = getByteBufferFromBuffer(frontPixelBuffer, beginAddress, endAddress);
+        final int address = offset - SWAP_REGISTER_SIZE;
+        if (address < 0 || address + 4 > bufferSize) {
+            throw new MemoryException("Invalid address");
+        }
+        final int index = address / 4;
+        return index < frontPixelBuffer.length ? frontPixelBuffer[index] : 0;
+    }
 
-        IntBuffer intBuffer = byteBuffer.asIntBuffer();
-        int[] intArray = new int[length];
-        intBuffer.get(intArray, 0, length);
+    /**
+     * Writes a word: any write to the swap register swaps the buffers, other words are pixels.
+     *
+     * @param offset The bus offset of the word.
+     * @param value  The pixel color as 0xRRGGBB, ignored for the swap register.
+     * @throws MemoryException If the pixel lies outside the buffer.
+     */
+    @Override
+    public void writeWord(final int offset, final int value) throws MemoryException {
 
-        return intArray;
+        if (offset < SWAP_REGISTER_SIZE) {
+            swap();
+        } else {
+            writePixel(offset - SWAP_REGISTER_SIZE, value);
+        }
     }
 
 }
@@ -0,0 +1,87 @@
+package br.faustech.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Storage backed by a heap byte array, accessed through little-endian VarHandle views.
+ */
+final class HeapStorage implements MemoryStorage {
+
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle HALFWORD = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] memory; // Memory array to store data
+
+    HeapStorage(final int size) {
+
+        this(new byte[size]);
+    }
+
+    private HeapStorage(final byte[] memory) {
+
+        this.memory = memory;
+    }
+
+    @Override
+    public int size() {
+
+        return memory.length;
+    }
+
+    @Override
+    public byte readByte(final int address) {
+
+        return memory[address];
+    }
+
+    @Override
+    public short readHalfword(final int address) {
+
+        return (short) HALFWORD.get(memory, address);
+    }
+
+    @Override
+    public int readWord(final int address) {
+
+        return (int) WORD.get(memory, address);
+    }
+
+    @Override
+    public void writeByte(final int address, final byte value) {
+
+        memory[address] = value;
+    }
+
+    @Override
+    public void writeHalfword(final int address, final short value) {
+
+        HALFWORD.set(memory, address, value);
+    }
+
+    @Override
+    public void writeWord(final int address, final int value) {
+
+        WORD.set(memory, address, value);
+    }
+
+    @Override
+    public void read(final int address, final byte[] destination, final int offset, final int length) {
+
+        System.arraycopy(memory, address, destination, offset, length);
+    }
+
+    @Override
+    public void write(final int address, final byte[] source, final int offset, final int length) {
+
+        System.arraycopy(source, offset, memory, address, length);
+    }
+
+    @Override
+    public MemoryStorage fork() {
+
+        return new HeapStorage(memory.clone());
+    }
+}
@@ -1,18 +1,20 @@
 package br.faustech.memory;
 
+import br.faustech.bus.BusDevice;
 import lombok.Getter;
 
-import java.nio.ByteBuffer;
-
 /**
- * Represents a simple memory model for storing and retrieving data.
+ * Represents a simple memory model for storing and retrieving data. Multi-byte values are stored
+ * little-endian, as RISC-V requires, so byte, halfword and word accesses to the same address agree.
+ * The bytes themselves live in a pluggable {@link MemoryStorage}: a heap array by default, or
+ * off-heap and memory-mapped buffers for large guest RAM.
  */
-public class Memory {
+public class Memory implements BusDevice {
 
-    @Getter
-    private static int memorySize; // Total size of the memory array
+    private final MemoryStorage storage; // Storage holding the data
 
-    private final byte[] memory; // Memory array to store data
+    @Getter
+    private final int size; // Size of this memory, in bytes
 
     /**
      * Constructs a memory component with specified size.
@@ -21,8 +23,30 @@ public class Memory {
      */
     public Memory(final int memorySize) {
 
-        this.memory = new byte[memorySize]; // Allocate memory
-        Memory.memorySize = memorySize;
+        this(MemoryStorage.heap(memorySize)); // Allocate memory
+    }
+
+    /**
+     * Constructs a memory component over the given storage.
+     *
+     * @param storage The storage holding the memory contents.
+     */
+    public Memory(final MemoryStorage storage) {
+
+        this.storage = storage;
+        this.size = storage.size();
+    }
+
+    /**
+     * Creates an independent copy of this memory. With paged storage the pages are shared
+     * copy-on-write, so forking is cheap regardless of the memory size.
+     *
+     * @return The copy.
+     */
+    @Override
+    public Memory fork() {
+
+        return new Memory(this.storage.fork());
     }
 
     /**
@@ -34,13 +58,10 @@ public class Memory {
      */
     public void write(final int beginDataPosition, final byte[] value) throws MemoryException {
 
-        for (int i = 0; i < value.length; i++) {
-            if (beginDataPosition + i < this.memory.length) {
-                this.memory[beginDataPosition + i] = value[i];
-            } else {
-                throw new MemoryException(String.format("Memory overflow at position %d", beginDataPosition + i));
-            }
+        if (beginDataPosition + value.length > this.size) {
+            throw new MemoryException(String.format("Memory overflow at position %d", Math.max(beginDataPosition, this.size)));
         }
+        this.storage.write(beginDataPosition, value, 0, value.length);
     }
 
     /**
@@ -53,19 +74,13 @@ public class Memory {
     public void writeFromInt(final int beginDataPosition, final int[] value) throws MemoryException {
 
         int length = value.length * 4; // Calculate byte length from int length
-        byte[] bytes = new byte[length];
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(length);
-        for (final int j : value) {
-            byteBuffer.putInt(j);
+        if (beginDataPosition < 0 || beginDataPosition + length > this.size) {
+            throw new MemoryException(String.format("Memory overflow at position %d", beginDataPosition + length - 1));
         }
-        byteBuffer.flip(); // Prepare buffer for reading
 
-        if (beginDataPosition + length <= this.memory.length) {
-            byteBuffer.get(bytes);
-            System.arraycopy(bytes, 0, this.memory, beginDataPosition, length);
-        } else {
-            throw new MemoryException(String.format("Memory overflow at position %d", beginDataPosition + length - 1));
+        for (int i = 0; i < value.length; i++) {
+            this.writeWord(beginDataPosition + i * 4, value[i]);
         }
     }
 
@@ -79,7 +94,7 @@ public class Memory {
      */
     public byte[] read(final int beginDataPosition, final int endDataPosition) throws MemoryException {
 
-        if (beginDataPosition < 0 || endDataPosition > this.memory.length) {
+        if (beginDataPosition < 0 || endDataPosition > this.size) {
             throw new MemoryException("Invalid range specified");
         }
         if (endDataPosition <= beginDataPosition) {
@@ -87,9 +102,7 @@ public class Memory {
         }
 
         byte[] value = new byte[endDataPosition - beginDataPosition];
-        for (int i = beginDataPosition, j = 0; i < endDataPosition; i++, j++) {
-            value[j] = this.memory[i];
-        }
+        this.storage.read(beginDataPosition, value, 0, value.length);
         return value;
     }
 
@@ -103,25 +116,117 @@ public class Memory {
      */
     public int[] readAsInt(final int beginDataPosition, final int endDataPosition) throws MemoryException {
 
-        if (beginDataPosition < 0 || endDataPosition > this.memory.length) {
+        if (beginDataPosition < 0 || endDataPosition > this.size) {
             throw new MemoryException("Invalid range specified");
         }
         if (endDataPosition <= beginDataPosition) {
             throw new MemoryException("End position must be greater than begin position");
         }
 
-        int length = endDataPosition - beginDataPosition;
-        byte[] value = new byte[length];
-
-        System.arraycopy(this.memory, beginDataPosition, value, 0, length);
-
-        ByteBuffer byteBuffer = ByteBuffer.wrap(value);
-        int[] intArray = new int[length / 4]; // Calculate number of integers
+        int[] intArray = new int[(endDataPosition - beginDataPosition) / 4]; // Calculate number of integers
         for (int i = 0; i < intArray.length; i++) {
-            intArray[i] = byteBuffer.getInt(); // Convert bytes to integer
+            intArray[i] = this.readWord(beginDataPosition + i * 4);
         }
 
         return intArray;
     }
 
+    /**
+     * Reads a 32-bit little-endian word from memory.
+     *
+     * @param address The address of the first byte of the word.
+     * @return The word read from memory.
+     * @throws MemoryException If the word lies outside the memory.
+     */
+    @Override
+    public int readWord(final int address) throws MemoryException {
+
+        checkAccess(address, 4);
+        return this.storage.readWord(address);
+    }
+
+    /**
+     * Reads a 16-bit little-endian halfword from memory.
+     *
+     * @param address The address of the first byte of the halfword.
+     * @return The halfword read from memory, sign-extended.
+     * @throws MemoryException If the halfword lies outside the memory.
+     */
+    @Override
+    public short readHalfword(final int address) throws MemoryException {
+
+        checkAccess(address, 2);
+        return this.storage.readHalfword(address);
+    }
+
+    /**
+     * Reads a single byte from memory.
+     *
+     * @param address The address of the byte.
+     * @return The byte read from memory.
+     * @throws MemoryException If the address lies outside the memory.
+     */
+    @Override
+    public byte readByte(final int address) throws MemoryException {
+
+        checkAccess(address, 1);
+        return this.storage.readByte(address);
+    }
+
+    /**
+     * Writes a 32-bit word to memory, least significant byte first.
+     *
+     * @param address The address of the first byte of the word.
+     * @param value   The word to write.
+     * @throws MemoryException If the word lies outside the memory.
+     */
+    @Override
+    public void writeWord(final int address, final int value) throws MemoryException {
+
+        checkAccess(address, 4);
+        this.storage.writeWord(address, value);
+    }
+
+    /**
+     * Writes the low 16 bits of a value to memory, least significant byte first.
+     *
+     * @param address The address of the first byte of the halfword.
+     * @param value   The value whose low halfword is written.
+     * @throws MemoryException If the halfword lies outside the memory.
+     */
+    @Override
+    public void writeHalfword(final int address, final int value) throws MemoryException {
+
+        checkAccess(address, 2);
+        this.storage.writeHalfword(address, (short) value);
+    }
+
+    /**
+     * Writes the low 8 bits of a value to memory.
+     *
+     * @param address The address of the byte.
+     * @param value   The value whose low byte is written.
+     * @throws MemoryException If the address lies outside the memory.
+     */
+    @Override
+    public void writeByte(final int address, final int value) throws MemoryException {
+
+        checkAccess(address, 1);
+        this.storage.writeByte(address, (byte) value);
+    }
+
+    /**
+     * Checks that an access of the given width lies entirely inside the memory.
+     *
+     * @param address The address of the first byte accessed.
+     * @param width   The number of bytes accessed.
+     * @throws MemoryException If any accessed byte lies outside the memory.
+     */
+    private void checkAccess(final int address, final int width) throws MemoryException {
+
+        if (address < 0 || address > this.size - width) {
+            throw new MemoryException(String.format("Memory access out of bounds: %d", address));
+        }
+    }
+
 }
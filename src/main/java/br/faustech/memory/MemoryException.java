@@ -15,4 +15,15 @@ public class MemoryException extends RuntimeException {
         super(message); // Call superclass constructor with the provided message
     }
 
+    /**
+     * Constructs a new MemoryException with a specified detail message and the failure it reports.
+     *
+     * @param message The detail message that explains the reason for the exception.
+     * @param cause   The failure that caused this exception.
+     */
+    public MemoryException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+
 }
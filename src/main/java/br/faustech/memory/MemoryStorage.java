@@ -0,0 +1,152 @@
+package br.faustech.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Backing store of guest RAM. Multi-byte values are little-endian. Implementations do not check
+ * bounds; {@link Memory} validates every access before delegating.
+ */
+public interface MemoryStorage {
+
+    /**
+     * Creates a storage backed by a byte array on the Java heap.
+     *
+     * @param size The size of the storage in bytes.
+     * @return The new storage, filled with zeros.
+     */
+    static MemoryStorage heap(final int size) {
+
+        return new HeapStorage(size);
+    }
+
+    /**
+     * Creates a storage backed by native memory outside the Java heap, so large guest RAM does not
+     * grow the heap or the garbage collector's work.
+     *
+     * @param size The size of the storage in bytes.
+     * @return The new storage, filled with zeros.
+     */
+    static MemoryStorage offHeap(final int size) {
+
+        return new BufferStorage(ByteBuffer.allocateDirect(size));
+    }
+
+    /**
+     * Creates a sparse storage whose 4 KiB pages are allocated on first write, so an address space
+     * of up to 2 GiB only costs memory for the pages a program touches.
+     *
+     * @param size The size of the address space in bytes.
+     * @return The new storage, reading as zeros.
+     */
+    static MemoryStorage paged(final int size) {
+
+        return new PagedStorage(size);
+    }
+
+    /**
+     * Creates a storage that maps a file into memory. Existing file contents become the initial
+     * RAM contents, and guest writes go to the file, where other processes can see them while the
+     * emulator runs. The file is created or extended as needed.
+     *
+     * @param file The file backing the storage.
+     * @param size The size of the storage in bytes.
+     * @return The new storage.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static MemoryStorage mapped(final Path file, final int size) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new BufferStorage(channel.map(FileChannel.MapMode.READ_WRITE, 0, size)); // Stays mapped after close
+        }
+    }
+
+    /**
+     * Returns the size of the storage.
+     *
+     * @return The size in bytes.
+     */
+    int size();
+
+    /**
+     * Reads a single byte.
+     *
+     * @param address The address of the byte.
+     * @return The byte at that address.
+     */
+    byte readByte(int address);
+
+    /**
+     * Reads a little-endian halfword.
+     *
+     * @param address The address of the first byte of the halfword.
+     * @return The halfword at that address.
+     */
+    short readHalfword(int address);
+
+    /**
+     * Reads a little-endian word.
+     *
+     * @param address The address of the first byte of the word.
+     * @return The word at that address.
+     */
+    int readWord(int address);
+
+    /**
+     * Writes a single byte.
+     *
+     * @param address The address of the byte.
+     * @param value   The byte to write.
+     */
+    void writeByte(int address, byte value);
+
+    /**
+     * Writes a little-endian halfword.
+     *
+     * @param address The address of the first byte of the halfword.
+     * @param value   The halfword to write.
+     */
+    void writeHalfword(int address, short value);
+
+    /**
+     * Writes a little-endian word.
+     *
+     * @param address The address of the first byte of the word.
+     * @param value   The word to write.
+     */
+    void writeWord(int address, int value);
+
+    /**
+     * Copies a range of the storage into an array.
+     *
+     * @param address     The first address to copy.
+     * @param destination The array to copy to.
+     * @param offset      The first index of the array to fill.
+     * @param length      The number of bytes to copy.
+     */
+    void read(int address, byte[] destination, int offset, int length);
+
+    /**
+     * Copies a range of an array into the storage.
+     *
+     * @param address The first address to fill.
+     * @param source  The array to copy from.
+     * @param offset  The first index of the array to copy.
+     * @param length  The number of bytes to copy.
+     */
+    void write(int address, byte[] source, int offset, int length);
+
+    /**
+     * Returns an independent copy of the storage. Paged storage shares its pages copy-on-write, so
+     * the fork is cheap and both sides only copy the pages they write afterwards; the other
+     * storages copy their contents, mapped files into an anonymous off-heap buffer.
+     *
+     * @return The copy.
+     */
+    MemoryStorage fork();
+
+}
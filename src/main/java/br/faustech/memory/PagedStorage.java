@@ -0,0 +1,190 @@
+package br.faustech.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Sparse storage split into 4 KiB pages that are allocated on the first write. Pages that were
+ * never written read as zeros without being allocated, so a large address space only costs memory
+ * for the code, data and stack pages a program actually touches.
+ *
+ * <p>Forks share every page copy-on-write: a page marked shared is copied by whichever side
+ * writes it first, and only that side's page table is updated.</p>
+ */
+final class PagedStorage implements MemoryStorage {
+
+    static final int PAGE_SHIFT = 12; // 4 KiB pages
+
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle HALFWORD = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[][] pages; // Page table, null entries are untouched pages
+
+    private final boolean[] shared; // Pages that may also be referenced by a fork
+
+    private final int size; // Size of the address space, in bytes
+
+    private int allocatedPages; // Number of pages allocated so far
+
+    PagedStorage(final int size) {
+
+        this.size = size;
+        this.pages = new byte[(int) (((long) size + PAGE_MASK) >>> PAGE_SHIFT)][];
+        this.shared = new boolean[pages.length];
+    }
+
+    private PagedStorage(final PagedStorage parent) {
+
+        this.size = parent.size;
+        this.pages = parent.pages.clone();
+        this.shared = new boolean[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null) {
+                shared[i] = true;
+                parent.shared[i] = true;
+            }
+        }
+        this.allocatedPages = parent.allocatedPages;
+    }
+
+    /**
+     * Returns the number of pages allocated so far, including pages inherited from a fork.
+     *
+     * @return The number of touched pages.
+     */
+    int allocatedPages() {
+
+        return allocatedPages;
+    }
+
+    /**
+     * Returns the page holding an address, allocating it if it was never written and copying it if
+     * it is shared with a fork.
+     *
+     * @param address The address about to be written.
+     * @return The page holding the address, owned by this storage.
+     */
+    private byte[] writablePage(final int address) {
+
+        final int pageIndex = address >>> PAGE_SHIFT;
+        byte[] page = pages[pageIndex];
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            pages[pageIndex] = page;
+            allocatedPages++;
+        } else if (shared[pageIndex]) {
+            page = page.clone();
+            pages[pageIndex] = page;
+            shared[pageIndex] = false;
+        }
+        return page;
+    }
+
+    @Override
+    public int size() {
+
+        return size;
+    }
+
+    @Override
+    public byte readByte(final int address) {
+
+        final byte[] page = pages[address >>> PAGE_SHIFT];
+        return page == null ? 0 : page[address & PAGE_MASK];
+    }
+
+    @Override
+    public short readHalfword(final int address) {
+
+        final int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 2) { // Straddles two pages
+            return (short) ((readByte(address) & 0xFF) | (readByte(address + 1) << 8));
+        }
+        final byte[] page = pages[address >>> PAGE_SHIFT];
+        return page == null ? 0 : (short) HALFWORD.get(page, offset);
+    }
+
+    @Override
+    public int readWord(final int address) {
+
+        final int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 4) { // Straddles two pages
+            return (readHalfword(address) & 0xFFFF) | (readHalfword(address + 2) << 16);
+        }
+        final byte[] page = pages[address >>> PAGE_SHIFT];
+        return page == null ? 0 : (int) WORD.get(page, offset);
+    }
+
+    @Override
+    public void writeByte(final int address, final byte value) {
+
+        writablePage(address)[address & PAGE_MASK] = value;
+    }
+
+    @Override
+    public void writeHalfword(final int address, final short value) {
+
+        final int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 2) { // Straddles two pages
+            writeByte(address, (byte) value);
+            writeByte(address + 1, (byte) (value >> 8));
+            return;
+        }
+        HALFWORD.set(writablePage(address), offset, value);
+    }
+
+    @Override
+    public void writeWord(final int address, final int value) {
+
+        final int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 4) { // Straddles two pages
+            writeHalfword(address, (short) value);
+            writeHalfword(address + 2, (short) (value >> 16));
+            return;
+        }
+        WORD.set(writablePage(address), offset, value);
+    }
+
+    @Override
+    public void read(final int address, final byte[] destination, final int offset, final int length) {
+
+        int done = 0;
+        while (done < length) {
+            final int current = address + done;
+            final int chunk = Math.min(length - done, PAGE_SIZE - (current & PAGE_MASK));
+            final byte[] page = pages[current >>> PAGE_SHIFT];
+            if (page == null) {
+                Arrays.fill(destination, offset + done, offset + done + chunk, (byte) 0);
+            } else {
+                System.arraycopy(page, current & PAGE_MASK, destination, offset + done, chunk);
+            }
+            done += chunk;
+        }
+    }
+
+    @Override
+    public void write(final int address, final byte[] source, final int offset, final int length) {
+
+        int done = 0;
+        while (done < length) {
+            final int current = address + done;
+            final int chunk = Math.min(length - done, PAGE_SIZE - (current & PAGE_MASK));
+            System.arraycopy(source, offset + done, writablePage(current), current & PAGE_MASK, chunk);
+            done += chunk;
+        }
+    }
+
+    @Override
+    public MemoryStorage fork() {
+
+        return new PagedStorage(this);
+    }
+
+}
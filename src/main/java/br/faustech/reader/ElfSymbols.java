@@ -0,0 +1,184 @@
+package br.faustech.reader;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Code symbols read from the symbol table of a 32-bit little-endian ELF file, e.g. the file a
+ * .bin program was extracted from, to name guest addresses in reports. Functions and untyped
+ * labels are kept; data, section and file symbols are not.
+ */
+public final class ElfSymbols {
+
+    private static final int SHT_SYMTAB = 2; // Section type of the symbol table
+
+    private static final int STT_NOTYPE = 0; // Symbol type of plain labels
+
+    private static final int STT_FUNC = 2; // Symbol type of functions
+
+    private static final int SYMBOL_SIZE = 16; // Bytes per ELF32 symbol table entry
+
+    private final TreeMap<Integer, Symbol> symbols; // Symbols by address
+
+    /**
+     * Constructs a symbol table.
+     *
+     * @param symbols The symbols by address.
+     */
+    private ElfSymbols(final TreeMap<Integer, Symbol> symbols) {
+
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns a symbol table without symbols, for programs without an ELF file.
+     *
+     * @return The empty table.
+     */
+    public static ElfSymbols empty() {
+
+        return new ElfSymbols(new TreeMap<>());
+    }
+
+    /**
+     * Reads the symbol table of an ELF file.
+     *
+     * @param file The ELF file.
+     * @return The code symbols, empty if the file has no symbol table.
+     * @throws IOException If the file cannot be read or is not a 32-bit little-endian ELF file.
+     */
+    public static ElfSymbols read(final Path file) throws IOException {
+
+        final ByteBuffer elf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (elf.limit() < 52 || elf.getInt(0) != 0x464C457F || elf.get(4) != 1 || elf.get(5) != 1) {
+            throw new IOException(String.format("%s is not a 32-bit little-endian ELF file.", file.getFileName()));
+        }
+
+        try {
+            final int sectionOffset = elf.getInt(0x20);
+            final int sectionSize = Short.toUnsignedInt(elf.getShort(0x2E));
+            final int sectionCount = Short.toUnsignedInt(elf.getShort(0x30));
+            final TreeMap<Integer, Symbol> symbols = new TreeMap<>();
+
+            for (int i = 0; i < sectionCount; i++) {
+                final int header = sectionOffset + i * sectionSize;
+                if (elf.getInt(header + 4) != SHT_SYMTAB) {
+                    continue;
+                }
+                final int tableOffset = elf.getInt(header + 16);
+                final int tableSize = elf.getInt(header + 20);
+                final int stringHeader = sectionOffset + elf.getInt(header + 24) * sectionSize;
+                final int stringOffset = elf.getInt(stringHeader + 16);
+
+                for (int entry = tableOffset; entry + SYMBOL_SIZE <= tableOffset + tableSize; entry += SYMBOL_SIZE) {
+                    final int type = elf.get(entry + 12) & 0xF;
+                    final int sectionIndex = Short.toUnsignedInt(elf.getShort(entry + 14));
+                    if ((type != STT_FUNC && type != STT_NOTYPE) || sectionIndex == 0) {
+                        continue; // Not code, or undefined
+                    }
+                    final String name = readString(elf, stringOffset + elf.getInt(entry));
+                    if (!name.isEmpty()) {
+                        final Symbol symbol = new Symbol(name, elf.getInt(entry + 4), elf.getInt(entry + 8));
+                        symbols.merge(symbol.address(), symbol, (old, added) -> type == STT_FUNC ? added : old);
+                    }
+                }
+            }
+            return new ElfSymbols(symbols);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException(String.format("%s has a truncated section or symbol table.", file.getFileName()), e);
+        }
+    }
+
+    /**
+     * Reads a NUL-terminated string.
+     *
+     * @param elf    The file contents.
+     * @param offset The offset of the first character.
+     * @return The string.
+     */
+    private static String readString(final ByteBuffer elf, final int offset) {
+
+        int end = offset;
+        while (elf.get(end) != 0) {
+            end++;
+        }
+        final byte[] bytes = new byte[end - offset];
+        elf.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tells whether the table holds no symbols.
+     *
+     * @return true if every address is unnamed.
+     */
+    public boolean isEmpty() {
+
+        return symbols.isEmpty();
+    }
+
+    /**
+     * Returns the name of the symbol covering an address.
+     *
+     * @param address The guest address.
+     * @return The name of the closest symbol at or below the address, or null if none covers it.
+     */
+    public String nameOf(final int address) {
+
+        final Symbol symbol = find(address);
+        return symbol == null ? null : symbol.name();
+    }
+
+    /**
+     * Names an address after the closest symbol at or below it.
+     *
+     * @param address The guest address.
+     * @return The symbol name, followed by {@code +0x} and the offset if the address is not the
+     * symbol itself, or null if no symbol covers the address.
+     */
+    public String describe(final int address) {
+
+        final Symbol symbol = find(address);
+        if (symbol == null) {
+            return null;
+        }
+        final int offset = address - symbol.address();
+        return offset == 0 ? symbol.name() : String.format("%s+0x%x", symbol.name(), offset);
+    }
+
+    /**
+     * Finds the symbol covering an address.
+     *
+     * @param address The guest address.
+     * @return The closest symbol at or below the address, unless the address is past its end.
+     */
+    private Symbol find(final int address) {
+
+        final Map.Entry<Integer, Symbol> entry = symbols.floorEntry(address);
+        if (entry == null) {
+            return null;
+        }
+        final Symbol symbol = entry.getValue();
+        final int offset = address - symbol.address();
+        return symbol.size() != 0 && Integer.compareUnsigned(offset, symbol.size()) >= 0 ? null : symbol;
+    }
+
+    /**
+     * A code symbol.
+     *
+     * @param name    The symbol name.
+     * @param address The address it names.
+     * @param size    The size in bytes, 0 for labels.
+     */
+    private record Symbol(String name, int address, int size) {
+
+    }
+
+}
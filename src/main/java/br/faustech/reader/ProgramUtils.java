@@ -3,9 +3,12 @@ package br.faustech.reader;
 import br.faustech.bus.Bus;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -47,7 +50,10 @@ public class ProgramUtils {
     }
 
     /**
-     * Reads the contents of a binary file (.bin) and converts them into machine instructions.
+     * Reads the contents of a binary file (.bin) and converts them into machine instructions. The
+     * file is a little-endian memory image, so each group of 4 bytes is decoded least significant
+     * byte first; once written back to the little-endian memory, every byte lands at its file
+     * offset. A trailing partial word is padded with zero bytes.
      *
      * @param file The .bin file to read.
      * @return An array of integers representing the machine instructions.
@@ -65,25 +71,11 @@ public class ProgramUtils {
             throw new IllegalArgumentException("File must have .bin extension.");
         }
 
-        long fileSize = file.length();
-        if (fileSize % 4 != 0) {
-            throw new IOException(
-                    "The file size is not a multiple of 4 bytes, so it cannot be read as 32-bit integers.");
-        }
+        byte[] image = Files.readAllBytes(file.toPath());
+        int[] programBin = new int[(image.length + 3) / 4];
 
-        int[] programBin = new int[(int) (fileSize / 4)];
-
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[4]; // Buffer to hold 4 bytes at a time
-            for (int i = 0; i < programBin.length; i++) {
-                if (fis.read(buffer) != 4) {
-                    throw new IOException("Error reading the binary file.");
-                }
-                programBin[i] =
-                        ((buffer[3] & 0xFF) << 24) | ((buffer[2] & 0xFF) << 16) | ((buffer[1] & 0xFF) << 8) | (
-                                buffer[0] & 0xFF);
-            }
-        }
+        ByteBuffer.wrap(Arrays.copyOf(image, programBin.length * 4)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                .get(programBin);
 
         return programBin;
     }
@@ -128,7 +120,8 @@ public class ProgramUtils {
     }
 
     /**
-     * Writes the program instructions into memory starting from address 0.
+     * Writes the program instructions into memory starting from address 0. Memory is little-endian,
+     * like the .bin images, so data sections keep their byte layout.
      *
      * @param programBin The array of integers representing program instructions.
      */
@@ -0,0 +1,245 @@
+package br.faustech.runner;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.cpu.CPU;
+import br.faustech.cpu.ProfileReport;
+import br.faustech.cpu.Profiler;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import br.faustech.memory.MemoryStorage;
+import br.faustech.reader.ElfSymbols;
+import br.faustech.reader.ProgramUtils;
+import lombok.Builder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Runs many programs without a window, each on its own CPU, bus, memory and frame buffer, and
+ * reports how each run ended. Runs execute on virtual threads, at most one per processor at a
+ * time, or on a fixed pool of platform threads.
+ */
+@Builder
+public class BatchRunner {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    private static final int CLOCK_SPEED = 1000; // Milliseconds between timer interrupts
+
+    private static final int TIME_CHECK_INTERVAL = 1 << 16; // Instructions between two reads of the clock
+
+    private static final int PROFILE_BLOCKS = 20; // Hottest blocks listed in a profile report
+
+    @Builder.Default
+    private final long maxInstructions = 1_000_000_000L; // Instruction budget of each run
+
+    @Builder.Default
+    private final long timeLimitMillis = 60_000; // Wall-clock budget of each run
+
+    @Builder.Default
+    private final int threads = 0; // Size of the platform thread pool, 0 runs on virtual threads
+
+    @Builder.Default
+    private final int memorySize = 4194304; // Guest RAM of each run, allocated page by page
+
+    @Builder.Default
+    private final int translationThreshold = CPU.DEFAULT_TRANSLATION_THRESHOLD; // 0 disables block compilation
+
+    @Builder.Default
+    private final Path profileDirectory = null; // Receives a profile report of each run, null disables profiling
+
+    /**
+     * Expands files and directories into the list of programs to run. Directories are searched
+     * recursively for .bin and .txt files.
+     *
+     * @param paths the files and directories given by the user.
+     * @return the programs, directory contents sorted by path.
+     * @throws IOException if a directory cannot be listed.
+     */
+    public static List<Path> collectPrograms(List<String> paths) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        for (String path : paths) {
+            Path file = Paths.get(path);
+            if (Files.isDirectory(file)) {
+                try (Stream<Path> files = Files.walk(file)) {
+                    files.filter(Files::isRegularFile)
+                            .filter(p -> p.toString().endsWith(".bin") || p.toString().endsWith(".txt"))
+                            .sorted()
+                            .forEach(programs::add);
+                }
+            } else {
+                programs.add(file);
+            }
+        }
+        return programs;
+    }
+
+    /**
+     * Runs every program and waits for all of them.
+     *
+     * @param programs the programs to run.
+     * @return one result per program, in the same order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public List<RunResult> run(List<Path> programs) throws InterruptedException {
+        final Semaphore slots = new Semaphore(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        final List<Future<RunResult>> futures = new ArrayList<>();
+        try (ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads)
+                : Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path program : programs) {
+                futures.add(executor.submit(() -> {
+                    slots.acquire(); // Bounds the number of machines alive at once
+                    try {
+                        return runProgram(program);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+
+            List<RunResult> results = new ArrayList<>(programs.size());
+            for (Future<RunResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Runs one program on a fresh machine until it stops by itself or reaches a limit. The
+     * instruction limit is checked between basic blocks, so a run may overshoot it by the length
+     * of its last block. The time limit is checked every {@code TIME_CHECK_INTERVAL} instructions
+     * and whenever the program parked in wfi or an idle loop. Heap allocations are measured on
+     * platform threads only.
+     *
+     * @param program the .bin or .txt program to run.
+     * @return the outcome of the run.
+     */
+    public RunResult runProgram(Path program) {
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        final long deadline = start + timeLimitMillis * 1_000_000L;
+        CPU cpu = null;
+        Profiler profiler = null;
+        ExitCause exitCause = ExitCause.INSTRUCTION_LIMIT;
+        String message = "";
+
+        try {
+            final MachineContext context = new MachineContext(WIDTH, HEIGHT, memorySize, CLOCK_SPEED);
+            context.setHeadless(true);
+            final Bus bus = new Bus(new FrameBuffer(context), new Memory(MemoryStorage.paged(memorySize)));
+            final ProgramUtils programUtils = new ProgramUtils();
+            programUtils.setUtils(bus);
+            programUtils.writeProgramInMemory(programUtils.readFile(program.toFile()));
+
+            cpu = new CPU(context, bus, null);
+            cpu.setTranslationThreshold(translationThreshold);
+            if (profileDirectory != null) {
+                profiler = new Profiler(memorySize);
+                cpu.setProfiler(profiler);
+            }
+
+            long nextTimeCheck = TIME_CHECK_INTERVAL;
+            long idleNanos = 0;
+            while (cpu.getRetiredInstructions() < maxInstructions) {
+                cpu.processNextBlock();
+                if (cpu.getRetiredInstructions() >= nextTimeCheck || cpu.getIdleNanos() != idleNanos) { // Also after every park
+                    nextTimeCheck = cpu.getRetiredInstructions() + TIME_CHECK_INTERVAL;
+                    idleNanos = cpu.getIdleNanos();
+                    if (System.nanoTime() - deadline >= 0) {
+                        exitCause = ExitCause.TIME_LIMIT;
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            exitCause = ExitCause.of(e);
+            message = rootMessage(e);
+        }
+
+        final long wallNanos = System.nanoTime() - start;
+        final long allocatedAfter = allocatedBytes();
+        if (profiler != null) {
+            writeProfile(program, profiler);
+        }
+        return new RunResult(program.getFileName().toString(), exitCause, message,
+                cpu != null ? cpu.getRetiredInstructions() : 0, wallNanos,
+                cpu != null ? cpu.getSkippedTicks() : 0, cpu != null ? cpu.getIdleNanos() : 0,
+                allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore);
+    }
+
+    /**
+     * Returns the bytes the current thread allocated on the heap so far.
+     *
+     * @return the total, or -1 if the JVM cannot measure it for this thread.
+     */
+    private static long allocatedBytes() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Writes the profile of a run to the profile directory: a text report named after the
+     * program with a .profile.txt suffix, and folded stacks for flame graphs with a .folded
+     * suffix. Blocks are named after the symbols of an ELF file next to the program with the same
+     * name and the .elf extension, if there is one.
+     *
+     * @param program  the program that ran.
+     * @param profiler the profiler of the run.
+     * @throws UncheckedIOException if the ELF file or a report cannot be read or written.
+     */
+    private void writeProfile(Path program, Profiler profiler) {
+        final String name = program.getFileName().toString();
+        final String base = name.substring(0, name.lastIndexOf('.') < 0 ? name.length() : name.lastIndexOf('.'));
+        final Path elf = program.resolveSibling(base + ".elf");
+        try {
+            final ElfSymbols symbols = Files.exists(elf) ? ElfSymbols.read(elf) : ElfSymbols.empty();
+            Files.createDirectories(profileDirectory);
+            try (Writer writer = Files.newBufferedWriter(profileDirectory.resolve(name + ".profile.txt"),
+                    StandardCharsets.UTF_8)) {
+                ProfileReport.writeText(profiler, symbols, PROFILE_BLOCKS, writer);
+            }
+            try (Writer writer = Files.newBufferedWriter(profileDirectory.resolve(name + ".folded"),
+                    StandardCharsets.UTF_8)) {
+                ProfileReport.writeFolded(profiler, symbols, writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the message of the innermost cause of an exception.
+     *
+     * @param failure the exception.
+     * @return the innermost message, or the exception class name if it has none.
+     */
+    private static String rootMessage(Throwable failure) {
+        Throwable root = failure;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,104 @@
+package br.faustech.runner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the results of a batch run as CSV or JSON.
+ */
+public final class BatchSummary {
+
+    private BatchSummary() {
+    }
+
+    /**
+     * Writes one CSV line per run, after a header line.
+     *
+     * @param results the results to write.
+     * @param writer  the destination.
+     * @throws IOException if writing fails.
+     */
+    public static void writeCsv(List<RunResult> results, Writer writer) throws IOException {
+        writer.write("program,exit_cause,instructions,wall_ms,mips,skipped_ticks,idle_ms,allocated_bytes,alloc_mb_s,"
+                + "message\n");
+        for (RunResult result : results) {
+            writer.write(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%d,%.3f,%d,%.3f,%s%n",
+                    quote(result.program()), result.exitCause(), result.instructions(), result.wallMillis(),
+                    result.mips(), result.skippedTicks(), result.idleMillis(), result.allocatedBytes(),
+                    result.allocationRate(), quote(result.message())));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the runs as a JSON array of objects.
+     *
+     * @param results the results to write.
+     * @param writer  the destination.
+     * @throws IOException if writing fails.
+     */
+    public static void writeJson(List<RunResult> results, Writer writer) throws IOException {
+        JSONArray runs = new JSONArray();
+        for (RunResult result : results) {
+            JSONObject run = new JSONObject();
+            run.put("program", result.program());
+            run.put("exitCause", result.exitCause().name());
+            run.put("instructions", result.instructions());
+            run.put("wallMs", result.wallMillis());
+            run.put("mips", result.mips());
+            run.put("skippedTicks", result.skippedTicks());
+            run.put("idleMs", result.idleMillis());
+            run.put("allocatedBytes", result.allocatedBytes());
+            run.put("allocMbPerSecond", result.allocationRate());
+            run.put("message", result.message());
+            runs.put(run);
+        }
+        writer.write(runs.toString(4)); // Pretty print with indent
+        writer.write(System.lineSeparator());
+        writer.flush();
+    }
+
+    /**
+     * Writes the runs as an aligned table for reading in a terminal, followed by the totals: the
+     * instructions and wall time of all runs and the MIPS over their sum. Unmeasured allocation
+     * rates are shown as "-".
+     *
+     * @param results the results to write.
+     * @param writer  the destination.
+     * @throws IOException if writing fails.
+     */
+    public static void writeTable(List<RunResult> results, Writer writer) throws IOException {
+        writer.write(String.format(Locale.ROOT, "%-20s %-17s %14s %10s %9s %11s%n", "program", "exit", "instructions",
+                "wall ms", "MIPS", "alloc MB/s"));
+        long instructions = 0;
+        long wallNanos = 0;
+        for (RunResult result : results) {
+            writer.write(String.format(Locale.ROOT, "%-20s %-17s %14d %10.1f %9.2f %11s%n", result.program(),
+                    result.exitCause(), result.instructions(), result.wallMillis(), result.mips(),
+                    result.allocatedBytes() < 0 ? "-" : String.format(Locale.ROOT, "%.2f", result.allocationRate())));
+            instructions += result.instructions();
+            wallNanos += result.wallNanos();
+        }
+        writer.write(String.format(Locale.ROOT, "%-20s %-17s %14d %10.1f %9.2f%n", "total", "", instructions,
+                wallNanos / 1_000_000.0, wallNanos == 0 ? 0 : instructions * 1000.0 / wallNanos));
+        writer.flush();
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, a quote or a line break.
+     *
+     * @param field the field value.
+     * @return the value, quoted and with quotes doubled if needed.
+     */
+    private static String quote(String field) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+            return '"' + field.replace("\"", "\"\"") + '"';
+        }
+        return field;
+    }
+}
@@ -0,0 +1,33 @@
+package br.faustech.runner;
+
+import br.faustech.cpu.EbreakException;
+import br.faustech.cpu.EcallException;
+
+/**
+ * Why a headless run stopped.
+ */
+public enum ExitCause {
+    EBREAK,             // The program executed ebreak
+    ECALL,              // The program executed ecall
+    INSTRUCTION_LIMIT,  // The run reached its instruction budget
+    TIME_LIMIT,         // The run reached its wall-clock budget
+    FAULT;              // Execution failed: bad memory access, unknown instruction, unreadable program...
+
+    /**
+     * Classifies the exception that stopped a CPU by looking for ebreak or ecall in its causes.
+     *
+     * @param failure the exception thrown by the CPU.
+     * @return EBREAK or ECALL if the program terminated itself, FAULT otherwise.
+     */
+    static ExitCause of(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof EbreakException) {
+                return EBREAK;
+            }
+            if (cause instanceof EcallException) {
+                return ECALL;
+            }
+        }
+        return FAULT;
+    }
+}
@@ -0,0 +1,58 @@
+package br.faustech.runner;
+
+/**
+ * Outcome of one headless run.
+ *
+ * @param program        the program file name.
+ * @param exitCause      why the run stopped.
+ * @param message        the failure message, empty unless the run stopped on an exception.
+ * @param instructions   the number of instructions executed.
+ * @param wallNanos      the wall-clock time of the run, in nanoseconds.
+ * @param skippedTicks   the timer ticks skipped instead of spinning in wfi or an idle loop.
+ * @param idleNanos      the wall-clock time spent parked in wfi or an idle loop, in nanoseconds.
+ * @param allocatedBytes the bytes allocated on the heap by the run, including setting up the machine,
+ *                       or -1 if the JVM cannot measure it for the thread, e.g. a virtual thread.
+ */
+public record RunResult(String program, ExitCause exitCause, String message, long instructions, long wallNanos,
+                        long skippedTicks, long idleNanos, long allocatedBytes) {
+
+    /**
+     * Returns the execution speed of the run.
+     *
+     * @return millions of instructions per second, 0 if the run took no measurable time.
+     */
+    public double mips() {
+        return wallNanos == 0 ? 0 : instructions * 1000.0 / wallNanos;
+    }
+
+    /**
+     * Returns the wall-clock time of the run.
+     *
+     * @return the time in milliseconds.
+     */
+    public double wallMillis() {
+        return wallNanos / 1_000_000.0;
+    }
+
+    /**
+     * Returns the time the run spent parked instead of spinning.
+     *
+     * @return the time in milliseconds.
+     */
+    public double idleMillis() {
+        return idleNanos / 1_000_000.0;
+    }
+
+    /**
+     * Returns how fast the run allocated heap memory.
+     *
+     * @return megabytes allocated per second, -1 if the allocations were not measured, 0 if the
+     * run took no measurable time.
+     */
+    public double allocationRate() {
+        if (allocatedBytes < 0) {
+            return -1;
+        }
+        return wallNanos == 0 ? 0 : allocatedBytes * 1000.0 / wallNanos;
+    }
+}
@@ -0,0 +1,154 @@
+package br.faustech.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Preallocated ring of fixed-size binary records of executed instructions. Recording a record
+ * writes four words into native memory and allocates nothing, so a CPU can trace every instruction
+ * of long runs. Each record holds, as little-endian words, the program counter, the raw
+ * instruction, the value of the destination register after the instruction, and the effective
+ * address of loads and stores (0 for other instructions).
+ *
+ * <p>Without a sink, the ring keeps the most recent records, which {@link #dump} writes out, e.g.
+ * after a failure. With a sink, the whole ring is written to it every time it fills up, so the
+ * sink receives every record; {@link #flush} writes the records recorded since the last write.
+ * Written records can be decoded offline with {@link TraceReader}.</p>
+ */
+public final class TraceBuffer {
+
+    public static final int RECORD_SIZE = 16; // Bytes per record
+
+    public static final int DEFAULT_CAPACITY = 1 << 16; // Records per ring, 1 MiB
+
+    private final ByteBuffer records; // The ring, RECORD_SIZE bytes per record
+
+    private final int mask; // Capacity minus one
+
+    private final WritableByteChannel sink; // Receives every record, null to keep only the last ones
+
+    private long recorded; // Records recorded so far
+
+    private long written; // Records already written to the sink
+
+    /**
+     * Creates a ring that keeps the most recent records in memory.
+     *
+     * @param capacity The number of records kept, a power of two.
+     */
+    public TraceBuffer(final int capacity) {
+
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a ring that streams every record to a sink, one full ring at a time.
+     *
+     * @param capacity The number of records per write to the sink, a power of two.
+     * @param sink     The channel receiving the records, or null to keep only the last ones.
+     */
+    public TraceBuffer(final int capacity, final WritableByteChannel sink) {
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.mask = capacity - 1;
+        this.sink = sink;
+    }
+
+    /**
+     * Records an executed instruction.
+     *
+     * @param pc          The address of the instruction.
+     * @param instruction The raw instruction word.
+     * @param rdValue     The value of the destination register after the instruction, 0 if it has none.
+     * @param address     The effective address of a load or store, 0 for other instructions.
+     */
+    public void record(final int pc, final int instruction, final int rdValue, final int address) {
+
+        final int offset = (int) (recorded & mask) * RECORD_SIZE;
+        records.putInt(offset, pc);
+        records.putInt(offset + 4, instruction);
+        records.putInt(offset + 8, rdValue);
+        records.putInt(offset + 12, address);
+        if ((++recorded & mask) == 0 && sink != null) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the number of records recorded so far, including those the ring no longer holds.
+     *
+     * @return The number of records.
+     */
+    public long getRecorded() {
+
+        return recorded;
+    }
+
+    /**
+     * Returns the number of records the ring holds.
+     *
+     * @return The number of records {@link #dump} writes.
+     */
+    public int size() {
+
+        return (int) Math.min(recorded, mask + 1L);
+    }
+
+    /**
+     * Writes the records recorded since the last write to the sink. Does nothing without a sink.
+     *
+     * @throws UncheckedIOException If the sink fails.
+     */
+    public void flush() {
+
+        if (sink == null || written == recorded) {
+            return;
+        }
+        final int from = (int) (written & mask) * RECORD_SIZE;
+        final int to = (recorded & mask) == 0 ? records.capacity() : (int) (recorded & mask) * RECORD_SIZE;
+        try {
+            write(sink, from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written = recorded;
+    }
+
+    /**
+     * Writes the records the ring holds, oldest first.
+     *
+     * @param out The channel to write to.
+     * @throws IOException If writing fails.
+     */
+    public void dump(final WritableByteChannel out) throws IOException {
+
+        final int head = (int) (recorded & mask) * RECORD_SIZE; // Oldest record once the ring wrapped
+        if (recorded > mask) {
+            write(out, head, records.capacity());
+        }
+        write(out, 0, head);
+    }
+
+    /**
+     * Writes a range of the ring.
+     *
+     * @param out  The channel to write to.
+     * @param from The offset of the first byte.
+     * @param to   The offset just past the last byte.
+     * @throws IOException If writing fails.
+     */
+    private void write(final WritableByteChannel out, final int from, final int to) throws IOException {
+
+        final ByteBuffer range = records.slice(from, to - from);
+        while (range.hasRemaining()) {
+            out.write(range);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package br.faustech.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the binary records written by a {@link TraceBuffer}, from a trace file or as they are
+ * streamed.
+ */
+public final class TraceReader {
+
+    private static final int CHUNK_RECORDS = 4096; // Records read from a file at a time
+
+    private TraceReader() {
+    }
+
+    /**
+     * Reads every record of a trace.
+     *
+     * @param in     the channel holding the records, e.g. a trace file.
+     * @param action called with each record, in order.
+     * @return the number of records read.
+     * @throws IOException if reading fails or the trace ends in the middle of a record.
+     */
+    public static long forEach(ReadableByteChannel in, Consumer<TraceRecord> action) throws IOException {
+        final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_RECORDS * TraceBuffer.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long count = 0;
+        while (in.read(chunk) >= 0) {
+            chunk.flip();
+            count += decode(chunk, action);
+            chunk.compact();
+        }
+        if (chunk.position() != 0) {
+            throw new IOException("Trace ends in the middle of a record");
+        }
+        return count;
+    }
+
+    /**
+     * Returns a channel that decodes the records written to it, so a {@link TraceBuffer} can
+     * stream to a consumer instead of a file.
+     *
+     * @param action called with each record, in order.
+     * @return the decoding channel; every write must hold whole records.
+     */
+    public static WritableByteChannel decoding(Consumer<TraceRecord> action) {
+        return new WritableByteChannel() {
+
+            private boolean open = true;
+
+            @Override
+            public int write(ByteBuffer src) {
+                final int length = src.remaining();
+                decode(src.duplicate().order(ByteOrder.LITTLE_ENDIAN), action);
+                src.position(src.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+    }
+
+    /**
+     * Decodes the whole records left in a buffer.
+     *
+     * @param records the little-endian records; its position ends after the last whole record.
+     * @param action  called with each record, in order.
+     * @return the number of records decoded.
+     */
+    private static int decode(ByteBuffer records, Consumer<TraceRecord> action) {
+        int count = 0;
+        while (records.remaining() >= TraceBuffer.RECORD_SIZE) {
+            action.accept(new TraceRecord(records.getInt(), records.getInt(), records.getInt(), records.getInt()));
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,26 @@
+package br.faustech.trace;
+
+import br.faustech.cpu.Decoder;
+
+import java.util.Locale;
+
+/**
+ * One executed instruction, as read back from a trace.
+ *
+ * @param pc          the address of the instruction.
+ * @param instruction the raw instruction word.
+ * @param rdValue     the value of the destination register after the instruction, 0 if it has none.
+ * @param address     the effective address of a load or store, 0 for other instructions.
+ */
+public record TraceRecord(int pc, int instruction, int rdValue, int address) {
+
+    /**
+     * Formats the record as one line of text, with the instruction disassembled.
+     *
+     * @return e.g. {@code "00000040: 00128293 addi rd=5, rs1=5, imm=1 -> rd=0x00000001 address=0x00000000"}.
+     */
+    public String format() {
+        return String.format(Locale.ROOT, "%08x: %08x %s -> rd=0x%08x address=0x%08x", pc, instruction,
+                Decoder.decodeInstruction(instruction), rdValue, address);
+    }
+}
@@ -0,0 +1,93 @@
+package br.faustech.bus;
+
+import br.faustech.comum.MachineContext;
+import br.faustech.device.Clint;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import br.faustech.memory.MemoryException;
+import br.faustech.memory.MemoryStorage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BusTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    private static final int DEVICE_BASE = 1 << 20;
+
+    /**
+     * A device with a single register that counts the writes it receives.
+     */
+    private static final class CounterDevice implements BusDevice {
+
+        int writes;
+
+        int value;
+
+        @Override
+        public int readWord(final int offset) {
+            return offset == 0 ? value : writes;
+        }
+
+        @Override
+        public void writeWord(final int offset, final int value) {
+            this.value = value;
+            writes++;
+        }
+
+        @Override
+        public BusDevice fork() {
+            CounterDevice fork = new CounterDevice();
+            fork.value = value;
+            fork.writes = writes;
+            return fork;
+        }
+    }
+
+    @Test
+    public void deviceMappingTest() {
+
+        final Bus bus = new Bus(new FrameBuffer(new MachineContext(320, 240, MEMORY_SIZE, 1000)), new Memory(MEMORY_SIZE));
+        final CounterDevice device = new CounterDevice();
+        bus.map(DEVICE_BASE, 8, device);
+
+        bus.writeWord(16, 42);
+        bus.writeWord(DEVICE_BASE, 7);
+        bus.writeByte(DEVICE_BASE, 0x1FF); // Sub-word writes reach the device zero-extended
+        assertEquals(42, bus.readWord(16));
+        assertEquals(0xFF, bus.readWord(DEVICE_BASE));
+        assertEquals(2, bus.readWord(DEVICE_BASE + 4));
+
+        final Bus fork = bus.fork();
+        fork.writeWord(DEVICE_BASE, 1);
+        assertEquals(0xFF, bus.readWord(DEVICE_BASE));
+        assertEquals(1, fork.readWord(DEVICE_BASE));
+
+        assertThrows(MemoryException.class, () -> bus.readWord(DEVICE_BASE + 8));
+        assertThrows(MemoryException.class, () -> bus.readWord(-4));
+        assertThrows(IllegalArgumentException.class, () -> bus.map(DEVICE_BASE, 4, new CounterDevice()));
+        assertThrows(IllegalArgumentException.class, () -> bus.map(DEVICE_BASE + 4096 + 4, 4, new CounterDevice()));
+    }
+
+    @Test
+    public void gibibyteAddressSpaceTest() {
+
+        final int size = 1 << 30;
+        final MachineContext context = new MachineContext(320, 240, size, 1000);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MemoryStorage.paged(size)));
+        bus.writeWord(size - 4, 42);
+        assertEquals(42, bus.readWord(size - 4));
+        bus.writeWord(size + FrameBuffer.SWAP_REGISTER_SIZE, 0x123456); // First pixel
+        assertTrue(bus.getClintBase() > size);
+        assertEquals(0, bus.readWord(bus.getClintBase() + Clint.MTIME + 4));
+
+        assertThrows(IllegalArgumentException.class, () -> new Bus(new FrameBuffer(context),
+                new Memory(MemoryStorage.paged(Integer.MAX_VALUE))));
+        assertThrows(IllegalArgumentException.class, () -> new Bus(new FrameBuffer(context),
+                new Memory(MemoryStorage.paged(Integer.MAX_VALUE - 4095))));
+    }
+
+}
@@ -0,0 +1,54 @@
+package br.faustech.comum;
+
+import br.faustech.bus.Bus;
+import br.faustech.cpu.CPU;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import br.faustech.memory.MemoryException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MachineContextTest {
+
+    private static CPU machine(MachineContext context) {
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(context.getMemorySize()));
+        return new CPU(context, bus, null);
+    }
+
+    @Test
+    public void machinesKeepTheirOwnSizesTest() {
+
+        final MachineContext small = new MachineContext(160, 120, 8192, 1000);
+        final MachineContext large = new MachineContext(320, 240, 65536, 1000);
+        final CPU first = machine(small);
+        final CPU second = machine(large);
+
+        // Creating the second machine must not resize the first one
+        assertEquals(8192 - 4, first.snapshot().getRegister(2));
+        assertEquals(65536 - 4, second.snapshot().getRegister(2));
+        // The frame buffer follows the memory of its own machine and holds only its own screen
+        final int end = 8192 + FrameBuffer.SWAP_REGISTER_SIZE + new FrameBuffer(small).getBufferSize();
+        assertEquals(0, first.snapshot().readWord(end - 4));
+        assertThrows(MemoryException.class, () -> first.snapshot().readWord(end));
+    }
+
+    @Test
+    public void keyPressesStayWithTheirMachineTest() {
+
+        final MachineContext first = new MachineContext(320, 240, 8192, 1000);
+        final MachineContext second = new MachineContext(320, 240, 8192, 1000);
+        assertFalse(first.keyPressed(65)); // No CPU attached yet
+
+        final CPU firstCpu = machine(first);
+        final CPU secondCpu = machine(second);
+        assertTrue(first.keyPressed(65));
+
+        assertEquals(65, firstCpu.getKeyboard().poll());
+        assertEquals(0, secondCpu.getKeyboard().poll());
+    }
+
+}
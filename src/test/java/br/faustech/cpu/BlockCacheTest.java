@@ -0,0 +1,63 @@
+package br.faustech.cpu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BlockCacheTest {
+
+    private static final int MEMORY_SIZE = 16384;
+
+    private static BasicBlock block(int startAddress, int length) {
+
+        DecodedInstruction[] instructions = new DecodedInstruction[length];
+        for (int i = 0; i < length; i++) {
+            instructions[i] = Decoder.decode(0b00000000000000000000000000010011); // nop
+        }
+        return new BasicBlock(startAddress, instructions);
+    }
+
+    @Test
+    public void blockCacheTest() {
+
+        BlockCache cache = new BlockCache(MEMORY_SIZE);
+        BasicBlock first = block(0, 4);
+        BasicBlock second = block(4096, 2);
+        cache.insert(first);
+        cache.insert(second);
+
+        assertSame(first, cache.lookup(0));
+        assertSame(second, cache.lookup(4096));
+        assertNull(cache.lookup(4));
+
+        // A store to data right after the block keeps the page
+        cache.onWrite(16, 4);
+        assertTrue(first.valid);
+        assertSame(first, cache.lookup(0));
+
+        // A store overlapping the last instruction of the block drops the whole page
+        cache.onWrite(10, 4);
+        assertFalse(first.valid);
+        assertNull(cache.lookup(0));
+
+        // Other pages are untouched
+        assertTrue(second.valid);
+        assertSame(second, cache.lookup(4096));
+
+        // A store spanning a page boundary reaches the next page
+        cache.onWrite(4094, 4);
+        assertFalse(second.valid);
+        assertNull(cache.lookup(4096));
+
+        // A program load longer than a word reaches the code it covers
+        BasicBlock third = block(8200, 2);
+        cache.insert(third);
+        cache.onWrite(8192, 64);
+        assertFalse(third.valid);
+        assertNull(cache.lookup(8200));
+    }
+
+}
@@ -0,0 +1,111 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BlockCompilerTest {
+
+    private static final int MEMORY_SIZE = 16384;
+
+    private static final int RESULT_ADDRESS = 80 + 0x2000; // auipc x17, 2 at address 80
+
+    private static int rType(int funct7, int rs2, int rs1, int funct3, int rd) {
+        return (funct7 << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | 0x33;
+    }
+
+    private static int iType(int opcode, int imm, int rs1, int funct3, int rd) {
+        return (imm << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | opcode;
+    }
+
+    private static int sType(int imm, int rs2, int rs1, int funct3) {
+        return ((imm >> 5) << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | ((imm & 0x1F) << 7) | 0x23;
+    }
+
+    private static int bType(int imm, int rs2, int rs1, int funct3) {
+        return (((imm >> 12) & 1) << 31) | (((imm >> 5) & 0x3F) << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12)
+                | (((imm >> 1) & 0xF) << 8) | (((imm >> 11) & 1) << 7) | 0x63;
+    }
+
+    private static int jType(int imm, int rd) {
+        return (((imm >> 20) & 1) << 31) | (((imm >> 1) & 0x3FF) << 21) | (((imm >> 11) & 1) << 20)
+                | (((imm >> 12) & 0xFF) << 12) | (rd << 7) | 0x6F;
+    }
+
+    /**
+     * A loop using every translated operation, followed by stores of all results and an ebreak.
+     */
+    private static int[] program() {
+        return new int[]{
+                iType(0x13, 100, 0, 0b000, 1),          //  0: addi x1, x0, 100
+                iType(0x13, 0, 0, 0b000, 2),            //  4: addi x2, x0, 0
+                (0x1 << 12) | (3 << 7) | 0x37,          //  8: lui  x3, 1
+                rType(0, 1, 2, 0b000, 2),               // 12: add  x2, x2, x1
+                iType(0x13, 0x55, 2, 0b100, 4),         // 16: xori x4, x2, 0x55
+                iType(0x13, 3, 4, 0b001, 5),            // 20: slli x5, x4, 3
+                iType(0x13, 0x400 | 2, 5, 0b101, 6),    // 24: srai x6, x5, 2
+                rType(0x20, 1, 6, 0b000, 7),            // 28: sub  x7, x6, x1
+                rType(0, 2, 7, 0b010, 8),               // 32: slt  x8, x7, x2
+                rType(0, 7, 2, 0b011, 9),               // 36: sltu x9, x2, x7
+                sType(0, 7, 3, 0b010),                  // 40: sw   x7, 0(x3)
+                iType(0x03, 1, 3, 0b000, 10),           // 44: lb   x10, 1(x3)
+                iType(0x03, 2, 3, 0b101, 11),           // 48: lhu  x11, 2(x3)
+                rType(0, 11, 10, 0b110, 12),            // 52: or   x12, x10, x11
+                rType(0, 2, 12, 0b111, 13),             // 56: and  x13, x12, x2
+                iType(0x13, 7, 13, 0b011, 14),          // 60: sltiu x14, x13, 7
+                jType(64, 15),                          // 64: jal  x15, 128
+                iType(0x13, 4, 3, 0b000, 3),            // 68: addi x3, x3, 4
+                iType(0x13, -1 & 0xFFF, 1, 0b000, 1),   // 72: addi x1, x1, -1
+                bType(-64, 0, 1, 0b001),                // 76: bne  x1, x0, 12
+                (0x2 << 12) | (17 << 7) | 0x17,         // 80: auipc x17, 2
+                sType(0, 2, 17, 0b010),                 // 84: sw   x2, 0(x17)
+                sType(4, 8, 17, 0b010),                 // 88: sw   x8, 4(x17)
+                sType(8, 9, 17, 0b010),                 // 92: sw   x9, 8(x17)
+                sType(12, 14, 17, 0b001),               // 96: sh   x14, 12(x17)
+                sType(14, 16, 17, 0b000),               // 100: sb  x16, 14(x17)
+                sType(16, 3, 17, 0b010),                // 104: sw  x3, 16(x17)
+                0b00000000000100000000000001110011,     // 108: ebreak
+                0, 0, 0, 0,                             // 112..124: padding
+                iType(0x13, 3, 16, 0b000, 16),          // 128: addi x16, x16, 3
+                iType(0x67, 0, 15, 0b000, 0),           // 132: jalr x0, 0(x15)
+        };
+    }
+
+    private static Memory run(int translationThreshold) {
+
+        final MachineContext context = new MachineContext(320, 240, MEMORY_SIZE, 1000);
+        final Memory memory = new Memory(MEMORY_SIZE);
+        final Bus bus = new Bus(new FrameBuffer(context), memory);
+        bus.write(0, program());
+
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setTranslationThreshold(translationThreshold);
+        assertThrows(RuntimeException.class, () -> {
+            while (true) {
+                cpu.processNextBlock();
+            }
+        });
+        return memory;
+    }
+
+    @Test
+    public void translatedBlocksMatchInterpreterTest() {
+
+        final Memory interpreted = run(0);
+        final Memory translated = run(1);
+
+        assertArrayEquals(interpreted.read(0, MEMORY_SIZE), translated.read(0, MEMORY_SIZE));
+        // x2 holds the sum 100 + 99 + ... + 1
+        assertEquals(5050, translated.readWord(RESULT_ADDRESS));
+        // x16 is 100 * 3, stored by sb right after the sh without clobbering it
+        assertEquals((byte) 300, translated.readByte(RESULT_ADDRESS + 14));
+        assertEquals(0, translated.readByte(RESULT_ADDRESS + 15));
+    }
+
+}
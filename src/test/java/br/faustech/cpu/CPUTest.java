@@ -1,6 +1,7 @@
 package br.faustech.cpu;
 
 import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
 import br.faustech.gpu.GPU;
 import br.faustech.memory.FrameBuffer;
 import br.faustech.memory.Memory;
@@ -13,7 +14,6 @@ public class CPUTest {
 
     private static final int WIDTH = 320;
     private static final int HEIGHT = 240;
-    private static final int FRAME_BUFFER_SIZE = WIDTH * HEIGHT * 4;
     private static final int MEMORY_SIZE = 4096;
 
     @Test
@@ -22,10 +22,11 @@ public class CPUTest {
         try {
             // Defining instructions in memory
             int[] instructions = {0b11111110000000010000000100010011, 0b00000000000100010010111000100011, 0b00000000100000010010110000100011, 0b00000010000000010000010000010011, 0b11111111001101001001011110110111, 0b00000000000001111000011110010011, 0b01001011111001111000011110010011, 0b11111110111101000010000000100011, 0b00000000000000000001011110110111, 0b00000000000001111000011110010011, 0b00000000010001111000011110010011, 0b11111110111101000010010000100011, 0b00000000000000000001011110110111, 0b00000000000001111000011110010011, 0b11111110111101000010001000100011, 0b11111110000001000010011000100011, 0b00000010100000000000000001101111, 0b11111110110001000010011110000011, 0b00000000001001111001011110010011, 0b11111110100001000010011100000011, 0b00000000111101110000011110110011, 0b11111110000001000010011100000011, 0b00000000111001111010000000100011, 0b11111110110001000010011110000011, 0b00000000000101111000011110010011, 0b11111110111101000010011000100011, 0b11111110110001000010011100000011, 0b00000000000000010011011110110111, 0b00000000000001111000011110010011, 0b10111111111101111000011110010011, 0b11111100111001111101011011100011, 0b11111110010001000010011110000011, 0b00000000000100000000011100010011, 0b00000000111001111010000000100011, 0b00000000000000000000011110010011, 0b00000000111100000000010100110011, 0b00000001110000010010000010000011, 0b00000001100000010010010000000011, 0b00000010000000010000000100010011, 0b00000000000000001000000001100111,};
+            final MachineContext context = new MachineContext(WIDTH, HEIGHT, MEMORY_SIZE, 1000);
             final Memory memory = new Memory(MEMORY_SIZE);
-            final FrameBuffer frameBuffer = new FrameBuffer(FRAME_BUFFER_SIZE);
+            final FrameBuffer frameBuffer = new FrameBuffer(context);
             final Bus bus = new Bus(frameBuffer, memory);
-            final GPU gpu = new GPU(WIDTH, HEIGHT, frameBuffer, "CPU Test");
+            final GPU gpu = new GPU(context, frameBuffer, "CPU Test");
             gpu.start();
 
             int position = 0;
@@ -38,7 +39,7 @@ public class CPUTest {
 
             System.out.printf("Memory before execution: %s%n", Arrays.toString(memory.read(32, 64)));
 
-            CPU cpu = new CPU(bus, null);
+            CPU cpu = new CPU(context, bus, null);
             cpu.start();
 
             while (gpu.isAlive()) {
@@ -2,6 +2,7 @@ package br.faustech.cpu;
 
 import org.junit.jupiter.api.Test;
 
+import static br.faustech.cpu.Decoder.decode;
 import static br.faustech.cpu.Decoder.decodeInstruction;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -243,6 +244,12 @@ public class DecoderTest {
         // Verify the result
         assertEquals("ebreak", type);
 
+        // Set instruction WFI
+        instruction = 0b00010000010100000000000001110011;
+        type = decodeInstruction(instruction);
+        // Verify the result
+        assertEquals("wfi", type);
+
         // Set instruction CSRRW
         instruction = 0b00000000000000011001001011110011;
         type = decodeInstruction(instruction);
@@ -280,4 +287,60 @@ public class DecoderTest {
         assertEquals("csrrci rd=5, csr=0, zimm=3", type);
     }
 
+    @Test
+    public void decodeTest() {
+        //Set instruction ADDI with a negative immediate (addi x2, x2, -32)
+        DecodedInstruction decoded = decode(0b11111110000000010000000100010011);
+        // Verify the result
+        assertEquals(new DecodedInstruction(Opcode.ADDI, 2, 2, 0, -32, 0b11111110000000010000000100010011), decoded);
+
+        //Set instruction SW with a negative immediate (sw x15, -32(x8))
+        decoded = decode(0b11111110111101000010000000100011);
+        // Verify the result
+        assertEquals(Opcode.SW, decoded.opcode());
+        assertEquals(8, decoded.rs1());
+        assertEquals(15, decoded.rs2());
+        assertEquals(-32, decoded.imm());
+
+        //Set instruction BGE with a backward offset (bge x15, x14, -52)
+        decoded = decode(0b11111100111001111101011011100011);
+        // Verify the result
+        assertEquals(Opcode.BGE, decoded.opcode());
+        assertEquals(-52, decoded.imm());
+
+        //Set instruction BEQ with a forward offset above 2 KiB (beq x3, x0, 2052)
+        decoded = decode(0b00000000000000011000001011100011);
+        // Verify the result
+        assertEquals(2052, decoded.imm());
+
+        //Set instruction JAL with a backward offset (jal x0, -8)
+        decoded = decode(0b11111111100111111111000001101111);
+        // Verify the result
+        assertEquals(Opcode.JAL, decoded.opcode());
+        assertEquals(-8, decoded.imm());
+
+        //Set instruction LUI (lui x15, 0xFF349)
+        decoded = decode(0b11111111001101001001011110110111);
+        // Verify the result
+        assertEquals(Opcode.LUI, decoded.opcode());
+        assertEquals(0xFF349000, decoded.imm());
+
+        //Set instruction SRAI (srai x5, x3, 3)
+        decoded = decode(0b01000000001100011101001010010011);
+        // Verify the result
+        assertEquals(Opcode.SRAI, decoded.opcode());
+        assertEquals(3, decoded.imm());
+
+        //Set instruction CSRRS reading the upper half of a counter (csrrs x5, 0xC80, x0)
+        decoded = decode(0b11001000000000000010001011110011);
+        // Verify the result
+        assertEquals(Opcode.CSRRS, decoded.opcode());
+        assertEquals(0xC80, decoded.imm());
+
+        //Set an instruction with an unsupported opcode
+        decoded = decode(0b00000000000000000000000000001111);
+        // Verify the result
+        assertEquals(Opcode.UNKNOWN, decoded.opcode());
+    }
+
 }
@@ -0,0 +1,183 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.device.Clint;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdleLoopTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    private static final int LW_X6 = 0x10002303; // lw x6, 256(x0)
+
+    private static final int BEQ_X6_BACK = 0xFE030EE3; // beq x6, x0, -4
+
+    /**
+     * Points mtvec at the handler after the loop, enables the timer interrupt and jumps to itself;
+     * the handler counts interrupts in x5.
+     */
+    private static final int[] SPIN_PROGRAM = {
+            0x01000093,                                         //  0: addi x1, x0, 16
+            (0x305 << 20) | (1 << 15) | (0b001 << 12) | 0x73,   //  4: csrrw x0, mtvec, x1
+            (0x304 << 20) | (1 << 15) | (0b101 << 12) | 0x73,   //  8: csrrwi x0, mie, 1
+            0x0000006F,                                         // 12: jal x0, 0
+            0x00128293,                                         // 16: addi x5, x5, 1
+            0x30200073,                                         // 20: mret
+    };
+
+    private static MachineContext context() {
+        final MachineContext context = new MachineContext(32, 32, MEMORY_SIZE, 1);
+        context.setTimerFrequency(100); // One timer period every 100 instructions, or every millisecond
+        return context;
+    }
+
+    private static BasicBlock block(int... program) {
+        final DecodedInstruction[] instructions = new DecodedInstruction[program.length];
+        for (int i = 0; i < program.length; i++) {
+            instructions[i] = Decoder.decode(program[i]);
+        }
+        return new BasicBlock(0, instructions);
+    }
+
+    private static long instructionsForTenInterrupts(boolean idleLoopSkipping) {
+        final MachineContext context = context();
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        bus.write(0, SPIN_PROGRAM);
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setIdleLoopSkipping(idleLoopSkipping);
+
+        long executed = 0;
+        while (cpu.snapshot().getRegister(5) < 10) {
+            executed += cpu.processNextBlock();
+        }
+        assertEquals(idleLoopSkipping, cpu.getIdleLoops() >= 10);
+        assertEquals(idleLoopSkipping, cpu.getSkippedTicks() > 900);
+        return executed;
+    }
+
+    @Test
+    public void loopsToTheBlockStartWithoutSideEffectsAreCandidatesTest() {
+
+        assertArrayEquals(new int[0], block(0x0000006F).loopWrites);                   // jal x0, 0
+        assertArrayEquals(new int[]{6}, block(LW_X6, BEQ_X6_BACK).loopWrites);
+        assertArrayEquals(new int[]{6}, block(0xFFF30313, 0xFE031EE3).loopWrites);   // addi x6, x6, -1; bne x6, x0, -4
+        assertNull(block(0x10602023, 0xFE000EE3).loopWrites);                         // sw x6, 256(x0); beq x0, x0, -4
+        assertNull(block(LW_X6, 0x00030463).loopWrites);                              // beq x6, x0, 8
+        assertNull(block(0x10500073).loopWrites);                                     // wfi
+    }
+
+    @Test
+    public void spinLoopSkipsToTheTimerDeadlineTest() {
+
+        final long skipping = instructionsForTenInterrupts(true);
+        final long spinning = instructionsForTenInterrupts(false);
+        assertTrue(skipping < 100, "executed: " + skipping);
+        assertTrue(spinning > 900, "executed: " + spinning);
+    }
+
+    @Test
+    public void skippingIsOnByDefaultOnlyForHeadlessOrWallClockMachinesTest() {
+
+        final MachineContext interactive = context();
+        final MachineContext headless = context();
+        headless.setHeadless(true);
+        final MachineContext wallClock = context();
+        wallClock.setWallClockTimer(true);
+
+        for (MachineContext context : new MachineContext[]{interactive, headless, wallClock}) {
+            final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+            bus.write(0, SPIN_PROGRAM);
+            final CPU cpu = new CPU(context, bus, null);
+            for (int i = 0; i < 10; i++) {
+                cpu.processNextBlock();
+            }
+            assertEquals(context != interactive, cpu.getIdleLoops() > 0);
+        }
+    }
+
+    @Test
+    public void countingLoopIsNotIdleTest() {
+
+        final MachineContext context = context();
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        bus.write(0, new int[]{
+                0x3E800313, // 0: addi x6, x0, 1000
+                0xFFF30313, // 4: addi x6, x6, -1
+                0xFE031EE3, // 8: bne x6, x0, -4
+                0x0000006F, // 12: jal x0, 0
+        });
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setIdleLoopSkipping(true);
+
+        for (int i = 0; i < 1000; i++) {
+            cpu.processNextBlock();
+        }
+        assertEquals(0, cpu.snapshot().getRegister(6));
+        assertEquals(0, cpu.getIdleLoops());
+        assertEquals(0, cpu.getSkippedTicks());
+    }
+
+    @Test
+    public void pollingLoopParksUntilAKeyIsQueuedTest() {
+
+        final MachineContext context = context();
+        context.setWallClockTimer(true);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final int base = bus.getClintBase() + Clint.SIZE; // Keyboard registers
+        final int upper = (base + 0x800) >>> 12;
+        bus.write(0, new int[]{
+                (upper << 12) | (7 << 7) | 0x37,                   //  0: lui x7, upper
+                ((base - (upper << 12)) << 20) | (7 << 15) | (7 << 7) | 0x13, //  4: addi x7, x7, lower
+                0x0003A303,                                         //  8: lw x6, 0(x7), the key count
+                BEQ_X6_BACK,                                        // 12: beq x6, x0, -4
+                0x0000006F,                                         // 16: jal x0, 0
+        });
+        final CPU cpu = new CPU(context, bus, null);
+
+        for (int i = 0; i < 5; i++) {
+            cpu.processNextBlock();
+        }
+        assertTrue(cpu.getIdleLoops() > 0);
+        assertTrue(cpu.getIdleNanos() > 0);
+        assertEquals(0, cpu.snapshot().getRegister(6));
+
+        bus.getKeyboard().press(65);
+        cpu.processNextBlock();
+        assertEquals(1, cpu.snapshot().getRegister(6));
+    }
+
+    @Test
+    public void mtimePollingLoopIsNotIdleTest() {
+
+        final MachineContext context = context();
+        context.setWallClockTimer(true);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final int mtime = bus.getClintBase() + Clint.MTIME;
+        final int upper = (mtime + 0x800) >>> 12;
+        bus.write(0, new int[]{
+                (upper << 12) | (7 << 7) | 0x37,                   //  0: lui x7, upper
+                ((mtime - (upper << 12)) << 20) | (7 << 15) | (7 << 7) | 0x13, //  4: addi x7, x7, lower
+                0x10000437,                                         //  8: lui x8, 0x10000, a deadline never reached
+                0x0003A303,                                         // 12: lw x6, 0(x7), the low word of mtime
+                0xFE836EE3,                                         // 16: bltu x6, x8, -4
+                0x0000006F,                                         // 20: jal x0, 0
+        });
+        final CPU cpu = new CPU(context, bus, null);
+
+        for (int i = 0; i < 1000; i++) {
+            cpu.processNextBlock();
+        }
+        assertEquals(0, cpu.getIdleLoops());
+        assertEquals(0, cpu.getIdleNanos());
+        assertTrue(cpu.snapshot().getRegister(6) > 0);
+    }
+
+}
@@ -0,0 +1,88 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import br.faustech.memory.MemoryStorage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MachineSnapshotTest {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    private static final int MEMORY_SIZE = 1 << 20;
+
+    private static final int COUNTER_ADDRESS = 256;
+
+    private static final int[] PROGRAM = {
+            0x00108093, // addi x1, x1, 1
+            0x10102023, // sw   x1, 256(x0)
+            0xFF9FF06F, // jal  x0, -8
+    };
+
+    private static void runBlocks(CPU cpu, int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            cpu.processNextBlock();
+        }
+    }
+
+    @Test
+    public void forksRunIndependentlyFromSnapshotTest() {
+
+        final MachineContext context = new MachineContext(WIDTH, HEIGHT, MEMORY_SIZE, 1000);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MemoryStorage.paged(MEMORY_SIZE)));
+        bus.write(0, PROGRAM);
+
+        final CPU parent = new CPU(context, bus, null);
+        runBlocks(parent, 10);
+
+        final MachineSnapshot snapshot = parent.snapshot();
+        assertEquals(10, snapshot.getRegister(1));
+        assertEquals(10, snapshot.readWord(COUNTER_ADDRESS));
+
+        runBlocks(parent, 5);
+        final CPU first = snapshot.fork();
+        final CPU second = snapshot.fork();
+        runBlocks(first, 3);
+
+        assertEquals(15, bus.readWord(COUNTER_ADDRESS));
+        assertEquals(13, first.snapshot().readWord(COUNTER_ADDRESS));
+        assertEquals(10, second.snapshot().readWord(COUNTER_ADDRESS));
+        assertEquals(10, snapshot.readWord(COUNTER_ADDRESS));
+
+        runBlocks(second, 3);
+        assertEquals(first.snapshot().getRegister(1), second.snapshot().getRegister(1));
+        assertEquals(first.snapshot().getProgramCounter(), second.snapshot().getProgramCounter());
+    }
+
+    @Test
+    public void frameBufferForkIsCopyOnWriteTest() {
+
+        final Bus bus = new Bus(new FrameBuffer(new MachineContext(WIDTH, HEIGHT, MEMORY_SIZE, 1000)), new Memory(MEMORY_SIZE));
+        final int swapAddress = MEMORY_SIZE;
+        final int pixelAddress = MEMORY_SIZE + 4;
+
+        final int red = 0xFF0000; // Pixels read back as written
+
+        bus.writeWord(pixelAddress, 0xFF0000);
+        final Bus fork = bus.fork();
+        fork.writeWord(pixelAddress, 0x000000);
+        bus.writeWord(swapAddress, 0);
+        fork.writeWord(swapAddress, 0);
+        assertEquals(red, bus.readWord(pixelAddress));
+        assertEquals(0, fork.readWord(pixelAddress));
+
+        // Both back buffers are now the old front buffers, still shared between the two buses
+        bus.writeWord(pixelAddress, 0xFF0000);
+        bus.writeWord(swapAddress, 0);
+        fork.writeWord(swapAddress, 0);
+        assertEquals(red, bus.readWord(pixelAddress));
+        assertEquals(0, fork.readWord(pixelAddress));
+    }
+
+}
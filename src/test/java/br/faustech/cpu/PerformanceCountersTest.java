@@ -0,0 +1,166 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PerformanceCountersTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    private static final int JAL_SELF = 0x0000006F; // jal x0, 0
+
+    /**
+     * Loops 1000 times over a load and a store, then reads the counters from the middle of a
+     * block: x10 minstret, x11 instret, x12 loads, x13 stores, x14 taken branches.
+     */
+    private static final int[] COUNTING_PROGRAM = {
+            0x3E800313,                 //  0: addi x6, x0, 1000
+            0x10002383,                 //  4: lw x7, 256(x0)
+            0x10702223,                 //  8: sw x7, 260(x0)
+            0xFFF30313,                 // 12: addi x6, x6, -1
+            0xFE031AE3,                 // 16: bne x6, x0, -12
+            0x00100413,                 // 20: addi x8, x0, 1
+            0x10002483,                 // 24: lw x9, 256(x0)
+            csrr(10, 0xB02),            // 28: csrr x10, minstret
+            csrr(11, 0xC02),            // 32: csrr x11, instret
+            csrr(12, 0xC03),            // 36: csrr x12, hpmcounter3
+            csrr(13, 0xC04),            // 40: csrr x13, hpmcounter4
+            csrr(14, 0xC05),            // 44: csrr x14, hpmcounter5
+            JAL_SELF,                   // 48
+    };
+
+    private static int csr(int csr, int source, int funct3, int rd) {
+        return (csr << 20) | (source << 15) | (funct3 << 12) | (rd << 7) | 0x73;
+    }
+
+    private static int csrr(int rd, int csr) {
+        return csr(csr, 0, 0b010, rd); // csrrs rd, csr, x0
+    }
+
+    private static CPU load(int... program) {
+        final MachineContext context = new MachineContext(32, 32, MEMORY_SIZE, 1);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        bus.write(0, program);
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setIdleLoopSkipping(false);
+        return cpu;
+    }
+
+    private static MachineSnapshot runBlocks(int translationThreshold, int... program) {
+        final CPU cpu = load(program);
+        cpu.setTranslationThreshold(translationThreshold);
+        while (cpu.snapshot().getProgramCounter() != (program.length - 1) * 4) {
+            cpu.processNextBlock();
+        }
+        return cpu.snapshot();
+    }
+
+    @Test
+    public void countersReadExactCountsMidBlockTest() {
+
+        final MachineSnapshot interpreted = runBlocks(0, COUNTING_PROGRAM);
+        assertEquals(1 + 4 * 1000 + 2, interpreted.getRegister(10));
+        assertEquals(1 + 4 * 1000 + 3, interpreted.getRegister(11));
+        assertEquals(1001, interpreted.getRegister(12));
+        assertEquals(1000, interpreted.getRegister(13));
+        assertEquals(999, interpreted.getRegister(14));
+
+        final MachineSnapshot compiled = runBlocks(10, COUNTING_PROGRAM);
+        for (int register = 10; register <= 14; register++) {
+            assertEquals(interpreted.getRegister(register), compiled.getRegister(register));
+        }
+
+        final CPU stepped = load(COUNTING_PROGRAM);
+        while (stepped.snapshot().getProgramCounter() != (COUNTING_PROGRAM.length - 1) * 4) {
+            stepped.processNextInstruction();
+        }
+        for (int register = 10; register <= 14; register++) {
+            assertEquals(interpreted.getRegister(register), stepped.snapshot().getRegister(register));
+        }
+    }
+
+    @Test
+    public void faultRetiresTheInstructionsBeforeItTest() {
+
+        for (int translationThreshold : new int[]{0, 10}) {
+            final CPU cpu = load(
+                    0x7FF00313,             //  0: addi x6, x0, 2047
+                    0xFFF30313,             //  4: addi x6, x6, -1
+                    0x00032383,             //  8: lw x7, 0(x6), faults once x6 is -1
+                    0xFF9FF06F);            // 12: jal x0, -8
+            cpu.setTranslationThreshold(translationThreshold);
+            assertThrows(RuntimeException.class, () -> {
+                while (true) {
+                    cpu.processNextBlock();
+                }
+            });
+            assertEquals(4 + 3 * 2046 + 1, cpu.getRetiredInstructions());
+        }
+    }
+
+    @Test
+    public void machineCountersAreWritableAndShadowsAreNotTest() {
+
+        final MachineSnapshot snapshot = runBlocks(0,
+                csr(0xB00, 0, 0b101, 0),    //  0: csrrwi x0, mcycle, 0
+                csr(0xC00, 5, 0b101, 0),    //  4: csrrwi x0, cycle, 5
+                0x00000013,                 //  8: nop
+                csrr(10, 0xB00),            // 12: csrr x10, mcycle
+                csrr(11, 0xC00),            // 16: csrr x11, cycle
+                csrr(12, 0xB80),            // 20: csrr x12, mcycleh
+                csr(0x323, 0, 0b001, 0),    // 24: csrrw x0, mhpmevent3, x0
+                0x10002383,                 // 28: lw x7, 256(x0)
+                csrr(13, 0xB03),            // 32: csrr x13, mhpmcounter3
+                csrr(14, 0x323),            // 36: csrr x14, mhpmevent3
+                csrr(15, 0x324),            // 40: csrr x15, mhpmevent4
+                JAL_SELF);                  // 44
+        assertEquals(2, snapshot.getRegister(10));
+        assertEquals(3, snapshot.getRegister(11));
+        assertEquals(0, snapshot.getRegister(12));
+        assertEquals(0, snapshot.getRegister(13));
+        assertEquals(0, snapshot.getRegister(14));
+        assertEquals(PerformanceCounters.EVENT_STORES, snapshot.getRegister(15));
+    }
+
+    @Test
+    public void countsCarryAcrossForksTest() {
+
+        final PerformanceCounters counters = new PerformanceCounters();
+        final DecodedInstruction load = Decoder.decode(0x10002383); // lw x7, 256(x0)
+        counters.write(0xB02, -1);
+        counters.retire(load, 0, 4); // Retires as the writing instruction
+        counters.interrupt();
+        final PerformanceCounters copy = counters.copy();
+        copy.retire(load, 0, 4);
+        assertEquals(-1, counters.read(0xB02, 0));
+        assertEquals(0, copy.read(0xB02, 0));
+        assertEquals(1, copy.read(0xB82, 0));
+        assertEquals(1, counters.read(0xC03, 0));
+        assertEquals(2, copy.read(0xC03, 0));
+        assertEquals(1, copy.read(0xC06, 0));
+        assertEquals(7, copy.read(0xC81, 7L << 32));
+    }
+
+    @Test
+    public void handlesOnlyCounterCsrsTest() {
+
+        assertTrue(PerformanceCounters.handles(0xB00));
+        assertTrue(PerformanceCounters.handles(0xB9F));
+        assertTrue(PerformanceCounters.handles(0xC01));
+        assertTrue(PerformanceCounters.handles(0xC9F));
+        assertTrue(PerformanceCounters.handles(0x33F));
+        assertFalse(PerformanceCounters.handles(0xB01));
+        assertFalse(PerformanceCounters.handles(0xB81));
+        assertFalse(PerformanceCounters.handles(0x320));
+        assertFalse(PerformanceCounters.handles(0x340));
+        assertFalse(PerformanceCounters.handles(0x305));
+    }
+}
@@ -0,0 +1,90 @@
+package br.faustech.cpu;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import br.faustech.reader.ElfSymbols;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProfilerTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    /**
+     * Counts x6 down from 10, then spins.
+     */
+    private static final int[] PROGRAM = {
+            0x00A00313, //  0: addi x6, x0, 10
+            0xFFF30313, //  4: addi x6, x6, -1
+            0xFE031EE3, //  8: bne x6, x0, -4
+            0x0000006F, // 12: jal x0, 0
+    };
+
+    private static Profiler profile(int translationThreshold) {
+        final MachineContext context = new MachineContext(32, 32, MEMORY_SIZE, 1000);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        bus.write(0, PROGRAM);
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setTranslationThreshold(translationThreshold);
+        final Profiler profiler = new Profiler(MEMORY_SIZE);
+        cpu.setProfiler(profiler);
+        for (int i = 0; i < 15; i++) {
+            cpu.processNextBlock(); // 1 block into the loop, 9 more loop blocks, 5 spins
+        }
+        return profiler;
+    }
+
+    @Test
+    public void countsFollowExecutedBlocksTest() {
+
+        for (int threshold : new int[]{0, 1}) {
+            final Profiler profiler = profile(threshold);
+            final long[] pcCounts = profiler.pcCounts();
+            assertEquals(1, pcCounts[0]);
+            assertEquals(10, pcCounts[1]);
+            assertEquals(10, pcCounts[2]);
+            assertEquals(5, pcCounts[3]);
+            assertEquals(26, profiler.getInstructions());
+
+            final long[] opcodes = profiler.opcodeCounts();
+            assertEquals(11, opcodes[Opcode.ADDI.ordinal()]);
+            assertEquals(10, opcodes[Opcode.BNE.ordinal()]);
+            assertEquals(5, opcodes[Opcode.JAL.ordinal()]);
+            assertEquals(9, profiler.takenCounts()[Opcode.BNE.ordinal()]);
+            assertEquals(1, profiler.notTakenCounts()[Opcode.BNE.ordinal()]);
+
+            final List<Profiler.BlockProfile> hottest = profiler.hottestBlocks(2);
+            assertEquals(2, hottest.size());
+            assertEquals(4, hottest.get(0).startAddress());
+            assertEquals(9, hottest.get(0).runs());
+            assertEquals(18, hottest.get(0).instructions());
+            assertEquals(8, hottest.get(0).taken()); // The first run of the loop body entered through the block at 0
+        }
+    }
+
+    @Test
+    public void reportListsTheHottestBlocksTest() throws IOException {
+
+        final StringWriter report = new StringWriter();
+        ProfileReport.writeText(profile(0), ElfSymbols.empty(), 1, report);
+        final String text = report.toString();
+        assertTrue(text.startsWith("26 instructions executed"), text);
+        assertTrue(text.contains("#1 0x00000004 ?: 9 runs, 18 instructions"), text);
+        assertTrue(text.contains(Decoder.decodeInstructionInFormat(PROGRAM[2])), text);
+        assertTrue(!text.contains("#2 "), text);
+
+        final StringWriter folded = new StringWriter();
+        ProfileReport.writeFolded(profile(0), ElfSymbols.empty(), folded);
+        assertEquals(List.of("[unknown];0x00000004 18", "[unknown];0x0000000c 5", "[unknown];0x00000000 3"),
+                folded.toString().lines().toList());
+    }
+
+}
@@ -0,0 +1,129 @@
+package br.faustech.device;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.cpu.CPU;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClintTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    /**
+     * Enables interrupts and spins; the timer handler at 64 counts interrupts in x5.
+     */
+    private static final int[] PROGRAM = {
+            0x04000093,                                         //  0: addi x1, x0, 64
+            (0x305 << 20) | (1 << 15) | (0b001 << 12) | 0x73,   //  4: csrrw x0, mtvec, x1
+            (0x304 << 20) | (1 << 15) | (0b101 << 12) | 0x73,   //  8: csrrwi x0, mie, 1
+            0x0000006F,                                         // 12: jal x0, 0
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,                 // 16..60: padding
+            0x00128293,                                         // 64: addi x5, x5, 1
+            0x30200073,                                         // 68: mret
+    };
+
+    private static MachineContext context() {
+        final MachineContext context = new MachineContext(32, 32, MEMORY_SIZE, 1);
+        context.setTimerFrequency(100); // One interrupt every 100 instructions
+        return context;
+    }
+
+    private static int countInterrupts(final int translationThreshold) {
+        final MachineContext context = context();
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        bus.write(0, PROGRAM);
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setTranslationThreshold(translationThreshold);
+        while (bus.getClint().getMtime() < 10_000) {
+            cpu.processNextBlock();
+        }
+        return cpu.snapshot().getRegister(5);
+    }
+
+    @Test
+    public void timerInterruptsFollowRetiredInstructionsTest() {
+
+        final int interrupts = countInterrupts(0);
+        assertTrue(interrupts >= 95 && interrupts <= 100, "interrupts: " + interrupts);
+        assertEquals(interrupts, countInterrupts(0));
+        assertEquals(interrupts, countInterrupts(1));
+    }
+
+    private static CPU waitingMachine(final MachineContext context) {
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final int[] program = PROGRAM.clone();
+        program[3] = 0x10500073; // 12: wfi
+        program[4] = 0xFFDFF06F; // 16: jal x0, -4
+        bus.write(0, program);
+        return new CPU(context, bus, null);
+    }
+
+    @Test
+    public void waitForInterruptSkipsToTheDeadlineTest() {
+
+        final MachineContext context = context();
+        context.setHeadless(true);
+        final CPU cpu = waitingMachine(context);
+
+        long executed = 0;
+        while (cpu.snapshot().getRegister(5) < 10) {
+            executed += cpu.processNextBlock();
+        }
+        // Ten timer periods passed while only a few instructions per period retired
+        assertTrue(executed < 100, "executed: " + executed);
+        assertTrue(cpu.getSkippedTicks() > 900, "skipped: " + cpu.getSkippedTicks());
+        assertEquals(0, cpu.getIdleNanos());
+    }
+
+    @Test
+    public void waitForInterruptParksForThePeriodTest() {
+
+        final CPU cpu = waitingMachine(context()); // One timer period every millisecond
+
+        final long start = System.nanoTime();
+        long executed = 0;
+        while (cpu.snapshot().getRegister(5) < 10) {
+            executed += cpu.processNextBlock();
+        }
+        // The timer still counts instructions, but the waits between them follow real time
+        assertTrue(executed < 100, "executed: " + executed);
+        assertTrue(cpu.getSkippedTicks() > 900, "waited out: " + cpu.getSkippedTicks());
+        assertTrue(cpu.getIdleNanos() > 0);
+        assertTrue(System.nanoTime() - start >= 9_000_000L);
+    }
+
+    @Test
+    public void registersAreMappedAfterTheFrameBufferTest() {
+
+        final MachineContext context = context();
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final Clint clint = bus.getClint();
+        final int base = bus.getClintBase();
+        assertEquals(0, base % Clint.SIZE);
+
+        clint.configure(context);
+        clint.reload();
+        assertEquals(100, bus.readWord(base + Clint.MTIMECMP));
+        clint.retire(99);
+        assertFalse(clint.isDue());
+        clint.retire(1);
+        assertTrue(clint.isDue());
+        assertEquals(100, bus.readWord(base + Clint.MTIME));
+
+        // A deadline written by the guest replaces the automatic reload
+        bus.writeWord(base + Clint.MTIMECMP + 4, 1);
+        bus.writeWord(base + Clint.MTIMECMP, 0);
+        assertFalse(clint.isDue());
+        clint.reload();
+        assertEquals(1L << 32, clint.getMtimecmp());
+        bus.writeWord(base + Clint.MTIME + 4, 1);
+        assertTrue(clint.isDue());
+    }
+
+}
@@ -0,0 +1,95 @@
+package br.faustech.device;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.cpu.CPU;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyboardTest {
+
+    @Test
+    public void queueKeepsOrderAcrossThreadsTest() throws InterruptedException {
+
+        final KeyEventQueue queue = new KeyEventQueue(8);
+        final int events = 100_000;
+        final Thread producer = new Thread(() -> {
+            for (int i = 1; i <= events; i++) {
+                while (!queue.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        int expected = 1;
+        while (expected <= events) {
+            final int event = queue.poll();
+            if (event != KeyEventQueue.EMPTY) {
+                assertEquals(expected++, event);
+            } else {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertEquals(KeyEventQueue.EMPTY, queue.poll());
+        assertThrows(IllegalArgumentException.class, () -> new KeyEventQueue(6));
+    }
+
+    @Test
+    public void registersExposeQueuedKeysTest() {
+
+        final Keyboard keyboard = new Keyboard();
+        assertTrue(keyboard.press(65));
+        assertTrue(keyboard.press(66));
+        assertEquals(2, keyboard.readWord(Keyboard.STATUS));
+        assertEquals(65, keyboard.readWord(Keyboard.DATA));
+        assertEquals(66, keyboard.readWord(Keyboard.DATA));
+        assertEquals(0, keyboard.readWord(Keyboard.DATA));
+
+        // A burst longer than the queue keeps the oldest keys and counts the rest
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            accepted += keyboard.press(32 + i) ? 1 : 0;
+        }
+        assertEquals(accepted, keyboard.readWord(Keyboard.STATUS));
+        assertEquals(100 - accepted, keyboard.readWord(Keyboard.DROPPED));
+        assertEquals(32, keyboard.readWord(Keyboard.DATA));
+        assertFalse(keyboard.fork().readWord(Keyboard.STATUS) != 0);
+    }
+
+    @Test
+    public void keyPressWakesWaitingCpuTest() throws InterruptedException {
+
+        final MachineContext context = new MachineContext(32, 32, 8192, 10_000);
+        context.setWallClockTimer(true); // The timer is ten seconds away
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(8192));
+        bus.write(0, new int[]{0x10500073, 0xFFDFF06F}); // wfi; jal x0, -4
+        final CPU cpu = new CPU(context, bus, null);
+
+        final Thread window = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            context.keyPressed(65);
+        });
+        final long start = System.nanoTime();
+        window.start();
+        while (!cpu.getKeyboard().hasPending()) {
+            cpu.processNextBlock();
+        }
+        window.join();
+
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertTrue(cpu.getIdleNanos() > 0);
+    }
+
+}
@@ -1,6 +1,7 @@
 package br.faustech.gpu;
 
 import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
 import br.faustech.memory.FrameBuffer;
 import br.faustech.memory.Memory;
 import org.junit.jupiter.api.Test;
@@ -16,21 +17,21 @@ public class GPUTest {
 
     private static final int HEIGHT = 240;
 
-    private static final int FRAME_BUFFER_SIZE = WIDTH * HEIGHT * 4;
-
     private static final int MEMORY_SIZE = 4096;
 
     @Test
     public void gpuTest() {
 
-        FrameBuffer frameBuffer = new FrameBuffer(FRAME_BUFFER_SIZE);
+        MachineContext context = new MachineContext(WIDTH, HEIGHT, MEMORY_SIZE, 1000);
+
+        FrameBuffer frameBuffer = new FrameBuffer(context);
 
         Bus bus = new Bus(frameBuffer, new Memory(MEMORY_SIZE));
 
-        VideoFrameToVertexArray videoProcessor = new VideoFrameToVertexArray(VIDEO_PATH, WIDTH, HEIGHT, bus, frameBuffer);
+        VideoFrameToVertexArray videoProcessor = new VideoFrameToVertexArray(VIDEO_PATH, context, bus, frameBuffer);
         videoProcessor.start();
 
-        GPU gpu = new GPU(WIDTH, HEIGHT, frameBuffer, "GPU Test");
+        GPU gpu = new GPU(context, frameBuffer, "GPU Test");
         gpu.start();
 
         while (gpu.isAlive()) {
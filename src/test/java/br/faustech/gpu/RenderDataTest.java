@@ -0,0 +1,19 @@
+package br.faustech.gpu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class RenderDataTest {
+
+    @Test
+    public void viewportScalesByWholeFactorsTest() {
+
+        assertArrayEquals(new int[]{0, 0, 320, 240}, RenderData.viewport(320, 240, 320, 240));
+        assertArrayEquals(new int[]{0, 0, 960, 720}, RenderData.viewport(320, 240, 960, 720));
+        assertArrayEquals(new int[]{160, 60, 640, 480}, RenderData.viewport(320, 240, 960, 600)); // Two times, centered
+        assertArrayEquals(new int[]{0, 25, 160, 120}, RenderData.viewport(320, 240, 160, 170)); // Smaller window, shrunk to fit
+        assertArrayEquals(new int[]{67, 0, 266, 200}, RenderData.viewport(320, 240, 400, 200));
+    }
+
+}
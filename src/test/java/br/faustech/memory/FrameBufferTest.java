@@ -0,0 +1,159 @@
+package br.faustech.memory;
+
+import br.faustech.comum.MachineContext;
+import br.faustech.comum.RenderDataDto;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameBufferTest {
+
+    private static final int WIDTH = 4;
+
+    private static final int HEIGHT = 2;
+
+    private static final int PIXEL = FrameBuffer.SWAP_REGISTER_SIZE; // Bus offset of the first pixel
+
+    @Test
+    public void pixelsArePackedAsWrittenTest() {
+
+        final FrameBuffer frameBuffer = new FrameBuffer(new MachineContext(WIDTH, HEIGHT, 4096, 1000));
+        frameBuffer.writeWord(PIXEL, 0x123456);
+        frameBuffer.writePixel(4 * 4, new int[]{0xFF0000, 0x00FF00});
+        assertEquals(0, frameBuffer.readWord(PIXEL)); // Still in the back buffer
+
+        frameBuffer.writeWord(0, 0); // Swap
+        assertEquals(0x123456, frameBuffer.readWord(PIXEL));
+        assertArrayEquals(new int[]{0x123456, 0, 0, 0, 0xFF0000, 0x00FF00, 0, 0}, frameBuffer.getRenderData().pixel());
+        assertArrayEquals(new int[]{0xFF0000, 0x00FF00}, frameBuffer.readFromPixelBufferAsInts(4, 6));
+
+        // The bus window is twice the frame, the rest is reserved
+        assertEquals(WIDTH * HEIGHT * 8, frameBuffer.getBufferSize());
+        assertEquals(0, frameBuffer.readWord(PIXEL + WIDTH * HEIGHT * 4));
+        assertThrows(MemoryException.class, () -> frameBuffer.writeWord(PIXEL + WIDTH * HEIGHT * 4, 1));
+        assertThrows(MemoryException.class, () -> frameBuffer.readWord(PIXEL + frameBuffer.getBufferSize()));
+    }
+
+    @Test
+    public void onlyRowsChangedOnScreenAreRenderedTest() {
+
+        final int width = 64; // Rows longer than the spans tracked for changes
+        final FrameBuffer frameBuffer = new FrameBuffer(new MachineContext(width, 3, 4096, 1000));
+        assertArrayEquals(new int[]{0, 3}, frameBuffer.getRenderData().rows()); // First frame is complete
+        assertTrue(frameBuffer.getRenderData().isEmpty());
+
+        frameBuffer.writePixel(width * 4, 0xABCDEF); // Row 1
+        assertTrue(frameBuffer.getRenderData().isEmpty()); // Not on screen before the swap
+        frameBuffer.swap();
+        RenderDataDto renderData = frameBuffer.getRenderData();
+        assertArrayEquals(new int[]{1, 1}, renderData.rows());
+        assertEquals(width, renderData.pixel().length);
+        assertEquals(0xABCDEF, renderData.pixel()[0]);
+
+        frameBuffer.writePixel(width * 4, 0xABCDEF); // The other buffer gets the same row
+        frameBuffer.swap();
+        assertTrue(frameBuffer.getRenderData().isEmpty());
+
+        frameBuffer.writePixel(0, 1);
+        frameBuffer.writePixel(width * 2 * 4 + 4, 2);
+        frameBuffer.swap();
+        renderData = frameBuffer.getRenderData();
+        assertArrayEquals(new int[]{0, 1, 2, 1}, renderData.rows());
+        assertEquals(1, renderData.pixel()[0]);
+        assertEquals(2, renderData.pixel()[width + 1]);
+
+        frameBuffer.swap();
+        frameBuffer.writePixel(width * 4 + 4, 3);
+        frameBuffer.swap(); // Rows of frames the GPU missed still count
+        renderData = frameBuffer.getRenderData();
+        assertArrayEquals(new int[]{0, 3}, renderData.rows());
+        assertEquals(1, renderData.pixel()[0]);
+        assertEquals(0xABCDEF, renderData.pixel()[width]);
+        assertEquals(3, renderData.pixel()[width + 1]);
+        assertEquals(2, renderData.pixel()[2 * width + 1]);
+    }
+
+    @Test
+    public void changedRowsAreCopiedIntoMappedBuffersTest() {
+
+        final int width = 64;
+        final FrameBuffer frameBuffer = new FrameBuffer(new MachineContext(width, HEIGHT, 4096, 1000));
+        final IntBuffer mapped = ByteBuffer.allocateDirect(width * HEIGHT * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        frameBuffer.copyChangedRows(mapped);
+
+        frameBuffer.writePixel(width * 4 + 8, 0x00FF00);
+        frameBuffer.swap();
+        mapped.clear();
+        assertArrayEquals(new int[]{1, 1}, frameBuffer.copyChangedRows(mapped));
+        assertEquals(width, mapped.position());
+        assertEquals(0x00FF00, mapped.get(2));
+
+        mapped.clear();
+        assertEquals(0, frameBuffer.copyChangedRows(mapped).length);
+        assertEquals(0, mapped.position());
+    }
+
+    @Test
+    public void droppedAndDuplicatedFramesAreCountedTest() {
+
+        final FrameBuffer frameBuffer = new FrameBuffer(new MachineContext(WIDTH, HEIGHT, 4096, 1000));
+        frameBuffer.getRenderData(); // Frame 0
+        frameBuffer.getRenderData(); // Frame 0 again
+        frameBuffer.swap();
+        frameBuffer.swap();
+        frameBuffer.swap();
+        frameBuffer.getRenderData(); // Frame 3, frames 1 and 2 were never shown
+        assertEquals(2, frameBuffer.getDroppedFrames());
+        assertEquals(1, frameBuffer.getDuplicatedFrames());
+    }
+
+    @Test
+    public void framesAreCopiedWholeWhileSwappingTest() throws InterruptedException {
+
+        final int width = 64;
+        final int height = 32;
+        final int frames = 20_000;
+        final FrameBuffer frameBuffer = new FrameBuffer(new MachineContext(width, height, 4096, 1000));
+        final Thread cpu = new Thread(() -> {
+            final int[] frame = new int[width * height];
+            for (int n = 1; n <= frames; n++) {
+                Arrays.fill(frame, n);
+                frameBuffer.writePixel(0, frame);
+                frameBuffer.swap();
+            }
+        });
+        cpu.start();
+
+        final int[] screen = new int[width * height];
+        final IntBuffer pixels = IntBuffer.allocate(width * height);
+        long copies = 0;
+        boolean done;
+        do {
+            done = !cpu.isAlive();
+            pixels.clear();
+            final int[] rows = frameBuffer.copyChangedRows(pixels);
+            copies++;
+            for (int run = 0, position = 0; run < rows.length; run += 2) {
+                final int length = rows[run + 1] * width;
+                System.arraycopy(pixels.array(), position, screen, rows[run] * width, length);
+                position += length;
+            }
+            for (final int pixel : screen) {
+                assertEquals(screen[0], pixel); // Every frame fills the screen with one color
+            }
+        } while (!done);
+        cpu.join();
+
+        assertEquals(frames, screen[0]);
+        assertEquals(frames + 1, copies - frameBuffer.getDuplicatedFrames() + frameBuffer.getDroppedFrames());
+    }
+
+}
@@ -1,7 +1,11 @@
 package br.faustech.memory;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -82,4 +86,77 @@ public class MemoryTest {
         assertThrows(MemoryException.class, () -> memory.read(20, 10));
     }
 
+    @Test
+    public void wordHalfwordAndByteAccessTest() throws MemoryException {
+
+        Memory memory = new Memory(16);
+
+        memory.writeWord(4, 0x12345678);
+        assertEquals(0x12345678, memory.readWord(4));
+        assertEquals(0x12345678, memory.readAsInt(4, 8)[0]);
+
+        memory.writeHalfword(8, 0xABCD);
+        assertEquals((short) 0xABCD, memory.readHalfword(8));
+
+        memory.writeByte(10, 0x1FF);
+        assertEquals((byte) 0xFF, memory.readByte(10));
+        assertEquals((short) 0xABCD, memory.readHalfword(8)); // Neighbouring bytes are untouched
+
+        memory.writeWord(0, 0x11223344); // Little-endian: least significant byte first
+        assertEquals((byte) 0x44, memory.readByte(0));
+        assertEquals((short) 0x2233, memory.readHalfword(1));
+        assertEquals((byte) 0x11, memory.readByte(3));
+
+        memory.writeWord(12, -1);
+        assertEquals(-1, memory.readWord(12));
+
+        assertThrows(MemoryException.class, () -> memory.readWord(13));
+        assertThrows(MemoryException.class, () -> memory.writeHalfword(15, 0));
+        assertThrows(MemoryException.class, () -> memory.readByte(-1));
+        assertThrows(MemoryException.class, () -> memory.writeByte(16, 0));
+    }
+
+    @Test
+    public void offHeapAndMappedStorageTest(@TempDir Path directory) throws IOException {
+
+        Memory offHeap = new Memory(MemoryStorage.offHeap(16));
+        offHeap.writeWord(4, 0x11223344);
+        assertEquals((byte) 0x44, offHeap.readByte(4));
+        assertEquals((short) 0x1122, offHeap.readHalfword(6));
+        assertThrows(MemoryException.class, () -> offHeap.readWord(14));
+
+        Path image = directory.resolve("ram.img");
+        Files.write(image, new byte[]{1, 2, 3, 4});
+
+        Memory mapped = new Memory(MemoryStorage.mapped(image, 16));
+        assertEquals(0x04030201, mapped.readWord(0)); // Existing file contents are the initial RAM
+        mapped.writeWord(8, 0xCAFEBABE);
+        assertEquals(16, Files.size(image));
+        assertEquals((byte) 0xBE, Files.readAllBytes(image)[8]); // Writes go through to the file
+    }
+
+    @Test
+    public void pagedStorageTest() {
+
+        PagedStorage storage = new PagedStorage(Integer.MAX_VALUE); // Nearly 2 GiB of address space
+        Memory memory = new Memory(storage);
+
+        assertEquals(0, memory.readWord(1 << 30)); // Untouched pages read as zeros without allocating
+        assertEquals(0, storage.allocatedPages());
+
+        memory.writeWord(Integer.MAX_VALUE - 4, 0x12345678); // Stack near the top
+        memory.writeWord(4094, 0xA1B2C3D4);                   // Straddles the first two pages
+        assertEquals(3, storage.allocatedPages());
+
+        assertEquals(0x12345678, memory.readWord(Integer.MAX_VALUE - 4));
+        assertEquals(0xA1B2C3D4, memory.readWord(4094));
+        assertEquals((short) 0xA1B2, memory.readHalfword(4096));
+
+        byte[] data = new byte[10000];
+        Arrays.fill(data, (byte) 7);
+        memory.write(8000, data);
+        assertEquals(Arrays.toString(data), Arrays.toString(memory.read(8000, 18000)));
+        assertEquals(0, memory.readByte(18000));
+    }
+
 }
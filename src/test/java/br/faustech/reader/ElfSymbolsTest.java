@@ -0,0 +1,73 @@
+package br.faustech.reader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ElfSymbolsTest {
+
+    private static final byte[] STRINGS = "\0main\0loop\0table\0".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Builds an ELF file holding only a symbol table: function main at 0x100 (32 bytes), label
+     * loop at 0x110 and data object table at 0x200.
+     */
+    private static byte[] elf() {
+        final int stringOffset = 52;
+        final int symbolOffset = 72;
+        final int sectionOffset = symbolOffset + 4 * 16;
+        final ByteBuffer elf = ByteBuffer.allocate(sectionOffset + 3 * 40).order(ByteOrder.LITTLE_ENDIAN);
+        elf.putInt(0, 0x464C457F).put(4, (byte) 1).put(5, (byte) 1).put(6, (byte) 1);
+        elf.putInt(0x20, sectionOffset).putShort(0x2E, (short) 40).putShort(0x30, (short) 3);
+        elf.put(stringOffset, STRINGS);
+
+        putSymbol(elf, symbolOffset + 16, 1, 0x100, 0x20, 2);  // main, STT_FUNC
+        putSymbol(elf, symbolOffset + 32, 6, 0x110, 0, 0);     // loop, STT_NOTYPE
+        putSymbol(elf, symbolOffset + 48, 11, 0x200, 16, 1);   // table, STT_OBJECT
+
+        final int symtab = sectionOffset + 40;
+        elf.putInt(symtab + 4, 2).putInt(symtab + 16, symbolOffset).putInt(symtab + 20, 4 * 16).putInt(symtab + 24, 2);
+        final int strtab = sectionOffset + 80;
+        elf.putInt(strtab + 4, 3).putInt(strtab + 16, stringOffset).putInt(strtab + 20, STRINGS.length);
+        return elf.array();
+    }
+
+    private static void putSymbol(ByteBuffer elf, int offset, int name, int value, int size, int type) {
+        elf.putInt(offset, name).putInt(offset + 4, value).putInt(offset + 8, size);
+        elf.put(offset + 12, (byte) type).putShort(offset + 14, (short) 1);
+    }
+
+    @Test
+    public void addressesAreNamedAfterCodeSymbolsTest(@TempDir Path directory) throws IOException {
+
+        final Path file = directory.resolve("program.elf");
+        Files.write(file, elf());
+        final ElfSymbols symbols = ElfSymbols.read(file);
+
+        assertNull(symbols.describe(0xFC));
+        assertEquals("main", symbols.describe(0x100));
+        assertEquals("main+0x8", symbols.describe(0x108));
+        assertEquals("loop+0x4", symbols.describe(0x114));
+        assertEquals("loop", symbols.nameOf(0x114));
+        assertEquals("loop+0xf0", symbols.describe(0x200)); // Data symbols are not kept
+    }
+
+    @Test
+    public void otherFilesAreRejectedTest(@TempDir Path directory) throws IOException {
+
+        final Path file = directory.resolve("program.bin");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> ElfSymbols.read(file));
+    }
+
+}
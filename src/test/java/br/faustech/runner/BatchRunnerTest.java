@@ -0,0 +1,78 @@
+package br.faustech.runner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchRunnerTest {
+
+    private static final String ADDI_X1 = "00000000000100001000000010010011"; // addi x1, x1, 1
+
+    private static final String EBREAK = "00000000000100000000000001110011";
+
+    private static final String ECALL = "00000000000000000000000001110011";
+
+    private static final String LOOP = "00000000000000000000000001101111"; // jal x0, 0
+
+    private static final String LOAD_FAULT = "11111111110000000010000100000011"; // lw x2, -4(x0)
+
+    @Test
+    public void batchRunTest(@TempDir Path directory) throws IOException, InterruptedException {
+
+        Files.writeString(directory.resolve("a_ebreak.txt"), String.join("\n", ADDI_X1, ADDI_X1, EBREAK));
+        Files.writeString(directory.resolve("b_ecall.txt"), String.join("\n", ADDI_X1, ECALL));
+        Files.writeString(directory.resolve("c_loop.txt"), String.join("\n", ADDI_X1, LOOP));
+        Files.writeString(directory.resolve("d_unknown.txt"), "11111111111111111111111111111111");
+        Files.writeString(directory.resolve("e_fault.txt"), String.join("\n", ADDI_X1, ADDI_X1, LOAD_FAULT));
+        Files.writeString(directory.resolve("notes.md"), "not a program");
+
+        List<Path> programs = BatchRunner.collectPrograms(List.of(directory.toString()));
+        assertEquals(5, programs.size());
+
+        List<RunResult> results = BatchRunner.builder().maxInstructions(10_000).build().run(programs);
+
+        assertEquals(ExitCause.EBREAK, results.get(0).exitCause());
+        assertEquals(2, results.get(0).instructions()); // The instructions before ebreak still count
+        assertEquals(ExitCause.ECALL, results.get(1).exitCause());
+        assertEquals(1, results.get(1).instructions());
+        assertEquals(ExitCause.INSTRUCTION_LIMIT, results.get(2).exitCause());
+        assertTrue(results.get(2).instructions() >= 10_000);
+        assertEquals(ExitCause.FAULT, results.get(3).exitCause());
+        assertEquals(0, results.get(3).instructions());
+        assertEquals(ExitCause.FAULT, results.get(4).exitCause());
+        assertEquals(2, results.get(4).instructions());
+
+        StringWriter csv = new StringWriter();
+        BatchSummary.writeCsv(results, csv);
+        assertEquals(6, csv.toString().lines().count());
+        assertTrue(csv.toString().lines().skip(1).findFirst().orElseThrow().startsWith("a_ebreak.txt,EBREAK,"));
+    }
+
+    @Test
+    public void kernelSuiteTest() throws IOException, InterruptedException {
+
+        List<Path> kernels = BatchRunner.collectPrograms(List.of("src/test/kernels"));
+        assertEquals(6, kernels.size());
+
+        List<RunResult> results = BatchRunner.builder().threads(1).build().run(kernels);
+
+        for (RunResult result : results) {
+            assertEquals(ExitCause.EBREAK, result.exitCause(), result.program()); // The kernel checked its result
+            assertTrue(result.instructions() > 1_000_000, result.program());
+            assertTrue(result.allocatedBytes() > 0, result.program()); // Measured on a platform thread
+        }
+
+        StringWriter table = new StringWriter();
+        BatchSummary.writeTable(results, table);
+        assertEquals(8, table.toString().lines().count());
+    }
+
+}
@@ -0,0 +1,99 @@
+package br.faustech.trace;
+
+import br.faustech.bus.Bus;
+import br.faustech.comum.MachineContext;
+import br.faustech.cpu.CPU;
+import br.faustech.memory.FrameBuffer;
+import br.faustech.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TraceBufferTest {
+
+    private static final int MEMORY_SIZE = 8192;
+
+    private static List<TraceRecord> dump(TraceBuffer trace) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.dump(Channels.newChannel(out));
+        List<TraceRecord> records = new ArrayList<>();
+        TraceReader.forEach(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), records::add);
+        return records;
+    }
+
+    @Test
+    public void ringKeepsTheLastRecordsTest() throws IOException {
+
+        TraceBuffer trace = new TraceBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            trace.record(i * 4, i, -i, 0);
+        }
+        assertEquals(6, trace.getRecorded());
+        assertEquals(4, trace.size());
+
+        List<TraceRecord> records = dump(trace);
+        assertEquals(4, records.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(new TraceRecord((i + 2) * 4, i + 2, -(i + 2), 0), records.get(i));
+        }
+    }
+
+    @Test
+    public void sinkReceivesEveryRecordOnceTest() {
+
+        List<TraceRecord> records = new ArrayList<>();
+        TraceBuffer trace = new TraceBuffer(4, TraceReader.decoding(records::add));
+        for (int i = 0; i < 10; i++) {
+            trace.record(i * 4, i, i, i);
+        }
+        assertEquals(8, records.size()); // Two full rings so far
+        trace.flush();
+        trace.flush();
+        assertEquals(10, records.size());
+        trace.record(40, 10, 10, 10);
+        trace.flush();
+        for (int i = 0; i < 11; i++) {
+            assertEquals(new TraceRecord(i * 4, i, i, i), records.get(i));
+        }
+    }
+
+    @Test
+    public void cpuRecordsEveryExecutedInstructionTest() throws IOException {
+
+        final MachineContext context = new MachineContext(32, 32, MEMORY_SIZE, 1000);
+        final Bus bus = new Bus(new FrameBuffer(context), new Memory(MEMORY_SIZE));
+        final int[] program = {
+                0x00700293, //  0: addi x5, x0, 7
+                0x10502023, //  4: sw x5, 256(x0)
+                0x10002303, //  8: lw x6, 256(x0)
+                0x00000013, // 12: addi x0, x0, 0
+                0x0000006F, // 16: jal x0, 0
+        };
+        bus.write(0, program);
+        final CPU cpu = new CPU(context, bus, null);
+        cpu.setTranslationThreshold(1); // Compiled code is skipped while tracing
+        final TraceBuffer trace = new TraceBuffer(64);
+        cpu.setTrace(trace);
+        for (int i = 0; i < 3; i++) {
+            cpu.processNextBlock();
+        }
+
+        final List<TraceRecord> records = dump(trace);
+        assertEquals(List.of(
+                new TraceRecord(0, program[0], 7, 0),
+                new TraceRecord(4, program[1], 0, 256),
+                new TraceRecord(8, program[2], 7, 256),
+                new TraceRecord(12, program[3], 0, 0),
+                new TraceRecord(16, program[4], 0, 0),
+                new TraceRecord(16, program[4], 0, 0),
+                new TraceRecord(16, program[4], 0, 0)), records);
+    }
+
+}